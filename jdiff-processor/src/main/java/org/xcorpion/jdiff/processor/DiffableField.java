@@ -0,0 +1,107 @@
+package org.xcorpion.jdiff.processor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A field of a {@link org.xcorpion.jdiff.annotation.Diffable} class as seen by the generated handlers.
+ */
+class DiffableField {
+
+    private final String name;
+    private final String typeName;
+    private final String boxedTypeName;
+    private final String typeExpression;
+    private final String declaringClassName;
+    private final boolean primitive;
+    private final boolean leaf;
+    private final boolean isTransient;
+    private final String getterName;
+    private final String setterName;
+    private final String diffingHandlerName;
+    private final String mergingHandlerName;
+
+    DiffableField(@Nonnull String name, @Nonnull String typeName, @Nonnull String boxedTypeName,
+            @Nullable String typeExpression, @Nonnull String declaringClassName,
+            boolean primitive, boolean leaf, boolean isTransient,
+            @Nullable String getterName, @Nullable String setterName,
+            @Nullable String diffingHandlerName, @Nullable String mergingHandlerName) {
+        this.name = name;
+        this.typeName = typeName;
+        this.boxedTypeName = boxedTypeName;
+        this.typeExpression = typeExpression;
+        this.declaringClassName = declaringClassName;
+        this.primitive = primitive;
+        this.leaf = leaf;
+        this.isTransient = isTransient;
+        this.getterName = getterName;
+        this.setterName = setterName;
+        this.diffingHandlerName = diffingHandlerName;
+        this.mergingHandlerName = mergingHandlerName;
+    }
+
+    @Nonnull
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return erased type of the field as seen from the diffable class, usable for variables and casts
+     */
+    @Nonnull
+    String getTypeName() {
+        return typeName;
+    }
+
+    @Nonnull
+    String getBoxedTypeName() {
+        return boxedTypeName;
+    }
+
+    /**
+     * @return class literal of the declared field type, or null if the type is generic
+     * and has to be resolved from the field at runtime
+     */
+    @Nullable
+    String getTypeExpression() {
+        return typeExpression;
+    }
+
+    @Nonnull
+    String getDeclaringClassName() {
+        return declaringClassName;
+    }
+
+    boolean isPrimitive() {
+        return primitive;
+    }
+
+    boolean isLeaf() {
+        return leaf;
+    }
+
+    boolean isTransient() {
+        return isTransient;
+    }
+
+    @Nonnull
+    String read(@Nonnull String obj) {
+        return getterName != null ? obj + "." + getterName + "()" : obj + "." + name;
+    }
+
+    @Nonnull
+    String write(@Nonnull String obj, @Nonnull String value) {
+        return setterName != null ? obj + "." + setterName + "(" + value + ")" : obj + "." + name + " = " + value;
+    }
+
+    @Nullable
+    String getDiffingHandlerName() {
+        return diffingHandlerName;
+    }
+
+    @Nullable
+    String getMergingHandlerName() {
+        return mergingHandlerName;
+    }
+
+}
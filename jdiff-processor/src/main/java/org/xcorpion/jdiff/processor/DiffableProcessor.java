@@ -0,0 +1,394 @@
+package org.xcorpion.jdiff.processor;
+
+import org.xcorpion.jdiff.annotation.Diffable;
+import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.api.HandlerRegistry;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a diffing handler, a merging handler and a {@link HandlerRegistry} for {@link Diffable} classes.
+ * <p>
+ * Handlers are generated into the package of the annotated class and access fields directly.
+ * Private fields are accessed through getters and setters following the bean naming convention,
+ * classes without them are rejected at compile time, as well as final fields which cannot be merged.
+ * <p>
+ * Registries are listed in {@code META-INF/services} so
+ * {@link org.xcorpion.jdiff.api.ObjectDiffMapper#registerGeneratedHandlers()} picks them up.
+ */
+public class DiffableProcessor extends AbstractProcessor {
+
+    private static final String SERVICE_FILE = "META-INF/services/" + HandlerRegistry.class.getName();
+    static final String REGISTRY_NAME = "DiffableHandlerRegistry";
+
+    private Elements elements;
+    private Types types;
+    private final Map<String, Integer> registriesPerPackage = new HashMap<>();
+    private final List<String> registryNames = new ArrayList<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(Diffable.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+        Map<String, List<String>> handlersPerPackage = new TreeMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Diffable.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@Diffable can only be applied to classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<DiffableField> fields = collectFields(type);
+            if (fields == null) {
+                continue;
+            }
+            String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+            String typeName = type.getQualifiedName().toString();
+            String handlerPrefix = handlerPrefix(type);
+            HandlerWriter writer = new HandlerWriter(packageName, typeName, handlerPrefix, fields);
+            try {
+                writeSource(packageName, writer.getDiffingHandlerName(), writer.writeDiffingHandler(), type);
+                writeSource(packageName, writer.getMergingHandlerName(), writer.writeMergingHandler(), type);
+            } catch (IOException e) {
+                error(type, "Failed to write handlers: " + e.getMessage());
+                continue;
+            }
+            handlersPerPackage.computeIfAbsent(packageName, k -> new ArrayList<>()).add(handlerPrefix);
+        }
+        for (Map.Entry<String, List<String>> entry : handlersPerPackage.entrySet()) {
+            String packageName = entry.getKey();
+            int count = registriesPerPackage.merge(packageName, 1, Integer::sum);
+            // handlers found in later rounds get a registry of their own
+            String registryName = count == 1 ? REGISTRY_NAME : REGISTRY_NAME + count;
+            try {
+                writeSource(packageName, registryName,
+                        HandlerWriter.writeRegistry(packageName, registryName, entry.getValue()), null);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Failed to write " + registryName + ": " + e.getMessage());
+                continue;
+            }
+            registryNames.add(packageName.isEmpty() ? registryName : packageName + "." + registryName);
+        }
+        return true;
+    }
+
+    /**
+     * @return null if the class cannot be handled, in which case errors have been reported
+     */
+    private List<DiffableField> collectFields(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            error(type, "@Diffable classes must not be private");
+            return null;
+        }
+        PackageElement packageElement = elements.getPackageOf(type);
+        DeclaredType declaredType = (DeclaredType) type.asType();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(elements.getAllMembers(type));
+        List<DiffableField> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        boolean valid = true;
+        TypeElement current = type;
+        while (current != null && !Object.class.getName().equals(current.getQualifiedName().toString())) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                // fields in subclasses shadow the ones in superclasses
+                if (modifiers.contains(Modifier.STATIC) || !names.add(field.getSimpleName().toString())) {
+                    continue;
+                }
+                DiffableField diffableField = createField(declaredType, current, field, methods, packageElement);
+                if (diffableField == null) {
+                    valid = false;
+                } else {
+                    fields.add(diffableField);
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+        }
+        return valid ? fields : null;
+    }
+
+    private DiffableField createField(DeclaredType declaredType, TypeElement declaringType, VariableElement field,
+            List<ExecutableElement> methods, PackageElement packageElement) {
+        String name = field.getSimpleName().toString();
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.FINAL)) {
+            error(field, "final fields cannot be merged by generated handlers: " + name);
+            return null;
+        }
+        TypeMirror memberType = types.asMemberOf(declaredType, field);
+        String typeName = typeName(types.erasure(memberType));
+        String getterName = null;
+        String setterName = null;
+        if (!isAccessible(field, packageElement)) {
+            getterName = findGetter(name, memberType, methods, packageElement);
+            setterName = findSetter(name, memberType, methods, packageElement);
+            if (getterName == null || setterName == null) {
+                error(field, String.format("%s is not accessible from package %s and has no accessible getter and setter",
+                        name, packageElement.getQualifiedName()));
+                return null;
+            }
+        }
+        TypeMirror fieldType = field.asType();
+        boolean primitive = memberType.getKind().isPrimitive();
+        String boxedTypeName = primitive ?
+                types.boxedClass((PrimitiveType) memberType).getQualifiedName().toString() : typeName;
+        String typeExpression = isGeneric(fieldType) ? null : typeName(types.erasure(fieldType)) + ".class";
+        String diffingHandlerName = null;
+        String mergingHandlerName = null;
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (!TypeHandler.class.getCanonicalName().equals(
+                    ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                    annotation.getElementValues().entrySet()) {
+                String attribute = entry.getKey().getSimpleName().toString();
+                TypeMirror handlerType = (TypeMirror) entry.getValue().getValue();
+                if ("extractKeyUsing".equals(attribute)) {
+                    if (!TypeHandler.None.class.getCanonicalName().equals(
+                            ((TypeElement) types.asElement(handlerType)).getQualifiedName().toString())) {
+                        error(field, "key extractors of fields are not supported by generated handlers, " +
+                                "register the key extractor of the element class instead: " + name);
+                        return null;
+                    }
+                    continue;
+                }
+                String handlerName = handlerName(field, handlerType, packageElement);
+                if ("diffUsing".equals(attribute)) {
+                    diffingHandlerName = handlerName;
+                } else if ("mergeUsing".equals(attribute)) {
+                    mergingHandlerName = handlerName;
+                }
+            }
+        }
+        return new DiffableField(name, typeName, boxedTypeName, typeExpression,
+                typeName(types.erasure(declaringType.asType())),
+                primitive, isLeaf(memberType), modifiers.contains(Modifier.TRANSIENT),
+                getterName, setterName, diffingHandlerName, mergingHandlerName);
+    }
+
+    private String handlerName(Element field, TypeMirror handlerType, PackageElement packageElement) {
+        TypeElement handlerElement = (TypeElement) types.asElement(handlerType);
+        String name = handlerElement.getQualifiedName().toString();
+        if (TypeHandler.None.class.getCanonicalName().equals(name)) {
+            return null;
+        }
+        boolean instantiable = !handlerElement.getModifiers().contains(Modifier.ABSTRACT) &&
+                (handlerElement.getNestingKind() == NestingKind.TOP_LEVEL ||
+                        handlerElement.getModifiers().contains(Modifier.STATIC)) &&
+                isAccessible(handlerElement, packageElement);
+        boolean hasDefaultConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(handlerElement.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && isAccessible(constructor, packageElement)) {
+                hasDefaultConstructor = true;
+            }
+        }
+        if (!instantiable || !hasDefaultConstructor) {
+            error(field, "Handler " + name + " needs an accessible default constructor");
+        }
+        return name;
+    }
+
+    private boolean isAccessible(Element element, PackageElement packageElement) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        return modifiers.contains(Modifier.PUBLIC) || elements.getPackageOf(element).equals(packageElement);
+    }
+
+    private String findGetter(String name, TypeMirror type, List<ExecutableElement> methods,
+            PackageElement packageElement) {
+        List<String> candidates = new ArrayList<>();
+        if (type.getKind() == TypeKind.BOOLEAN) {
+            candidates.add("is" + capitalize(name));
+        }
+        candidates.add("get" + capitalize(name));
+        for (ExecutableElement method : methods) {
+            if (candidates.contains(method.getSimpleName().toString()) && method.getParameters().isEmpty() &&
+                    !method.getModifiers().contains(Modifier.STATIC) && isAccessible(method, packageElement) &&
+                    types.isSameType(types.erasure(method.getReturnType()), types.erasure(type))) {
+                return method.getSimpleName().toString();
+            }
+        }
+        return null;
+    }
+
+    private String findSetter(String name, TypeMirror type, List<ExecutableElement> methods,
+            PackageElement packageElement) {
+        String setterName = "set" + capitalize(name);
+        for (ExecutableElement method : methods) {
+            if (setterName.equals(method.getSimpleName().toString()) && method.getParameters().size() == 1 &&
+                    !method.getModifiers().contains(Modifier.STATIC) && isAccessible(method, packageElement) &&
+                    types.isSameType(types.erasure(method.getParameters().get(0).asType()), types.erasure(type))) {
+                return setterName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Values of leaf types are replaced as a whole, the same way the reflection mapper treats primitives.
+     * Characters and enums are included as diffing them field by field is never useful.
+     */
+    private boolean isLeaf(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement element = (TypeElement) types.asElement(type);
+        if (element.getKind() == ElementKind.ENUM) {
+            return true;
+        }
+        String name = element.getQualifiedName().toString();
+        if (String.class.getName().equals(name) || Character.class.getName().equals(name)) {
+            return true;
+        }
+        try {
+            types.unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isGeneric(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+            case WILDCARD:
+                return true;
+            case ARRAY:
+                return isGeneric(((ArrayType) type).getComponentType());
+            case DECLARED:
+                return !((DeclaredType) type).getTypeArguments().isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    private String typeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return typeName(((ArrayType) type).getComponentType()) + "[]";
+            case DECLARED:
+                return ((TypeElement) types.asElement(type)).getQualifiedName().toString();
+            case TYPEVAR:
+                return typeName(types.erasure(type));
+            default:
+                return type.toString();
+        }
+    }
+
+    private static String handlerPrefix(TypeElement type) {
+        StringBuilder prefix = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            prefix.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return prefix.toString();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void writeSource(String packageName, String simpleName, String source, Element originatingElement)
+            throws IOException {
+        String name = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        JavaFileObject file = originatingElement != null ?
+                processingEnv.getFiler().createSourceFile(name, originatingElement) :
+                processingEnv.getFiler().createSourceFile(name);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    private void writeServiceFile() {
+        if (registryNames.isEmpty()) {
+            return;
+        }
+        try {
+            // keep the registries listed by an earlier incremental build or the module's resources as long as
+            // their classes still exist, the ones of removed @Diffable classes would fail to load
+            Set<String> allRegistryNames = new LinkedHashSet<>();
+            for (String listedName : readServiceFile()) {
+                if (elements.getTypeElement(listedName) != null) {
+                    allRegistryNames.add(listedName);
+                }
+            }
+            allRegistryNames.addAll(registryNames);
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer writer = file.openWriter()) {
+                for (String registryName : allRegistryNames) {
+                    writer.write(registryName);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private List<String> readServiceFile() {
+        List<String> listedNames = new ArrayList<>();
+        CharSequence content;
+        try {
+            content = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE)
+                    .getCharContent(true);
+        } catch (IOException e) {
+            // no service file yet
+            return listedNames;
+        }
+        for (String line : content.toString().split("\\R")) {
+            int commentStart = line.indexOf('#');
+            String registryName = (commentStart >= 0 ? line.substring(0, commentStart) : line).trim();
+            if (!registryName.isEmpty()) {
+                listedNames.add(registryName);
+            }
+        }
+        return listedNames;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,230 @@
+package org.xcorpion.jdiff.processor;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Writes the sources of the handlers generated for a single {@link org.xcorpion.jdiff.annotation.Diffable} class.
+ */
+class HandlerWriter {
+
+    private static final String HEADER = "// Generated by " + DiffableProcessor.class.getName() + ", do not edit\n";
+
+    private final String packageName;
+    private final String typeName;
+    private final String handlerPrefix;
+    private final List<DiffableField> fields;
+
+    HandlerWriter(@Nonnull String packageName, @Nonnull String typeName, @Nonnull String handlerPrefix,
+            @Nonnull List<DiffableField> fields) {
+        this.packageName = packageName;
+        this.typeName = typeName;
+        this.handlerPrefix = handlerPrefix;
+        this.fields = fields;
+    }
+
+    @Nonnull
+    String getDiffingHandlerName() {
+        return diffingHandlerName(handlerPrefix);
+    }
+
+    @Nonnull
+    String getMergingHandlerName() {
+        return mergingHandlerName(handlerPrefix);
+    }
+
+    private static String diffingHandlerName(String handlerPrefix) {
+        return handlerPrefix + "DiffingHandler";
+    }
+
+    private static String mergingHandlerName(String handlerPrefix) {
+        return handlerPrefix + "MergingHandler";
+    }
+
+    @Nonnull
+    String writeDiffingHandler() {
+        StringBuilder source = new StringBuilder();
+        writeHeader(source);
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(getDiffingHandlerName())
+                .append(" extends org.xcorpion.jdiff.api.AbstractDiffingHandler<").append(typeName).append("> {\n\n");
+        writeFieldTypes(source);
+        writeFieldAccessibility(source);
+        source.append("    @javax.annotation.Nonnull\n")
+                .append("    @Override\n")
+                .append("    public org.xcorpion.jdiff.api.DiffNode diff(").append(typeName).append(" src, ")
+                .append(typeName).append(" target,\n")
+                .append("            @javax.annotation.Nonnull org.xcorpion.jdiff.api.DiffingContext diffingContext) {\n")
+                .append("        org.xcorpion.jdiff.handler.GeneratedDiffingSupport diffing =\n")
+                .append("                new org.xcorpion.jdiff.handler.GeneratedDiffingSupport(diffingContext);\n")
+                .append("        org.xcorpion.jdiff.api.DiffNode diffNode = diffing.createDiffNode(src, target);\n")
+                .append("        if (src == null || target == null) {\n")
+                .append("            return diffNode;\n")
+                .append("        }\n");
+        for (DiffableField field : fields) {
+            writeFieldDiff(source, field);
+        }
+        source.append("        return diffNode;\n")
+                .append("    }\n\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private void writeFieldDiff(StringBuilder source, DiffableField field) {
+        String indent = "        ";
+        source.append(indent).append("if (!diffing.isIgnored(").append(field.isTransient()).append(", ")
+                .append(inaccessibleConstant(field)).append(")) {\n");
+        indent += "    ";
+        source.append(indent).append(field.getTypeName()).append(" srcValue = ").append(field.read("src")).append(";\n")
+                .append(indent).append(field.getTypeName()).append(" targetValue = ").append(field.read("target")).append(";\n")
+                .append(indent).append("if (");
+        if (field.isPrimitive()) {
+            source.append("diffing.hasPlainEquality(").append(field.getBoxedTypeName()).append(".class) ? ")
+                    .append(rawNotEquals(field)).append(" : !diffing.isEqualTo(srcValue, targetValue)");
+        } else {
+            source.append("!diffing.isEqualTo(srcValue, targetValue)");
+        }
+        source.append(") {\n")
+                .append(indent).append("    diffing.diffField(diffNode, \"").append(field.getName()).append("\", ")
+                .append(typeExpression(field)).append(", ").append(field.isLeaf()).append(", ")
+                .append(handlerClass(field.getDiffingHandlerName())).append(", srcValue, targetValue);\n")
+                .append(indent).append("}\n")
+                .append("        }\n");
+    }
+
+    private static String rawNotEquals(DiffableField field) {
+        // same semantics as Float.equals and Double.equals
+        switch (field.getTypeName()) {
+            case "float":
+                return "Float.floatToIntBits(srcValue) != Float.floatToIntBits(targetValue)";
+            case "double":
+                return "Double.doubleToLongBits(srcValue) != Double.doubleToLongBits(targetValue)";
+            default:
+                return "srcValue != targetValue";
+        }
+    }
+
+    @Nonnull
+    String writeMergingHandler() {
+        StringBuilder source = new StringBuilder();
+        writeHeader(source);
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(getMergingHandlerName())
+                .append(" extends org.xcorpion.jdiff.api.AbstractMergingHandler<").append(typeName).append("> {\n\n");
+        writeFieldTypes(source);
+        source.append("    @javax.annotation.Nullable\n")
+                .append("    @Override\n")
+                .append("    public ").append(typeName).append(" merge(").append(typeName).append(" src,\n")
+                .append("            @javax.annotation.Nonnull org.xcorpion.jdiff.api.DiffNode diffNode,\n")
+                .append("            @javax.annotation.Nonnull org.xcorpion.jdiff.api.MergingContext mergingContext) {\n")
+                .append("        org.xcorpion.jdiff.handler.GeneratedMergingSupport merging =\n")
+                .append("                new org.xcorpion.jdiff.handler.GeneratedMergingSupport(mergingContext);\n")
+                .append("        if (!merging.hasFieldDiffs(src, diffNode)) {\n")
+                .append("            return (").append(typeName).append(") merging.mergeValue(src, diffNode);\n")
+                .append("        }\n")
+                .append("        for (java.util.Map.Entry<Object, org.xcorpion.jdiff.api.DiffNode> entry : ")
+                .append("diffNode.getFieldDiffs().entrySet()) {\n")
+                .append("            String fieldName = (String) entry.getKey();\n")
+                .append("            org.xcorpion.jdiff.api.DiffNode fieldDiffNode = entry.getValue();\n")
+                .append("            switch (fieldName) {\n");
+        for (DiffableField field : fields) {
+            String value = "(" + field.getBoxedTypeName() + ") merging.mergeField(fieldName, " + field.read("src") +
+                    ", fieldDiffNode, " + typeExpression(field) + ", " +
+                    handlerClass(field.getMergingHandlerName()) + ")";
+            source.append("                case \"").append(field.getName()).append("\":\n")
+                    .append("                    ").append(field.write("src", value)).append(";\n")
+                    .append("                    break;\n");
+        }
+        source.append("                default:\n")
+                .append("                    merging.unknownField(fieldName, src);\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        return src;\n")
+                .append("    }\n\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    @Nonnull
+    static String writeRegistry(@Nonnull String packageName, @Nonnull String registryName,
+            @Nonnull List<String> handlerPrefixes) {
+        StringBuilder source = new StringBuilder();
+        writeHeader(source, packageName);
+        source.append("public final class ").append(registryName)
+                .append(" implements org.xcorpion.jdiff.api.HandlerRegistry {\n\n")
+                .append("    @Override\n")
+                .append("    public void registerHandlers(@javax.annotation.Nonnull ")
+                .append("org.xcorpion.jdiff.api.ObjectDiffMapper objectDiffMapper) {\n");
+        for (String handlerPrefix : handlerPrefixes) {
+            source.append("        objectDiffMapper.registerDiffingHandler(new ")
+                    .append(diffingHandlerName(handlerPrefix)).append("());\n")
+                    .append("        objectDiffMapper.registerMergingHandler(new ")
+                    .append(mergingHandlerName(handlerPrefix)).append("());\n");
+        }
+        source.append("    }\n\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private void writeHeader(StringBuilder source) {
+        writeHeader(source, packageName);
+    }
+
+    private static void writeHeader(StringBuilder source, String packageName) {
+        source.append(HEADER);
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n");
+        }
+        source.append("\n");
+    }
+
+    private void writeFieldTypes(StringBuilder source) {
+        boolean written = false;
+        for (DiffableField field : fields) {
+            if (field.getTypeExpression() == null) {
+                source.append("    private static final java.lang.reflect.Type ").append(fieldTypeConstant(field))
+                        .append(" =\n")
+                        .append("            org.xcorpion.jdiff.handler.GeneratedDiffingSupport.fieldType(")
+                        .append(field.getDeclaringClassName()).append(".class, \"").append(field.getName())
+                        .append("\");\n");
+                written = true;
+            }
+        }
+        if (written) {
+            source.append("\n");
+        }
+    }
+
+    private static String typeExpression(DiffableField field) {
+        return field.getTypeExpression() != null ? field.getTypeExpression() : fieldTypeConstant(field);
+    }
+
+    /**
+     * Whether a field counts as inaccessible is left to the reflection based mapper, so that
+     * {@link org.xcorpion.jdiff.api.Feature.IgnoreFields#INACCESSIBLE} ignores the same fields in both
+     */
+    private void writeFieldAccessibility(StringBuilder source) {
+        for (DiffableField field : fields) {
+            source.append("    private static final boolean ").append(inaccessibleConstant(field)).append(" =\n")
+                    .append("            org.xcorpion.jdiff.handler.GeneratedDiffingSupport.isInaccessible(")
+                    .append(field.getDeclaringClassName()).append(".class, \"").append(field.getName())
+                    .append("\");\n");
+        }
+        if (!fields.isEmpty()) {
+            source.append("\n");
+        }
+    }
+
+    private static String inaccessibleConstant(DiffableField field) {
+        return "INACCESSIBLE_" + field.getName();
+    }
+
+    private static String fieldTypeConstant(DiffableField field) {
+        return "TYPE_" + field.getName();
+    }
+
+    private static String handlerClass(String handlerName) {
+        return handlerName != null ? handlerName + ".class" : "null";
+    }
+
+}
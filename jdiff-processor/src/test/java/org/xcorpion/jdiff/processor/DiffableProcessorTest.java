@@ -0,0 +1,196 @@
+package org.xcorpion.jdiff.processor;
+
+import org.junit.Test;
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.api.Feature;
+import org.xcorpion.jdiff.api.HandlerRegistry;
+import org.xcorpion.jdiff.api.ObjectDiffMapper;
+import org.xcorpion.jdiff.processor.sample.Account;
+import org.xcorpion.jdiff.processor.sample.AccountDiffingHandler;
+import org.xcorpion.jdiff.processor.sample.AccountMergingHandler;
+import org.xcorpion.jdiff.processor.sample.Address;
+import org.xcorpion.jdiff.util.ReflectionObjectDiffMapper;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class DiffableProcessorTest {
+
+    private static final String SAMPLE_REGISTRY = Account.class.getPackage().getName() + "." +
+            DiffableProcessor.REGISTRY_NAME;
+
+    private static Account createAccount() {
+        Account account = new Account();
+        account.name = "foo";
+        account.id = 1;
+        account.balance = 100L;
+        account.rate = 0.5;
+        account.active = true;
+        account.session = "session";
+        account.created = new Date(1000L);
+        account.address = new Address("street", 1);
+        account.tags.addAll(Arrays.asList("a", "b"));
+        account.note = 1;
+        account.setOwner("owner");
+        return account;
+    }
+
+    private static Account createUpdatedAccount() {
+        Account account = createAccount();
+        account.name = "bar";
+        account.balance = 200L;
+        account.rate = Double.NaN;
+        account.session = "other session";
+        account.created = new Date(2000L);
+        account.address = new Address("other street", 1);
+        account.tags.set(1, "c");
+        account.tags.add("d");
+        account.note = "note";
+        account.setOwner("other owner");
+        return account;
+    }
+
+    private static String describe(DiffNode diffNode) {
+        StringBuilder description = new StringBuilder(String.valueOf(diffNode.getDiff()));
+        if (diffNode.getFieldDiffs() != null) {
+            description.append(diffNode.getFieldDiffs().entrySet().stream()
+                    .sorted(Comparator.comparing(entry -> entry.getKey().toString()))
+                    .map(entry -> entry.getKey() + "=" + describe(entry.getValue()))
+                    .collect(Collectors.joining(", ", "{", "}")));
+        }
+        return description.toString();
+    }
+
+    @Test
+    public void generatedHandlersCanBeRegisteredInOneCall() {
+        ObjectDiffMapper mapper = new ReflectionObjectDiffMapper().registerGeneratedHandlers();
+        assertThat(mapper.getDiffingHandler(Account.class), is(instanceOf(AccountDiffingHandler.class)));
+        assertThat(mapper.getMergingHandler(Account.class), is(instanceOf(AccountMergingHandler.class)));
+        assertThat(mapper.getDiffingHandler(Address.class), is(notNullValue()));
+    }
+
+    @Test
+    public void generatedDiffHasTheSameShapeAsReflection() {
+        ObjectDiffMapper generated = new ReflectionObjectDiffMapper().registerGeneratedHandlers();
+        ObjectDiffMapper reflection = new ReflectionObjectDiffMapper();
+        Account src = createAccount();
+        Account target = createUpdatedAccount();
+
+        DiffNode diffNode = generated.diff(src, target);
+
+        assertThat(describe(diffNode), is(describe(reflection.diff(src, target))));
+        assertThat(diffNode.getFieldDiffs().keySet(), hasItems("owner", "created", "address", "tags"));
+    }
+
+    @Test
+    public void generatedHandlersHonorIgnoreFieldFeatures() {
+        for (Feature ignoredFields : Feature.IgnoreFields.values()) {
+            ObjectDiffMapper generated = new ReflectionObjectDiffMapper()
+                    .registerGeneratedHandlers()
+                    .enable(ignoredFields);
+            ObjectDiffMapper reflection = new ReflectionObjectDiffMapper().enable(ignoredFields);
+
+            assertThat(describe(generated.diff(createAccount(), createUpdatedAccount())),
+                    is(describe(reflection.diff(createAccount(), createUpdatedAccount()))));
+        }
+        DiffNode diffNode = new ReflectionObjectDiffMapper()
+                .registerGeneratedHandlers()
+                .enable(Feature.IgnoreFields.TRANSIENT)
+                .diff(createAccount(), createUpdatedAccount());
+        assertThat(diffNode.getFieldDiffs().keySet(), not(hasItem("session")));
+    }
+
+    @Test
+    public void generatedMergeAppliesDiff() {
+        ObjectDiffMapper generated = new ReflectionObjectDiffMapper().registerGeneratedHandlers();
+        Account target = createUpdatedAccount();
+        DiffNode diffNode = generated.diff(createAccount(), target);
+
+        Account src = createAccount();
+        Account merged = generated.applyDiff(src, diffNode,
+                Collections.singleton(Feature.MergingStrategy.DEEP_CLONE_SOURCE));
+
+        assertThat(merged, is(not(sameInstance(src))));
+        assertThat(src.name, is("foo"));
+        assertThat(merged.name, is("bar"));
+        assertThat(merged.balance, is(200L));
+        assertThat(Double.isNaN(merged.rate), is(true));
+        assertThat(merged.session, is("other session"));
+        assertThat(merged.created, is(new Date(2000L)));
+        assertThat(merged.getStreet(), is("other street"));
+        assertThat(merged.tags, contains("a", "c", "d"));
+        assertThat(merged.note, is("note"));
+        assertThat(merged.getOwner(), is("other owner"));
+    }
+
+    @Test
+    public void processorRejectsFieldsItCannotAccess() throws IOException {
+        String source = "package test;\n" +
+                "@org.xcorpion.jdiff.annotation.Diffable\n" +
+                "public class Broken {\n" +
+                "    private int hidden;\n" +
+                "    public int getHidden() { return hidden; }\n" +
+                "}\n";
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/Broken.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-d", Files.createTempDirectory("jdiff-processor").toString());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new DiffableProcessor()));
+
+        assertThat(task.call(), is(false));
+        List<String> errors = diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+                .collect(Collectors.toList());
+        assertThat(errors, contains(containsString("hidden is not accessible")));
+    }
+
+    @Test
+    public void processorKeepsExistingRegistriesListedInServiceFile() throws IOException {
+        String source = "package test;\n" +
+                "@org.xcorpion.jdiff.annotation.Diffable\n" +
+                "public class Plain {\n" +
+                "    public int value;\n" +
+                "}\n";
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/Plain.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        Path outputDir = Files.createTempDirectory("jdiff-processor");
+        Path serviceFile = outputDir.resolve("META-INF/services/" + HandlerRegistry.class.getName());
+        Files.createDirectories(serviceFile.getParent());
+        Files.write(serviceFile, Arrays.asList("# listed by hand", SAMPLE_REGISTRY,
+                "removed.RemovedRegistry"));
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-d", outputDir.toString());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null,
+                Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new DiffableProcessor()));
+
+        assertThat(task.call(), is(true));
+        assertThat(Files.readAllLines(serviceFile),
+                contains(SAMPLE_REGISTRY, "test." + DiffableProcessor.REGISTRY_NAME));
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.xcorpion.jdiff.processor.sample;
+
+import org.xcorpion.jdiff.annotation.Diffable;
+import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.handler.DateDiffingHandler;
+import org.xcorpion.jdiff.handler.DateMergingHandler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Diffable
+public class Account {
+
+    public String name;
+    public int id;
+    public long balance;
+    public double rate;
+    public boolean active;
+    public transient String session;
+    @TypeHandler(
+            diffUsing = DateDiffingHandler.class,
+            mergeUsing = DateMergingHandler.class
+    )
+    public Date created;
+    public Address address;
+    public List<String> tags = new ArrayList<>();
+    public Object note;
+    private String owner;
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getStreet() {
+        return address == null ? null : address.street;
+    }
+
+}
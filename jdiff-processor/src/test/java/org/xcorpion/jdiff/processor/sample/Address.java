@@ -0,0 +1,16 @@
+package org.xcorpion.jdiff.processor.sample;
+
+import org.xcorpion.jdiff.annotation.Diffable;
+
+@Diffable
+public class Address {
+
+    String street;
+    int number;
+
+    public Address(String street, int number) {
+        this.street = street;
+        this.number = number;
+    }
+
+}
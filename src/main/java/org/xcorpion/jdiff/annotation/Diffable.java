@@ -0,0 +1,20 @@
+package org.xcorpion.jdiff.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for the jDiff annotation processor, which generates a diffing and a merging handler
+ * for it at compile time plus a {@link org.xcorpion.jdiff.api.HandlerRegistry} registering them.
+ * <p>
+ * Generated handlers access fields directly, or through getters and setters for private fields,
+ * so no reflection is involved when diffing or merging the class.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface Diffable {
+}
@@ -0,0 +1,19 @@
+package org.xcorpion.jdiff.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler or equality checker referenced by {@link TypeHandler} as keeping state between calls.
+ * <p>
+ * Handlers are instantiated once per class and shared across threads by default.
+ * A new instance is created for every use of a handler carrying this annotation.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Stateful {
+}
@@ -8,6 +8,7 @@ import java.lang.annotation.Target;
 
 import org.xcorpion.jdiff.api.DiffingHandler;
 import org.xcorpion.jdiff.api.EqualityChecker;
+import org.xcorpion.jdiff.api.KeyExtractor;
 import org.xcorpion.jdiff.api.MergingHandler;
 
 @Target(value = {ElementType.FIELD, ElementType.TYPE})
@@ -15,7 +16,8 @@ import org.xcorpion.jdiff.api.MergingHandler;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface TypeHandler {
 
-    interface None extends EqualityChecker<Object>, DiffingHandler<Object>, MergingHandler<Object> {}
+    interface None extends EqualityChecker<Object>, DiffingHandler<Object>, MergingHandler<Object>,
+            KeyExtractor<Object> {}
 
     Class<? extends EqualityChecker<?>> checkEqualityUsing() default None.class;
 
@@ -23,4 +25,10 @@ public @interface TypeHandler {
 
     Class<? extends MergingHandler<?>> mergeUsing() default None.class;
 
+    /**
+     * Key of list elements: on a list field it applies to the elements of that list,
+     * on a class it applies to instances of the class that are list elements
+     */
+    Class<? extends KeyExtractor<?>> extractKeyUsing() default None.class;
+
 }
@@ -0,0 +1,49 @@
+package org.xcorpion.jdiff.api;
+
+import org.xcorpion.jdiff.exception.MergingException;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Result of {@link ObjectDiffMapper#applyDiffToAll}: the merged objects in the order of the targets
+ * and the failures of the targets the diff could not be applied to.
+ */
+public final class BatchApplyResult<T> {
+
+    private final List<T> results;
+    private final SortedMap<Integer, MergingException> failures;
+
+    public BatchApplyResult(@Nonnull List<T> results, @Nonnull SortedMap<Integer, MergingException> failures) {
+        this.results = Collections.unmodifiableList(results);
+        this.failures = Collections.unmodifiableSortedMap(failures);
+    }
+
+    /**
+     * @return merged object of every target, in the order of the targets, null for the ones that failed
+     */
+    @Nonnull
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * @return failure of every target the diff could not be applied to, by index of the target
+     */
+    @Nonnull
+    public SortedMap<Integer, MergingException> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchApplyResult{results=" + results.size() + ", failures=" + failures.keySet() + "}";
+    }
+
+}
@@ -8,7 +8,20 @@ public class Diff {
         ADD_VALUE,
         UPDATE_VALUE,
         REMOVE_VALUE,
-        RESIZE_ARRAY
+        RESIZE_ARRAY,
+        /**
+         * Inserts the target value into an aligned list at the index used as key
+         */
+        INSERT_VALUE,
+        /**
+         * Moves the element at the source index (source value) of an aligned list to the index used as key
+         */
+        MOVE_VALUE,
+        /**
+         * The source value has been diffed against the target value along another path already, e.g. a shared
+         * value or the back reference of a cyclic graph. Its changes are only at that path and apply here as well.
+         */
+        REFERENCE
 
     }
 
@@ -0,0 +1,51 @@
+package org.xcorpion.jdiff.api;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * A single change between two objects: the operation of a diff node which is not a {@link Diff.Operation#NO_OP},
+ * together with the field names, indices and keys leading to it from the root.
+ *
+ * @see ObjectDiffMapper#diffEvents(Object, Object)
+ */
+public final class DiffEvent {
+
+    private final List<Object> path;
+    private final Diff diff;
+
+    public DiffEvent(@Nonnull List<Object> path, @Nonnull Diff diff) {
+        this.path = path;
+        this.diff = diff;
+    }
+
+    /**
+     * @return keys of the field diffs from the root to the changed node, empty if the root itself changed
+     */
+    @Nonnull
+    public List<Object> getPath() {
+        return path;
+    }
+
+    @Nonnull
+    public Diff getDiff() {
+        return diff;
+    }
+
+    public Diff.Operation getOperation() {
+        return diff.getOperation();
+    }
+
+    public Object getSrcValue() {
+        return diff.getSrcValue();
+    }
+
+    public Object getTargetValue() {
+        return diff.getTargetValue();
+    }
+
+    @Override
+    public String toString() {
+        return path + " " + diff;
+    }
+}
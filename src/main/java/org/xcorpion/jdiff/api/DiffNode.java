@@ -1,12 +1,13 @@
 package org.xcorpion.jdiff.api;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class DiffNode {
 
     protected Diff diff;
     protected Map<Object, DiffNode> fieldDiffs;
+    protected boolean truncated;
 
     public static DiffNode empty() {
         return new DiffNode(new Diff(Diff.Operation.NO_OP, null, null));
@@ -40,13 +41,28 @@ public class DiffNode {
         return true;
     }
 
+    /**
+     * @return true if this is the root of a diff which stopped at its change limit before all changes were found
+     * @see ObjectDiffMapper#diff(Object, Object, int)
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
     public Map<Object, DiffNode> getFieldDiffs() {
         return fieldDiffs;
     }
 
+    /**
+     * Field diffs keep the order they have been added in, e.g. the key order of sorted maps
+     */
     public void addFieldDiff(Object field, DiffNode diffNode) {
         if (this.fieldDiffs == null) {
-            this.fieldDiffs = new HashMap<>();
+            this.fieldDiffs = new LinkedHashMap<>();
         }
         this.fieldDiffs.put(field, diffNode);
     }
@@ -0,0 +1,14 @@
+package org.xcorpion.jdiff.api;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives the changes between two objects as they are found
+ *
+ * @see ObjectDiffMapper#visitDiff(Object, Object, DiffVisitor)
+ */
+public interface DiffVisitor {
+
+    void visit(@Nonnull DiffEvent event);
+
+}
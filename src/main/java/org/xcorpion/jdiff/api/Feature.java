@@ -16,7 +16,13 @@ public interface Feature {
 
     enum EqualityCheck implements Feature {
         USE_HASHCODE,
-        USE_EQUALS
+        USE_EQUALS,
+        /**
+         * Compares objects deeply, field by field unless their class overrides {@code equals}, see
+         * {@link org.xcorpion.jdiff.util.StructuralEquality}. Unchanged subtrees are then skipped without
+         * building any diff node for them.
+         */
+        USE_STRUCTURAL
     }
 
     enum IgnoreFields implements Feature {
@@ -33,7 +39,32 @@ public interface Feature {
     enum DiffingHandler implements Diffing {
         IGNORE_FIELD_TYPE_HANDLER,
         IGNORE_CLASS_TYPE_HANDLER,
-        IGNORE_GLOBAL_TYPE_HANDLER
+        IGNORE_GLOBAL_TYPE_HANDLER,
+        /**
+         * Diff plain objects with a handler compiled once per class instead of generic reflection
+         */
+        USE_COMPILED_OBJECT_HANDLER
+        ;
+
+        @Override
+        public boolean allowMultiple() {
+            return true;
+        }
+    }
+
+    enum ListDiffing implements Diffing {
+        /**
+         * Align list elements by equality instead of comparing them by position, so that inserting or
+         * removing an element produces a single diff instead of updating every element after it.
+         * Removed elements are keyed by {@link org.xcorpion.jdiff.util.collection.ListAlignment#removalKey(int)}
+         * and every other element diff by its index in the target list.
+         */
+        ALIGN_ELEMENTS,
+        /**
+         * Report equal elements that changed position in an aligned list as moves instead of
+         * removing and inserting them again
+         */
+        DETECT_MOVES
         ;
 
         @Override
@@ -45,7 +76,11 @@ public interface Feature {
     enum MergingHandler implements Merging {
         IGNORE_FIELD_TYPE_HANDLER,
         IGNORE_CLASS_TYPE_HANDLER,
-        IGNORE_GLOBAL_TYPE_HANDLER
+        IGNORE_GLOBAL_TYPE_HANDLER,
+        /**
+         * Apply field updates of plain objects with a handler compiled once per class
+         */
+        USE_COMPILED_OBJECT_HANDLER
         ;
 
         @Override
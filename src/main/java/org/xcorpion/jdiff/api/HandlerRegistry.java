@@ -0,0 +1,16 @@
+package org.xcorpion.jdiff.api;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A set of handlers registered in one go, e.g. the ones generated for
+ * {@link org.xcorpion.jdiff.annotation.Diffable} classes.
+ * <p>
+ * Implementations listed in {@code META-INF/services/org.xcorpion.jdiff.api.HandlerRegistry}
+ * are picked up by {@link ObjectDiffMapper#registerGeneratedHandlers()}.
+ */
+public interface HandlerRegistry {
+
+    void registerHandlers(@Nonnull ObjectDiffMapper objectDiffMapper);
+
+}
@@ -0,0 +1,17 @@
+package org.xcorpion.jdiff.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Extracts a stable identity from list elements, e.g. the id of an entity.
+ * <p>
+ * Lists whose elements have a key extractor are diffed as keyed collections: elements with equal keys are
+ * diffed against each other wherever they are in the list, and reordered elements are reported as moves.
+ */
+public interface KeyExtractor<T> {
+
+    @Nullable
+    Object getKey(@Nonnull T element);
+
+}
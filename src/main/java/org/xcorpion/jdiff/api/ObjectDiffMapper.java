@@ -1,7 +1,10 @@
 package org.xcorpion.jdiff.api;
 
 import java.lang.reflect.Type;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -10,10 +13,83 @@ public interface ObjectDiffMapper {
     @Nonnull
     <T> DiffNode diff(@Nullable T src, @Nullable T target);
 
+    /**
+     * Diffs independent subtrees in parallel in the pool of {@code parallelOptions}.
+     * The result is the same as the one of {@link #diff(Object, Object)}, except that an object reachable along
+     * several paths may be diffed at another one of them, see {@link Diff.Operation#REFERENCE}.
+     * <p>
+     * Custom handlers and equality checkers have to be thread safe to be used in parallel.
+     */
+    @Nonnull
+    <T> DiffNode diff(@Nullable T src, @Nullable T target, @Nonnull ParallelOptions parallelOptions);
+
+    /**
+     * Same as {@link #diff(Object, Object)} with at most {@code limit} changes, i.e. nodes with an operation other
+     * than {@link Diff.Operation#NO_OP}. Diffing stops once the limit has been reached and the returned root
+     * is {@link DiffNode#isTruncated() truncated} if there are more changes.
+     *
+     * @throws IllegalArgumentException if {@code limit} is negative
+     */
+    @Nonnull
+    <T> DiffNode diff(@Nullable T src, @Nullable T target, int limit);
+
+    /**
+     * @return true if {@link #diff(Object, Object)} would find any change, which stops at the first change found
+     */
+    <T> boolean hasDifferences(@Nullable T src, @Nullable T target);
+
+    /**
+     * Yields the changes between {@code src} and {@code target} in the pre-order of the diff tree of
+     * {@link #diff(Object, Object)}, without building the tree. Changes are only found as the iterator advances
+     * and the memory used is bounded by the depth of the diff rather than by its size, apart from the identities
+     * of the objects diffed so far, which are kept to find repeated ones.
+     */
+    @Nonnull
+    <T> Iterator<DiffEvent> diffEvents(@Nullable T src, @Nullable T target);
+
+    /**
+     * Same as {@link #diffEvents(Object, Object)}, e.g. for {@link java.util.stream.StreamSupport#stream}
+     */
+    @Nonnull
+    <T> Spliterator<DiffEvent> diffEventSpliterator(@Nullable T src, @Nullable T target);
+
+    /**
+     * Passes the changes of {@link #diffEvents(Object, Object)} to {@code visitor} as they are found
+     */
+    <T> void visitDiff(@Nullable T src, @Nullable T target, @Nonnull DiffVisitor visitor);
+
     <T> T applyDiff(@Nullable T src, @Nonnull DiffNode diffs);
 
     <T> T applyDiff(@Nullable T src, @Nonnull DiffNode diffs, @Nonnull Set<Feature.MergingStrategy> mergingStrategies);
 
+    /**
+     * Applies the diffs of independent subtrees in parallel in the pool of {@code parallelOptions}.
+     * An object is always applied before the subtrees below it, so the result is the same as the one of
+     * {@link #applyDiff(Object, DiffNode, Set)} as long as no object is changed along several paths of the diff,
+     * which is the case of diffs of this mapper.
+     * <p>
+     * Custom handlers and equality checkers have to be thread safe to be used in parallel.
+     */
+    <T> T applyDiff(@Nullable T src, @Nonnull DiffNode diffs, @Nonnull Set<Feature.MergingStrategy> mergingStrategies,
+            @Nonnull ParallelOptions parallelOptions);
+
+    /**
+     * Applies the same diff to every target, working out what does not depend on the target once.
+     * A target the diff cannot be applied to is reported in the result rather than failing the others.
+     * Values added or set by the diff are shared by all the targets.
+     */
+    @Nonnull
+    <T> BatchApplyResult<T> applyDiffToAll(@Nonnull Iterable<? extends T> targets, @Nonnull DiffNode diffs,
+            @Nonnull Set<Feature.MergingStrategy> mergingStrategies);
+
+    /**
+     * Same as {@link #applyDiffToAll(Iterable, DiffNode, Set)}, applying the diff to batches of targets
+     * in parallel on {@code executor}. The targets must not share any object the diff modifies.
+     */
+    @Nonnull
+    <T> BatchApplyResult<T> applyDiffToAll(@Nonnull Iterable<? extends T> targets, @Nonnull DiffNode diffs,
+            @Nonnull Set<Feature.MergingStrategy> mergingStrategies, @Nonnull Executor executor);
+
     <T> EqualityChecker<T> getEqualityChecker(@Nonnull Class<T> cls);
 
     <T> DiffingHandler<T> getDiffingHandler(@Nonnull Class<T> cls);
@@ -24,6 +100,8 @@ public interface ObjectDiffMapper {
 
     <T> MergingHandler<T> getMergingHandler(@Nonnull Type type);
 
+    <T> KeyExtractor<T> getKeyExtractor(@Nonnull Class<T> cls);
+
     <T> ObjectDiffMapper registerEqualityChecker(@Nonnull Class<T> cls, @Nonnull EqualityChecker<? super T> equalityChecker);
 
     <T> ObjectDiffMapper registerDiffingHandler(@Nonnull Class<T> cls, @Nonnull DiffingHandler<? super T> diffingHandler);
@@ -34,6 +112,22 @@ public interface ObjectDiffMapper {
 
     ObjectDiffMapper registerMergingHandler(@Nonnull AbstractMergingHandler<?> mergingHandler);
 
+    /**
+     * Lists whose elements all have a key extractor are diffed as keyed collections
+     *
+     * @see KeyExtractor
+     */
+    <T> ObjectDiffMapper registerKeyExtractor(@Nonnull Class<T> cls, @Nonnull KeyExtractor<? super T> keyExtractor);
+
+    ObjectDiffMapper registerHandlers(@Nonnull HandlerRegistry handlerRegistry);
+
+    /**
+     * Registers the handlers of every {@link HandlerRegistry} service visible to the context class loader
+     */
+    ObjectDiffMapper registerGeneratedHandlers();
+
+    ObjectDiffMapper registerGeneratedHandlers(@Nonnull ClassLoader classLoader);
+
     ObjectDiffMapper enable(@Nonnull Feature feature);
 
     ObjectDiffMapper disable(@Nonnull Feature feature);
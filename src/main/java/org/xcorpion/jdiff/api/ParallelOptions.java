@@ -0,0 +1,87 @@
+package org.xcorpion.jdiff.api;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options of {@link ObjectDiffMapper#diff(Object, Object, ParallelOptions)}.
+ * <p>
+ * Subtrees are diffed in parallel from the root down to {@link #getForkDepth()}, at every object that has
+ * at least {@link #getMinForkedChildren()} changed fields or elements. Deeper subtrees are diffed by
+ * the task that reached them.
+ * <p>
+ * Arrays, random access lists, and unsorted maps and sets with more than {@link #getChunkSize()} elements
+ * are split into chunks of that size wherever they are, which are diffed in parallel as well:
+ * arrays and lists by index range, maps and sets by the hash of their keys.
+ */
+public final class ParallelOptions {
+
+    public static final int DEFAULT_FORK_DEPTH = 4;
+    public static final int DEFAULT_MIN_FORKED_CHILDREN = 2;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int forkDepth;
+    private final int minForkedChildren;
+    private final int chunkSize;
+
+    private ParallelOptions(@Nonnull ForkJoinPool pool, int forkDepth, int minForkedChildren, int chunkSize) {
+        if (forkDepth < 0) {
+            throw new IllegalArgumentException("Fork depth must not be negative: " + forkDepth);
+        }
+        if (minForkedChildren < 2) {
+            throw new IllegalArgumentException("At least two children are needed to fork: " + minForkedChildren);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.forkDepth = forkDepth;
+        this.minForkedChildren = minForkedChildren;
+        this.chunkSize = chunkSize;
+    }
+
+    @Nonnull
+    public static ParallelOptions of(@Nonnull ForkJoinPool pool) {
+        return new ParallelOptions(pool, DEFAULT_FORK_DEPTH, DEFAULT_MIN_FORKED_CHILDREN, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param forkDepth depth of the deepest objects whose children are diffed in parallel, 0 being the root
+     */
+    @Nonnull
+    public ParallelOptions withForkDepth(int forkDepth) {
+        return new ParallelOptions(pool, forkDepth, minForkedChildren, chunkSize);
+    }
+
+    @Nonnull
+    public ParallelOptions withMinForkedChildren(int minForkedChildren) {
+        return new ParallelOptions(pool, forkDepth, minForkedChildren, chunkSize);
+    }
+
+    /**
+     * @param chunkSize number of elements of a collection diffed by a single task
+     */
+    @Nonnull
+    public ParallelOptions withChunkSize(int chunkSize) {
+        return new ParallelOptions(pool, forkDepth, minForkedChildren, chunkSize);
+    }
+
+    @Nonnull
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getForkDepth() {
+        return forkDepth;
+    }
+
+    public int getMinForkedChildren() {
+        return minForkedChildren;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+}
@@ -0,0 +1,14 @@
+package org.xcorpion.jdiff.api;
+
+/**
+ * An object telling whether it has changed, which lets the hash of its subtree be cached between diffs,
+ * see {@link org.xcorpion.jdiff.util.SubtreeHashCache}.
+ */
+public interface Versioned {
+
+    /**
+     * @return a value which changes whenever this object or anything reachable from it changes
+     */
+    long getVersion();
+
+}
@@ -0,0 +1,95 @@
+package org.xcorpion.jdiff.handler;
+
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Compiles {@link CompiledObjectDiffingHandler}s and {@link CompiledObjectMergingHandler}s the first time
+ * a class is seen and caches them for the lifetime of the class.
+ * <p>
+ * Classes which cannot be compiled are cached as well and callers are expected
+ * to fall back to reflection for them.
+ */
+public final class CompiledHandlers {
+
+    private static final ClassValue<CompiledObjectDiffingHandler<?>> DIFFING_HANDLERS =
+            new ClassValue<CompiledObjectDiffingHandler<?>>() {
+                @Override
+                protected CompiledObjectDiffingHandler<?> computeValue(Class<?> type) {
+                    if (!isCompilable(type) || hasKeyedFields(type)) {
+                        return null;
+                    }
+                    try {
+                        return CompiledObjectDiffingHandler.compile(type);
+                    } catch (IllegalAccessException | RuntimeException e) {
+                        return null;
+                    }
+                }
+            };
+
+    private static final ClassValue<CompiledObjectMergingHandler<?>> MERGING_HANDLERS =
+            new ClassValue<CompiledObjectMergingHandler<?>>() {
+                @Override
+                protected CompiledObjectMergingHandler<?> computeValue(Class<?> type) {
+                    if (!isCompilable(type) || hasKeyedFields(type)) {
+                        return null;
+                    }
+                    try {
+                        return CompiledObjectMergingHandler.compile(type);
+                    } catch (RuntimeException e) {
+                        return null;
+                    }
+                }
+            };
+
+    private CompiledHandlers() {
+    }
+
+    /**
+     * @return compiled handler for {@code cls} or null if it cannot be compiled
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> CompiledObjectDiffingHandler<T> getDiffingHandler(@Nonnull Class<T> cls) {
+        return (CompiledObjectDiffingHandler<T>) DIFFING_HANDLERS.get(cls);
+    }
+
+    /**
+     * @return compiled handler for {@code cls} or null if it cannot be compiled
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> CompiledObjectMergingHandler<T> getMergingHandler(@Nonnull Class<T> cls) {
+        return (CompiledObjectMergingHandler<T>) MERGING_HANDLERS.get(cls);
+    }
+
+    /**
+     * @return true if the declared class and both values are plain objects, i.e. the values are diffed field by field
+     */
+    public static boolean isPlainObject(@Nonnull ClassDiffPlan classPlan, @Nonnull Object src, @Nonnull Object target) {
+        return classPlan.getCategory() == ClassDiffPlan.Category.OBJECT &&
+                ClassDiffPlan.of(src.getClass()).getCategory() == ClassDiffPlan.Category.OBJECT &&
+                ClassDiffPlan.of(target.getClass()).getCategory() == ClassDiffPlan.Category.OBJECT;
+    }
+
+    private static boolean isCompilable(@Nonnull Class<?> type) {
+        return ClassDiffPlan.of(type).getCategory() == ClassDiffPlan.Category.OBJECT;
+    }
+
+    /**
+     * Nested values are diffed and merged without knowing the field they come from, so field level
+     * key extractors are left to reflection
+     */
+    private static boolean hasKeyedFields(@Nonnull Class<?> type) {
+        for (FieldDiffPlan field : ClassDiffPlan.of(type).getInstanceFields()) {
+            if (field.getKeyExtractorClass() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,384 @@
+package org.xcorpion.jdiff.handler;
+
+import org.xcorpion.jdiff.api.*;
+import org.xcorpion.jdiff.exception.DiffException;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+import org.xcorpion.jdiff.util.reflection.ReflectionUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Diffing handler compiled once for a plain object class.
+ * <p>
+ * Every field gets a getter typed to its declared type, so primitives are compared without boxing
+ * and Strings and boxed values with {@code equals}. Nested plain objects are diffed by recursing into
+ * the handler of their class, everything else goes back to the {@link ObjectDiffMapper}.
+ * The produced {@link DiffNode}s have the same shape as the ones built by reflection.
+ * <p>
+ * Recursion happens on the call stack and is limited to {@link #MAX_RECURSION_DEPTH} levels.
+ * Callers passing {@link DeferredDiffs} get the values below that depth handed back,
+ * otherwise they are diffed through {@link ObjectDiffMapper#diff(Object, Object)}.
+ *
+ * @see CompiledHandlers
+ */
+public class CompiledObjectDiffingHandler<T> implements DiffingHandler<T> {
+
+    public static final int MAX_RECURSION_DEPTH = 64;
+
+    /**
+     * Receives the nested values a handler leaves to the caller
+     */
+    public interface DeferredDiffs {
+
+        /**
+         * @param parent node the diff of the values has to be added to under {@code fieldName}
+         */
+        void defer(@Nonnull DiffNode parent, @Nonnull String fieldName, @Nonnull Type type,
+                @Nullable Object src, @Nullable Object target);
+
+        /**
+         * Called before a nested plain object is diffed by the handler itself
+         *
+         * @return false if the values have been diffed against each other before, in which case the handler
+         * adds a {@link Diff.Operation#REFERENCE} instead of diffing them again
+         */
+        default boolean visit(@Nonnull Object src, @Nonnull Object target) {
+            return true;
+        }
+
+        /**
+         * Called with the diff of a nested plain object the handler has diffed itself
+         */
+        default void diffed(@Nonnull Object src, @Nonnull Object target, @Nonnull DiffNode diffNode) {
+        }
+
+    }
+
+    private enum Kind {
+        BOOLEAN,
+        BYTE,
+        SHORT,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        VALUE,
+        OBJECT
+    }
+
+    private static final class CompiledField {
+
+        final FieldDiffPlan plan;
+        final Kind kind;
+        final Class<?> valueType;
+        final MethodHandle getter;
+        final MethodHandle typedGetter;
+
+        CompiledField(FieldDiffPlan plan, Kind kind, Class<?> valueType,
+                MethodHandle getter, MethodHandle typedGetter) {
+            this.plan = plan;
+            this.kind = kind;
+            this.valueType = valueType;
+            this.getter = getter;
+            this.typedGetter = typedGetter;
+        }
+    }
+
+    /**
+     * Mapper settings resolved once per diff and shared by all nested handlers
+     */
+    private static final class Settings {
+
+        final ObjectDiffMapper mapper;
+        final DiffingContext diffingContext;
+        final BiPredicate<Object, Object> equality;
+        final DeferredDiffs deferredDiffs;
+        final boolean ignoreTransient;
+        final boolean ignoreInaccessible;
+        final boolean ignoreFieldTypeHandler;
+        final boolean ignoreClassTypeHandler;
+        final boolean ignoreGlobalTypeHandler;
+        final boolean useHashCode;
+
+        Settings(DiffingContext diffingContext, DeferredDiffs deferredDiffs) {
+            this.mapper = diffingContext.getObjectDiffMapper();
+            this.diffingContext = diffingContext;
+            this.equality = GeneratedDiffingSupport.getEquality(diffingContext);
+            this.deferredDiffs = deferredDiffs;
+            this.ignoreTransient = mapper.isEnabled(Feature.IgnoreFields.TRANSIENT);
+            this.ignoreInaccessible = mapper.isEnabled(Feature.IgnoreFields.INACCESSIBLE);
+            this.ignoreFieldTypeHandler = mapper.isEnabled(Feature.DiffingHandler.IGNORE_FIELD_TYPE_HANDLER);
+            this.ignoreClassTypeHandler = mapper.isEnabled(Feature.DiffingHandler.IGNORE_CLASS_TYPE_HANDLER);
+            this.ignoreGlobalTypeHandler = mapper.isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER);
+            this.useHashCode = mapper.isEnabled(Feature.EqualityCheck.USE_HASHCODE);
+        }
+    }
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Class<T> type;
+    private final CompiledField[] fields;
+
+    private CompiledObjectDiffingHandler(@Nonnull Class<T> type, @Nonnull CompiledField[] fields) {
+        this.type = type;
+        this.fields = fields;
+    }
+
+    /**
+     * @param type a class that is neither an array, collection, map nor a primitive value
+     * @throws IllegalAccessException if any of the fields cannot be read through a method handle
+     */
+    @Nonnull
+    static <T> CompiledObjectDiffingHandler<T> compile(@Nonnull Class<T> type) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<FieldDiffPlan> fieldPlans = ClassDiffPlan.of(type).getFields();
+        CompiledField[] fields = new CompiledField[fieldPlans.size()];
+        for (int i = 0; i < fields.length; i++) {
+            FieldDiffPlan fieldPlan = fieldPlans.get(i);
+            Field field = fieldPlan.getField();
+            Class<?> fieldType = field.getType();
+            MethodHandle getter = lookup.unreflectGetter(field);
+            Kind kind = kindOf(fieldPlan);
+            MethodHandle typedGetter = null;
+            if (fieldType.isPrimitive()) {
+                typedGetter = getter.asType(MethodType.methodType(fieldType, Object.class));
+            }
+            fields[i] = new CompiledField(fieldPlan, kind, boxedType(fieldType),
+                    getter.asType(GETTER_TYPE), typedGetter);
+        }
+        return new CompiledObjectDiffingHandler<>(type, fields);
+    }
+
+    private static Kind kindOf(FieldDiffPlan fieldPlan) {
+        if (fieldPlan.getCategory() != ClassDiffPlan.Category.PRIMITIVE) {
+            return Kind.OBJECT;
+        }
+        Class<?> fieldType = fieldPlan.getField().getType();
+        if (fieldType == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        if (fieldType == byte.class) {
+            return Kind.BYTE;
+        }
+        if (fieldType == short.class) {
+            return Kind.SHORT;
+        }
+        if (fieldType == int.class) {
+            return Kind.INT;
+        }
+        if (fieldType == long.class) {
+            return Kind.LONG;
+        }
+        if (fieldType == float.class) {
+            return Kind.FLOAT;
+        }
+        if (fieldType == double.class) {
+            return Kind.DOUBLE;
+        }
+        return Kind.VALUE;
+    }
+
+    private static Class<?> boxedType(Class<?> cls) {
+        if (!cls.isPrimitive()) {
+            return cls;
+        }
+        return MethodType.methodType(cls).wrap().returnType();
+    }
+
+    @Nonnull
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Nonnull
+    @Override
+    public DiffNode diff(@Nonnull T src, @Nonnull T target, @Nonnull DiffingContext diffingContext) {
+        return diff(src, target, diffingContext, null);
+    }
+
+    /**
+     * @param deferredDiffs receives nested values which are not plain objects or are nested too deep,
+     *                      in which case the returned node is incomplete until the caller diffed them.
+     *                      Values are diffed right away when null.
+     */
+    @Nonnull
+    public DiffNode diff(@Nonnull T src, @Nonnull T target, @Nonnull DiffingContext diffingContext,
+            @Nullable DeferredDiffs deferredDiffs) {
+        return diff(src, target, new Settings(diffingContext, deferredDiffs), 0);
+    }
+
+    @Nonnull
+    private DiffNode diff(@Nonnull Object src, @Nonnull Object target, @Nonnull Settings settings, int depth) {
+        DiffNode diffNode = new DiffNode(new Diff(Diff.Operation.NO_OP, null, null));
+        for (CompiledField field : fields) {
+            FieldDiffPlan fieldPlan = field.plan;
+            if (settings.ignoreTransient && fieldPlan.isTransient()) {
+                continue;
+            }
+            if (settings.ignoreInaccessible && !fieldPlan.isAccessible()) {
+                continue;
+            }
+            Object srcFieldValue;
+            Object targetFieldValue;
+            try {
+                if (field.kind != Kind.OBJECT && hasPlainEquality(field, settings)) {
+                    if (rawEquals(field, src, target)) {
+                        continue;
+                    }
+                    srcFieldValue = field.getter.invokeExact(src);
+                    targetFieldValue = field.getter.invokeExact(target);
+                } else {
+                    srcFieldValue = field.getter.invokeExact(src);
+                    targetFieldValue = field.getter.invokeExact(target);
+                    if (settings.equality.test(srcFieldValue, targetFieldValue)) {
+                        continue;
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new DiffException("Failed to access field " + fieldPlan.getName() +
+                        " in " + src.getClass().getName(), e);
+            }
+            diffField(diffNode, fieldPlan, srcFieldValue, targetFieldValue, settings, depth);
+        }
+        return diffNode;
+    }
+
+    /**
+     * Primitive values can only be compared raw when the mapper would end up calling {@code equals}
+     */
+    private static boolean hasPlainEquality(CompiledField field, Settings settings) {
+        return !settings.useHashCode && settings.mapper.getEqualityChecker(field.valueType) == null;
+    }
+
+    private static boolean rawEquals(CompiledField field, Object src, Object target) throws Throwable {
+        MethodHandle getter = field.typedGetter;
+        switch (field.kind) {
+            case BOOLEAN:
+                return (boolean) getter.invokeExact(src) == (boolean) getter.invokeExact(target);
+            case BYTE:
+                return (byte) getter.invokeExact(src) == (byte) getter.invokeExact(target);
+            case SHORT:
+                return (short) getter.invokeExact(src) == (short) getter.invokeExact(target);
+            case INT:
+                return (int) getter.invokeExact(src) == (int) getter.invokeExact(target);
+            case LONG:
+                return (long) getter.invokeExact(src) == (long) getter.invokeExact(target);
+            case FLOAT:
+                // same semantics as Float.equals
+                return Float.floatToIntBits((float) getter.invokeExact(src)) ==
+                        Float.floatToIntBits((float) getter.invokeExact(target));
+            case DOUBLE:
+                // same semantics as Double.equals
+                return Double.doubleToLongBits((double) getter.invokeExact(src)) ==
+                        Double.doubleToLongBits((double) getter.invokeExact(target));
+            default:
+                Object srcValue = field.getter.invokeExact(src);
+                Object targetValue = field.getter.invokeExact(target);
+                return srcValue == targetValue || (srcValue != null && srcValue.equals(targetValue));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void diffField(@Nonnull DiffNode diffNode, @Nonnull FieldDiffPlan fieldPlan,
+            @Nullable Object srcFieldValue, @Nullable Object targetFieldValue, @Nonnull Settings settings, int depth) {
+        Type fieldType = fieldPlan.resolveType(srcFieldValue, targetFieldValue);
+        DiffingHandler<Object> fieldDiffingHandler = null;
+        if (!settings.ignoreFieldTypeHandler) {
+            Class<? extends DiffingHandler<?>> handlerClass = fieldPlan.getDiffingHandlerClass();
+            if (handlerClass != null) {
+                try {
+                    fieldDiffingHandler = (DiffingHandler<Object>) HandlerInstances.get(handlerClass);
+                }
+                catch (Throwable e) {
+                    String message = String.format("Failed to instantiate diffing handler %s for %s in %s",
+                            handlerClass.getName(),
+                            fieldPlan.getName(),
+                            type.getName());
+                    throw new DiffException(message);
+                }
+            }
+            if (fieldDiffingHandler == null) {
+                fieldDiffingHandler = settings.mapper.getDiffingHandler(fieldType);
+            }
+        }
+        if (fieldDiffingHandler == null && !settings.ignoreGlobalTypeHandler) {
+            fieldDiffingHandler = settings.mapper.getDiffingHandler(fieldType);
+        }
+        String fieldName = fieldPlan.getName();
+        if (fieldDiffingHandler != null) {
+            diffNode.addFieldDiff(fieldName,
+                    fieldDiffingHandler.diff(srcFieldValue, targetFieldValue, settings.diffingContext));
+        } else if (fieldPlan.getCategory() == ClassDiffPlan.Category.PRIMITIVE) {
+            diffNode.addFieldDiff(fieldName,
+                    new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, srcFieldValue, targetFieldValue)));
+        } else {
+            DiffNode nestedDiffNode = diffNested(fieldType, srcFieldValue, targetFieldValue, settings, depth);
+            if (nestedDiffNode != null) {
+                diffNode.addFieldDiff(fieldName, nestedDiffNode);
+            } else {
+                settings.deferredDiffs.defer(diffNode, fieldName, fieldType, srcFieldValue, targetFieldValue);
+            }
+        }
+    }
+
+    /**
+     * @return null if the values have been left to {@link Settings#deferredDiffs}
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static DiffNode diffNested(@Nonnull Type type,
+            @Nullable Object src, @Nullable Object target, @Nonnull Settings settings, int depth) {
+        if (src == null || target == null) {
+            return new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, src, target));
+        }
+        Class<?> cls = ReflectionUtils.typeToClass(type);
+        ClassDiffPlan classPlan = ClassDiffPlan.of(cls);
+        if (!settings.ignoreClassTypeHandler) {
+            Class<? extends DiffingHandler<?>> handlerClass = classPlan.getDiffingHandlerClass();
+            if (handlerClass != null) {
+                DiffingHandler<Object> diffingHandler;
+                try {
+                    diffingHandler = (DiffingHandler<Object>) HandlerInstances.get(handlerClass);
+                }
+                catch (Throwable e) {
+                    String message = String.format("Failed to instantiate diffing handler %s for %s",
+                            handlerClass.getName(),
+                            type.getTypeName());
+                    throw new DiffException(message);
+                }
+                return diffingHandler.diff(src, target, settings.diffingContext);
+            }
+        }
+        // global handlers for the field type have been looked up already by the caller
+        if (depth < MAX_RECURSION_DEPTH && CompiledHandlers.isPlainObject(classPlan, src, target)) {
+            CompiledObjectDiffingHandler<?> nestedHandler = CompiledHandlers.getDiffingHandler(cls);
+            if (nestedHandler != null) {
+                if (settings.deferredDiffs != null && !settings.deferredDiffs.visit(src, target)) {
+                    return new DiffNode(new Diff(Diff.Operation.REFERENCE, src, target));
+                }
+                DiffNode nestedDiffNode = nestedHandler.diff(src, target, settings, depth + 1);
+                if (settings.deferredDiffs != null) {
+                    settings.deferredDiffs.diffed(src, target, nestedDiffNode);
+                }
+                return nestedDiffNode;
+            }
+        }
+        if (settings.deferredDiffs != null) {
+            return null;
+        }
+        return settings.mapper.diff(src, target);
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.xcorpion.jdiff.handler;
+
+import org.xcorpion.jdiff.api.*;
+import org.xcorpion.jdiff.exception.MergingException;
+import org.xcorpion.jdiff.util.collection.DiffApplicationTree;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Merging handler compiled once for a plain object class.
+ * <p>
+ * Field diffs are resolved against a name indexed table built up front, so applying a diff
+ * does not look up fields or {@link org.xcorpion.jdiff.annotation.TypeHandler} annotations again.
+ *
+ * @see CompiledHandlers
+ */
+public class CompiledObjectMergingHandler<T> implements MergingHandler<T> {
+
+    private final Class<T> type;
+    private final Map<String, FieldDiffPlan> fields;
+
+    private CompiledObjectMergingHandler(@Nonnull Class<T> type, @Nonnull Map<String, FieldDiffPlan> fields) {
+        this.type = type;
+        this.fields = fields;
+    }
+
+    @Nonnull
+    static <T> CompiledObjectMergingHandler<T> compile(@Nonnull Class<T> type) {
+        Map<String, FieldDiffPlan> fields = new HashMap<>();
+        for (FieldDiffPlan fieldPlan : ClassDiffPlan.of(type).getInstanceFields()) {
+            // fields in subclasses shadow the ones in superclasses
+            fields.putIfAbsent(fieldPlan.getName(), fieldPlan);
+        }
+        return new CompiledObjectMergingHandler<>(type, fields);
+    }
+
+    @Nonnull
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Applies diffs of nested values as well by handing them back to the {@link ObjectDiffMapper},
+     * which applies its merging strategies to each of them as if they were root objects.
+     */
+    @Nullable
+    @Override
+    public T merge(@Nullable T src, @Nonnull DiffNode diffNode, @Nonnull MergingContext mergingContext)
+            throws MergingException {
+        Map<Object, DiffNode> fieldDiffs = diffNode.getFieldDiffs();
+        if (src == null || fieldDiffs == null) {
+            return src;
+        }
+        Set<Object> handledKeys = new HashSet<>();
+        applyFieldDiffs(src, fieldDiffs, mergingContext, handledKeys);
+        ObjectDiffMapper mapper = mergingContext.getObjectDiffMapper();
+        for (Map.Entry<Object, DiffNode> entry : fieldDiffs.entrySet()) {
+            DiffNode childDiffNode = entry.getValue();
+            Diff diff = childDiffNode.getDiff();
+            if (handledKeys.contains(entry.getKey()) || childDiffNode.getFieldDiffs() == null ||
+                    diff == null || diff.getOperation() != Diff.Operation.NO_OP) {
+                continue;
+            }
+            FieldDiffPlan fieldPlan = fields.get((String) entry.getKey());
+            if (fieldPlan == null) {
+                continue;
+            }
+            try {
+                Object fieldValue = fieldPlan.get(src);
+                fieldPlan.set(src, mapper.applyDiff(fieldValue, childDiffNode, mergingContext.getMergingStrategies()));
+            } catch (IllegalAccessException e) {
+                throw new MergingException("Failed to access field " + fieldPlan.getName() +
+                        " in " + src.getClass().getName(), e);
+            }
+        }
+        return src;
+    }
+
+    /**
+     * Applies the field level diffs of {@code obj} in place. Nested diffs are left to the caller
+     * except for the fields merged by custom handlers and the fields that do not exist,
+     * whose keys are added to {@code handledKeys}.
+     */
+    @SuppressWarnings("unchecked")
+    public void applyFieldDiffs(@Nonnull Object obj, @Nonnull Map<Object, DiffNode> fieldDiffs,
+            @Nonnull MergingContext mergingContext, @Nonnull Set<Object> handledKeys) {
+        ObjectDiffMapper objectDiffMapper = mergingContext.getObjectDiffMapper();
+        boolean ignoreFieldTypeHandler = objectDiffMapper.isEnabled(Feature.MergingHandler.IGNORE_FIELD_TYPE_HANDLER);
+        for (Map.Entry<Object, DiffNode> entry : fieldDiffs.entrySet()) {
+            String fieldName = (String) entry.getKey();
+            DiffNode currentLevelDiffNode = entry.getValue();
+            Diff diff = currentLevelDiffNode.getDiff();
+            FieldDiffPlan fieldPlan = fields.get(fieldName);
+            if (fieldPlan == null) {
+                if (objectDiffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_OBJECT_FIELD_EXISTENCE)) {
+                    throw new MergingException("Unable to find " + fieldName + " in " + obj.getClass().getName());
+                }
+                handledKeys.add(fieldName);
+                continue;
+            }
+            try {
+                if (!ignoreFieldTypeHandler) {
+                    MergingHandler<Object> mergingHandler = findMergingHandler(fieldPlan, objectDiffMapper);
+                    if (mergingHandler != null) {
+                        Object fieldSrc = DiffApplicationTree.cloneSrcIfNeeded(fieldPlan.get(obj), mergingContext);
+                        fieldPlan.set(obj, mergingHandler.merge(fieldSrc, currentLevelDiffNode, mergingContext));
+                        handledKeys.add(fieldName);
+                        continue;
+                    }
+                }
+                switch (diff.getOperation()) {
+                    case NO_OP:
+                    // applied in place along the path it has been diffed at
+                    case REFERENCE:
+                        break;
+                    case UPDATE_VALUE:
+                        fieldPlan.set(obj, diff.getTargetValue());
+                        break;
+                    default:
+                        String message = String.format("Unexpected operation: %s to be applied to field %s in %s",
+                                diff.getOperation(),
+                                fieldName,
+                                obj.getClass().getName());
+                        throw new IllegalStateException(message);
+                }
+            } catch (IllegalAccessException e) {
+                throw new MergingException("Failed to access field " + fieldName + " in " + obj.getClass().getName(), e);
+            }
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static MergingHandler<Object> findMergingHandler(@Nonnull FieldDiffPlan fieldPlan,
+            @Nonnull ObjectDiffMapper objectDiffMapper) {
+        Class<? extends MergingHandler<?>> mergingHandlerClass = fieldPlan.getMergingHandlerClass();
+        if (mergingHandlerClass != null) {
+            try {
+                return (MergingHandler<Object>) HandlerInstances.get(mergingHandlerClass);
+            }
+            catch (Throwable e) {
+                throw new MergingException("Failed to instantiate merging handler " + mergingHandlerClass +
+                        " for field " + fieldPlan.getName(), e);
+            }
+        }
+        return objectDiffMapper.getMergingHandler(fieldPlan.getGenericType());
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.xcorpion.jdiff.handler;
+
+import org.xcorpion.jdiff.api.*;
+import org.xcorpion.jdiff.exception.DiffException;
+import org.xcorpion.jdiff.internal.model.DefaultDiffingContext;
+import org.xcorpion.jdiff.util.ObjectUtils;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+
+/**
+ * Runtime part of the diffing handlers generated for {@link org.xcorpion.jdiff.annotation.Diffable} classes.
+ * One instance is created per diffed object and resolves the mapper settings once.
+ * <p>
+ * Not meant to be used directly.
+ */
+public final class GeneratedDiffingSupport {
+
+    private final ObjectDiffMapper mapper;
+    private final DiffingContext diffingContext;
+    private final BiPredicate<Object, Object> equality;
+    private final boolean ignoreTransient;
+    private final boolean ignoreInaccessible;
+    private final boolean ignoreFieldTypeHandler;
+    private final boolean ignoreGlobalTypeHandler;
+    private final boolean useHashCode;
+
+    public GeneratedDiffingSupport(@Nonnull DiffingContext diffingContext) {
+        this.mapper = diffingContext.getObjectDiffMapper();
+        this.diffingContext = diffingContext;
+        this.equality = getEquality(diffingContext);
+        this.ignoreTransient = mapper.isEnabled(Feature.IgnoreFields.TRANSIENT);
+        this.ignoreInaccessible = mapper.isEnabled(Feature.IgnoreFields.INACCESSIBLE);
+        this.ignoreFieldTypeHandler = mapper.isEnabled(Feature.DiffingHandler.IGNORE_FIELD_TYPE_HANDLER);
+        this.ignoreGlobalTypeHandler = mapper.isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER);
+        this.useHashCode = mapper.isEnabled(Feature.EqualityCheck.USE_HASHCODE);
+    }
+
+    /**
+     * Resolves the generic type of a field once when the generated handler is loaded
+     */
+    @Nonnull
+    public static Type fieldType(@Nonnull Class<?> declaringClass, @Nonnull String fieldName) {
+        try {
+            return declaringClass.getDeclaredField(fieldName).getGenericType();
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Generated handler is out of date: " + fieldName +
+                    " no longer exists in " + declaringClass.getName(), e);
+        }
+    }
+
+    /**
+     * Resolves once when the generated handler is loaded whether a field counts as inaccessible for
+     * {@link Feature.IgnoreFields#INACCESSIBLE}, which is up to the reflection based mapper
+     */
+    public static boolean isInaccessible(@Nonnull Class<?> declaringClass, @Nonnull String fieldName) {
+        FieldDiffPlan field = ClassDiffPlan.of(declaringClass).getField(fieldName);
+        if (field == null) {
+            throw new IllegalStateException("Generated handler is out of date: " + fieldName +
+                    " no longer exists in " + declaringClass.getName());
+        }
+        return !field.isAccessible();
+    }
+
+    /**
+     * @return a node to add field diffs to, or an update of the whole value if either side is null
+     */
+    @Nonnull
+    public DiffNode createDiffNode(@Nullable Object src, @Nullable Object target) {
+        if (src == null || target == null) {
+            return new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, src, target));
+        }
+        return new DiffNode(new Diff(Diff.Operation.NO_OP, null, null));
+    }
+
+    /**
+     * @param isInaccessible as resolved by {@link #isInaccessible(Class, String)}
+     */
+    public boolean isIgnored(boolean isTransient, boolean isInaccessible) {
+        return (ignoreTransient && isTransient) || (ignoreInaccessible && isInaccessible);
+    }
+
+    /**
+     * @return true if primitive values of the given boxed type can be compared with {@code ==}
+     */
+    public boolean hasPlainEquality(@Nonnull Class<?> boxedType) {
+        return !useHashCode && mapper.getEqualityChecker(boxedType) == null;
+    }
+
+    public boolean isEqualTo(@Nullable Object src, @Nullable Object target) {
+        return equality.test(src, target);
+    }
+
+    /**
+     * @return how the mapper running the diff compares values, or {@code equals} for a context it has not created
+     */
+    @Nonnull
+    static BiPredicate<Object, Object> getEquality(@Nonnull DiffingContext diffingContext) {
+        if (diffingContext instanceof DefaultDiffingContext) {
+            return ((DefaultDiffingContext) diffingContext).getEquality();
+        }
+        return Objects::equals;
+    }
+
+    /**
+     * Adds the diff of two unequal field values to {@code parent}, resolving handlers the same way
+     * the reflection based mapper does.
+     *
+     * @param leaf true if the declared field type has no fields to diff, e.g. primitives and Strings
+     * @param fieldDiffingHandler handler declared by {@link org.xcorpion.jdiff.annotation.TypeHandler} on the field
+     */
+    @SuppressWarnings("unchecked")
+    public void diffField(@Nonnull DiffNode parent, @Nonnull String fieldName, @Nonnull Type fieldType, boolean leaf,
+            @Nullable Class<? extends DiffingHandler<?>> fieldDiffingHandler,
+            @Nullable Object src, @Nullable Object target) {
+        if (Object.class.equals(fieldType)) {
+            fieldType = ObjectUtils.inferClass(src, target);
+        }
+        DiffingHandler<Object> diffingHandler = null;
+        if (!ignoreFieldTypeHandler) {
+            if (fieldDiffingHandler != null) {
+                try {
+                    diffingHandler = (DiffingHandler<Object>) HandlerInstances.get(fieldDiffingHandler);
+                }
+                catch (Throwable e) {
+                    String message = String.format("Failed to instantiate diffing handler %s for %s",
+                            fieldDiffingHandler.getName(),
+                            fieldName);
+                    throw new DiffException(message);
+                }
+            }
+            if (diffingHandler == null) {
+                diffingHandler = mapper.getDiffingHandler(fieldType);
+            }
+        }
+        if (diffingHandler == null && !ignoreGlobalTypeHandler) {
+            diffingHandler = mapper.getDiffingHandler(fieldType);
+        }
+        DiffNode diffNode;
+        if (diffingHandler != null) {
+            diffNode = diffingHandler.diff(src, target, diffingContext);
+        } else if (leaf || src == null || target == null) {
+            diffNode = new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, src, target));
+        } else {
+            diffNode = mapper.diff(src, target);
+        }
+        parent.addFieldDiff(fieldName, diffNode);
+    }
+
+}
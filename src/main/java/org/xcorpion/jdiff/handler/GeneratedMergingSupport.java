@@ -0,0 +1,134 @@
+package org.xcorpion.jdiff.handler;
+
+import org.xcorpion.jdiff.api.*;
+import org.xcorpion.jdiff.exception.MergingException;
+import org.xcorpion.jdiff.internal.model.DefaultMergingContext;
+import org.xcorpion.jdiff.util.collection.DiffApplicationTree;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+
+/**
+ * Runtime part of the merging handlers generated for {@link org.xcorpion.jdiff.annotation.Diffable} classes.
+ * One instance is created per merged object and resolves the mapper settings once.
+ * <p>
+ * Not meant to be used directly.
+ */
+public final class GeneratedMergingSupport {
+
+    private final ObjectDiffMapper mapper;
+    private final MergingContext mergingContext;
+    private final boolean ignoreFieldTypeHandler;
+
+    public GeneratedMergingSupport(@Nonnull MergingContext mergingContext) {
+        this.mapper = mergingContext.getObjectDiffMapper();
+        this.mergingContext = mergingContext;
+        this.ignoreFieldTypeHandler = mapper.isEnabled(Feature.MergingHandler.IGNORE_FIELD_TYPE_HANDLER);
+    }
+
+    /**
+     * @return true if {@code diffNode} has to be applied field by field onto {@code src}
+     */
+    public boolean hasFieldDiffs(@Nullable Object src, @Nonnull DiffNode diffNode) {
+        Diff diff = diffNode.getDiff();
+        return src != null && (diff == null || diff.getOperation() == Diff.Operation.NO_OP) &&
+                diffNode.getFieldDiffs() != null;
+    }
+
+    /**
+     * Applies a diff of the whole value
+     */
+    @Nullable
+    public Object mergeValue(@Nullable Object src, @Nonnull DiffNode diffNode) {
+        Diff diff = diffNode.getDiff();
+        if (diff == null) {
+            return src;
+        }
+        switch (diff.getOperation()) {
+            case NO_OP:
+            // applied in place along the path it has been diffed at
+            case REFERENCE:
+                return src;
+            case ADD_VALUE:
+            case UPDATE_VALUE:
+                return diff.getTargetValue();
+            case REMOVE_VALUE:
+                return null;
+            default:
+                throw new MergingException("Illegal operation for object: " + diff.getOperation());
+        }
+    }
+
+    /**
+     * @return the new value of the field
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public Object mergeField(@Nonnull String fieldName, @Nullable Object fieldValue, @Nonnull DiffNode fieldDiffNode,
+            @Nonnull Type fieldType, @Nullable Class<? extends MergingHandler<?>> fieldMergingHandler) {
+        if (!ignoreFieldTypeHandler) {
+            MergingHandler<Object> mergingHandler = null;
+            if (fieldMergingHandler != null) {
+                try {
+                    mergingHandler = (MergingHandler<Object>) HandlerInstances.get(fieldMergingHandler);
+                }
+                catch (Throwable e) {
+                    throw new MergingException("Failed to instantiate merging handler " + fieldMergingHandler +
+                            " for field " + fieldName, e);
+                }
+            }
+            if (mergingHandler == null) {
+                mergingHandler = mapper.getMergingHandler(fieldType);
+            }
+            if (mergingHandler != null) {
+                return mergingHandler.merge(DiffApplicationTree.cloneSrcIfNeeded(fieldValue, mergingContext),
+                        fieldDiffNode, mergingContext);
+            }
+        }
+        Diff diff = fieldDiffNode.getDiff();
+        switch (diff.getOperation()) {
+            case NO_OP:
+                if (fieldDiffNode.getFieldDiffs() == null || fieldValue == null) {
+                    return fieldValue;
+                }
+                return applyNested(fieldValue, fieldDiffNode, fieldType);
+            case UPDATE_VALUE:
+                return diff.getTargetValue();
+            case REFERENCE:
+                return fieldValue;
+            default:
+                String message = String.format("Unexpected operation: %s to be applied to field %s",
+                        diff.getOperation(),
+                        fieldName);
+                throw new IllegalStateException(message);
+        }
+    }
+
+    public void unknownField(@Nonnull String fieldName, @Nonnull Object obj) {
+        if (mapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_OBJECT_FIELD_EXISTENCE)) {
+            throw new MergingException("Unable to find " + fieldName + " in " + obj.getClass().getName());
+        }
+    }
+
+    private Object applyNested(@Nonnull Object fieldValue, @Nonnull DiffNode fieldDiffNode, @Nonnull Type fieldType) {
+        if (Object.class.equals(fieldType)) {
+            fieldType = fieldValue.getClass();
+        }
+        MergingContext nestedMergingContext = new DefaultMergingContext(
+                mapper,
+                mergingContext.getMergingStrategies(),
+                false
+        );
+        Iterator<DiffApplicationTree> iter =
+                new DiffApplicationTree(fieldType, fieldValue, fieldDiffNode).preOrderTraversal().iterator();
+        Object result = iter.next().applyDiff(nestedMergingContext);
+        while (iter.hasNext()) {
+            iter.next().applyDiff(nestedMergingContext);
+        }
+        return result;
+    }
+
+}
@@ -3,16 +3,32 @@ package org.xcorpion.jdiff.internal.model;
 import org.xcorpion.jdiff.api.DiffingContext;
 import org.xcorpion.jdiff.api.ObjectDiffMapper;
 
+import java.util.Objects;
+import java.util.function.BiPredicate;
+
 public class DefaultDiffingContext implements DiffingContext {
 
     private ObjectDiffMapper objectDiffMapper;
+    private BiPredicate<Object, Object> equality;
 
     public DefaultDiffingContext(ObjectDiffMapper objectDiffMapper) {
+        this(objectDiffMapper, Objects::equals);
+    }
+
+    /**
+     * @param equality how the mapper compares values, for the handlers it compiles to compare them the same way
+     */
+    public DefaultDiffingContext(ObjectDiffMapper objectDiffMapper, BiPredicate<Object, Object> equality) {
         this.objectDiffMapper = objectDiffMapper;
+        this.equality = equality;
     }
 
     @Override
     public ObjectDiffMapper getObjectDiffMapper() {
         return objectDiffMapper;
     }
+
+    public BiPredicate<Object, Object> getEquality() {
+        return equality;
+    }
 }
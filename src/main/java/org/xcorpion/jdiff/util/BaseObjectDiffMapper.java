@@ -2,6 +2,7 @@ package org.xcorpion.jdiff.util;
 
 import org.xcorpion.jdiff.api.*;
 import org.xcorpion.jdiff.exception.DiffException;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -22,27 +23,10 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
 
     private Map<Class<? extends Feature>, List<Feature>> features = new HashMap<>();
     private Map<Type, EqualityChecker<?>> equalityCheckers = new HashMap<>();
-    private Map<Type, DiffingHandler<?>> diffingHandlers = new HashMap<>();
-    private Map<Type, MergingHandler<?>> mergingHandlers = new HashMap<>();
-    private static final Set<Class<?>> PRIMITIVE_TYPES = new HashSet<>();
-
-    static {
-        PRIMITIVE_TYPES.add(Boolean.class);
-        PRIMITIVE_TYPES.add(boolean.class);
-        PRIMITIVE_TYPES.add(Byte.class);
-        PRIMITIVE_TYPES.add(byte.class);
-        PRIMITIVE_TYPES.add(Short.class);
-        PRIMITIVE_TYPES.add(short.class);
-        PRIMITIVE_TYPES.add(Integer.class);
-        PRIMITIVE_TYPES.add(int.class);
-        PRIMITIVE_TYPES.add(Long.class);
-        PRIMITIVE_TYPES.add(long.class);
-        PRIMITIVE_TYPES.add(Float.class);
-        PRIMITIVE_TYPES.add(float.class);
-        PRIMITIVE_TYPES.add(Double.class);
-        PRIMITIVE_TYPES.add(double.class);
-        PRIMITIVE_TYPES.add(String.class);
-    }
+    private HandlerLookup<DiffingHandler<?>> diffingHandlers = new HandlerLookup<>();
+    private HandlerLookup<MergingHandler<?>> mergingHandlers = new HandlerLookup<>();
+    private HandlerLookup<KeyExtractor<?>> keyExtractors = new HandlerLookup<>();
+    private volatile SubtreeHashCache subtreeHashCache;
 
     protected BaseObjectDiffMapper() {
         configureDefaultFeatures();
@@ -82,6 +66,11 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
         return (MergingHandler<T>) mergingHandlers.get(type);
     }
 
+    @Override
+    public <T> KeyExtractor<T> getKeyExtractor(@Nonnull Class<T> cls) {
+        return (KeyExtractor<T>) keyExtractors.get(cls);
+    }
+
     @Override
     public <T> ObjectDiffMapper registerEqualityChecker(@Nonnull Class<T> cls, @Nonnull EqualityChecker<? super T> equalityChecker) {
         equalityCheckers.put(cls, equalityChecker);
@@ -89,11 +78,11 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
     }
 
     protected void registerHandler(@Nonnull Type type, @Nonnull DiffingHandler<?> diffingHandler) {
-        diffingHandlers.put(type, diffingHandler);
+        diffingHandlers.register(type, diffingHandler);
     }
 
     protected void registerHandler(@Nonnull Type type, @Nonnull MergingHandler<?> mergingHandler) {
-        mergingHandlers.put(type, mergingHandler);
+        mergingHandlers.register(type, mergingHandler);
     }
 
     @Override
@@ -124,6 +113,45 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
         return this;
     }
 
+    @Override
+    public <T> ObjectDiffMapper registerKeyExtractor(@Nonnull Class<T> cls, @Nonnull KeyExtractor<? super T> keyExtractor) {
+        keyExtractors.register(cls, keyExtractor);
+        return this;
+    }
+
+    @Override
+    public ObjectDiffMapper registerHandlers(@Nonnull HandlerRegistry handlerRegistry) {
+        handlerRegistry.registerHandlers(this);
+        return this;
+    }
+
+    @Override
+    public ObjectDiffMapper registerGeneratedHandlers() {
+        for (HandlerRegistry handlerRegistry : ServiceLoader.load(HandlerRegistry.class)) {
+            registerHandlers(handlerRegistry);
+        }
+        return this;
+    }
+
+    @Override
+    public ObjectDiffMapper registerGeneratedHandlers(@Nonnull ClassLoader classLoader) {
+        for (HandlerRegistry handlerRegistry : ServiceLoader.load(HandlerRegistry.class, classLoader)) {
+            registerHandlers(handlerRegistry);
+        }
+        return this;
+    }
+
+    /**
+     * Lets equality checks of {@link Versioned} objects compare the hashes of their subtrees first,
+     * so that unchanged subtrees are skipped without walking them
+     *
+     * @param subtreeHashCache cache to use, null to stop using one
+     */
+    public ObjectDiffMapper useSubtreeHashCache(@Nullable SubtreeHashCache subtreeHashCache) {
+        this.subtreeHashCache = subtreeHashCache;
+        return this;
+    }
+
     @Override
     public ObjectDiffMapper enable(@Nonnull Feature feature) {
         if (feature.allowMultiple()) {
@@ -160,9 +188,19 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
         if (typeHandler != null) {
             return typeHandler.isEqualTo(src, target);
         }
+        SubtreeHashCache subtreeHashCache = this.subtreeHashCache;
+        if (subtreeHashCache != null && src instanceof Versioned && target instanceof Versioned &&
+                subtreeHashCache.isSameSubtree(src, target)) {
+            return true;
+        }
         if (isEnabled(Feature.EqualityCheck.USE_HASHCODE)) {
             return src.hashCode() == target.hashCode();
         }
+        if (isEnabled(Feature.EqualityCheck.USE_STRUCTURAL)) {
+            DiffSession session = DiffSession.current();
+            return session == null ? StructuralEquality.isEqual(src, target) :
+                    StructuralEquality.isEqual(src, target, session.getStructuralEquality());
+        }
         return src.equals(target);
     }
 
@@ -170,8 +208,7 @@ public abstract class BaseObjectDiffMapper implements ObjectDiffMapper {
         if (obj == null) {
             return true;
         }
-        Class<?> clz = obj.getClass();
-        return PRIMITIVE_TYPES.contains(clz);
+        return ClassDiffPlan.of(obj.getClass()).isPrimitive();
     }
 
     protected DiffNode createArrayDiffGroup(@Nonnull Object src, @Nonnull Object target) throws DiffException {
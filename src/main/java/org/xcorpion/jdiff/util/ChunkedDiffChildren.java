@@ -0,0 +1,104 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.util.collection.Tree;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * Children of a large collection split into chunks which can be diffed independently.
+ * <p>
+ * Every chunk adds its child diffs to a node of its own. The child diffs of a chunk are moved to the parent
+ * once the chunk is done, in chunk order, so the parent node is never modified by two threads at once.
+ *
+ * @see ParallelDiffTask
+ */
+class ChunkedDiffChildren implements Iterable<Tree<DiffNode>> {
+
+    private final DiffNode parentDiffNode;
+    private final int chunkCount;
+    private final BiFunction<DiffNode, Integer, Iterable<Tree<DiffNode>>> chunkDiffs;
+    private final boolean renumbered;
+    private int nextIndex;
+
+    /**
+     * @param chunkDiffs creates the children of a chunk, which are added to the given chunk node
+     * @param renumbered true if the keys of child diffs are running indices local to each chunk,
+     *                   which are replaced by running indices over all chunks
+     */
+    ChunkedDiffChildren(@Nonnull DiffNode parentDiffNode, int chunkCount,
+            @Nonnull BiFunction<DiffNode, Integer, Iterable<Tree<DiffNode>>> chunkDiffs, boolean renumbered) {
+        this.parentDiffNode = parentDiffNode;
+        this.chunkCount = chunkCount;
+        this.chunkDiffs = chunkDiffs;
+        this.renumbered = renumbered;
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return a tree of the chunk node and the children of the chunk
+     */
+    @Nonnull
+    Tree<DiffNode> createChunk(int chunk) {
+        DiffNode chunkNode = new DiffNode();
+        return new Tree<>(chunkNode, chunkDiffs.apply(chunkNode, chunk));
+    }
+
+    /**
+     * Moves the child diffs of a chunk which is done to the parent. Chunks must be completed in order.
+     */
+    void complete(@Nonnull Tree<DiffNode> chunk) {
+        Map<Object, DiffNode> fieldDiffs = chunk.getNodeValue().getFieldDiffs();
+        if (fieldDiffs == null) {
+            return;
+        }
+        for (Map.Entry<Object, DiffNode> entry : fieldDiffs.entrySet()) {
+            parentDiffNode.addFieldDiff(renumbered ? nextIndex++ : entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Iterates the chunks one after another when the collection is diffed by a single thread
+     */
+    @Override
+    public Iterator<Tree<DiffNode>> iterator() {
+        return new Iterator<Tree<DiffNode>>() {
+            int nextChunk = 0;
+            Tree<DiffNode> chunk;
+            Iterator<Tree<DiffNode>> chunkIter = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!chunkIter.hasNext()) {
+                    if (chunk != null) {
+                        complete(chunk);
+                        chunk = null;
+                    }
+                    if (nextChunk == chunkCount) {
+                        return false;
+                    }
+                    chunk = createChunk(nextChunk++);
+                    chunkIter = chunk.getChildren().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunkIter.next();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.Diff;
+import org.xcorpion.jdiff.api.DiffEvent;
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.util.collection.Tree;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a lazy diff tree in pre-order and yields its changes without keeping the nodes which have been walked.
+ * <p>
+ * Pulling a child adds its node to the field diffs of a node above it, usually its parent. The child is looked up
+ * there to find its path and removed right away, so only the nodes on the path to the current one are retained.
+ * Field diffs which are already there when a node is reached, e.g. the ones created by custom diffing handlers,
+ * are walked first.
+ */
+class DiffEventIterator implements Iterator<DiffEvent> {
+
+    private static class Frame {
+        final List<Object> path;
+        final DiffNode node;
+        final Iterator<Map.Entry<Object, DiffNode>> existingChildren;
+        final Iterator<Tree<DiffNode>> lazyChildren;
+
+        Frame(List<Object> path, DiffNode node, Iterator<Tree<DiffNode>> lazyChildren) {
+            this.path = path;
+            this.node = node;
+            Map<Object, DiffNode> fieldDiffs = node.getFieldDiffs();
+            this.existingChildren = fieldDiffs == null || fieldDiffs.isEmpty() ?
+                    Collections.emptyIterator() : new ArrayList<>(fieldDiffs.entrySet()).iterator();
+            this.lazyChildren = lazyChildren;
+        }
+    }
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private final DiffSession session;
+    private DiffEvent nextEvent;
+
+    DiffEventIterator(@Nonnull Tree<DiffNode> root, @Nonnull DiffSession session) {
+        this.session = session;
+        enter(Collections.emptyList(), root.getNodeValue(), root.getChildren().iterator());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextEvent == null && !frames.isEmpty()) {
+            session.call(this::findNextEvent);
+        }
+        return nextEvent != null;
+    }
+
+    private DiffEvent findNextEvent() {
+        while (nextEvent == null && !frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (frame.existingChildren.hasNext()) {
+                Map.Entry<Object, DiffNode> entry = frame.existingChildren.next();
+                enter(append(frame.path, Collections.singletonList(entry.getKey())), entry.getValue(),
+                        Collections.emptyIterator());
+            } else if (frame.lazyChildren.hasNext()) {
+                Tree<DiffNode> child = frame.lazyChildren.next();
+                List<Object> keys = detach(frame.node, child.getNodeValue());
+                if (keys != null) {
+                    enter(append(frame.path, keys), child.getNodeValue(), child.getChildren().iterator());
+                }
+            } else {
+                frames.pop();
+            }
+        }
+        return nextEvent;
+    }
+
+    @Override
+    public DiffEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DiffEvent event = nextEvent;
+        nextEvent = null;
+        return event;
+    }
+
+    private void enter(@Nonnull List<Object> path, @Nonnull DiffNode node, @Nonnull Iterator<Tree<DiffNode>> lazyChildren) {
+        Diff diff = node.getDiff();
+        if (diff != null && diff.getOperation() != null && diff.getOperation() != Diff.Operation.NO_OP) {
+            nextEvent = new DiffEvent(path, diff);
+        }
+        frames.push(new Frame(path, node, lazyChildren));
+    }
+
+    @Nonnull
+    private static List<Object> append(@Nonnull List<Object> path, @Nonnull List<Object> keys) {
+        List<Object> childPath = new ArrayList<>(path.size() + keys.size());
+        childPath.addAll(path);
+        childPath.addAll(keys);
+        return Collections.unmodifiableList(childPath);
+    }
+
+    /**
+     * Removes {@code child} from the field diffs below {@code node}
+     *
+     * @return keys from {@code node} to {@code child}, null if the child is not part of the diff
+     */
+    @Nullable
+    private static List<Object> detach(@Nonnull DiffNode node, @Nonnull DiffNode child) {
+        Map<Object, DiffNode> fieldDiffs = node.getFieldDiffs();
+        if (fieldDiffs == null) {
+            return null;
+        }
+        Iterator<Map.Entry<Object, DiffNode>> iter = fieldDiffs.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Object, DiffNode> entry = iter.next();
+            if (entry.getValue() == child) {
+                iter.remove();
+                return Collections.singletonList(entry.getKey());
+            }
+        }
+        for (Map.Entry<Object, DiffNode> entry : fieldDiffs.entrySet()) {
+            List<Object> keys = detach(entry.getValue(), child);
+            if (keys != null) {
+                List<Object> path = new ArrayList<>(keys.size() + 1);
+                path.add(entry.getKey());
+                path.addAll(keys);
+                return path;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.api.ParallelOptions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * State shared by everything expanding the tree of a single diff.
+ * <p>
+ * The children of a node are created lazily, long after the diff has started and possibly by other threads,
+ * e.g. by {@link ParallelDiffTask}s or the consumer of a {@link DiffEventIterator}. The session is therefore bound
+ * to the thread expanding the tree while it does so, see {@link #call(Supplier)}, rather than passed around.
+ */
+final class DiffSession {
+
+    private static final ThreadLocal<DiffSession> CURRENT = new ThreadLocal<>();
+
+    private final ParallelOptions parallelOptions;
+    private final Set<IdentityPair> visitedPairs;
+    private final Map<IdentityPair, DiffNode> owners;
+    private final Set<IdentityPair> referencedPairs;
+    private final StructuralEquality.Memo structuralEquality;
+
+    DiffSession(@Nullable ParallelOptions parallelOptions) {
+        this.parallelOptions = parallelOptions;
+        if (parallelOptions == null) {
+            this.visitedPairs = new HashSet<>();
+            this.owners = new HashMap<>();
+            this.referencedPairs = new HashSet<>();
+            this.structuralEquality = new StructuralEquality.Memo(false);
+        } else {
+            this.visitedPairs = ConcurrentHashMap.newKeySet();
+            this.owners = new ConcurrentHashMap<>();
+            this.referencedPairs = ConcurrentHashMap.newKeySet();
+            this.structuralEquality = new StructuralEquality.Memo(true);
+        }
+    }
+
+    /**
+     * @return session of the diff being expanded on the current thread, if any
+     */
+    @Nullable
+    static DiffSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return options of the parallel diff being expanded on the current thread, null if it is a sequential diff
+     */
+    @Nullable
+    static ParallelOptions currentParallelOptions() {
+        DiffSession session = CURRENT.get();
+        return session == null ? null : session.parallelOptions;
+    }
+
+    /**
+     * @return the current session, or a new sequential one if no diff is being expanded on the current thread,
+     * so that nested diffs, e.g. the ones of custom handlers, share the objects visited so far
+     */
+    @Nonnull
+    static DiffSession currentOrNew() {
+        DiffSession session = CURRENT.get();
+        return session != null ? session : new DiffSession(null);
+    }
+
+    @Nullable
+    ParallelOptions getParallelOptions() {
+        return parallelOptions;
+    }
+
+    /**
+     * Records that {@code src} is diffed against {@code target}, comparing both by identity
+     *
+     * @return false if they have been diffed against each other before in this session
+     */
+    boolean visit(@Nonnull Object src, @Nonnull Object target) {
+        IdentityPair pair = new IdentityPair(src, target);
+        if (visitedPairs.add(pair)) {
+            return true;
+        }
+        referencedPairs.add(pair);
+        return false;
+    }
+
+    /**
+     * Records the node holding the diff of a pair which has been visited for the first time
+     */
+    void own(@Nonnull Object src, @Nonnull Object target, @Nonnull DiffNode diffNode) {
+        owners.put(new IdentityPair(src, target), diffNode);
+    }
+
+    @Nullable
+    DiffNode getOwner(@Nonnull IdentityPair pair) {
+        return owners.get(pair);
+    }
+
+    /**
+     * @return pairs proven structurally equal or not equal so far, so that the objects compared at every level
+     * of the diff are compared once
+     */
+    @Nonnull
+    StructuralEquality.Memo getStructuralEquality() {
+        return structuralEquality;
+    }
+
+    /**
+     * @return pairs which have been visited more than once
+     */
+    @Nonnull
+    Set<IdentityPair> getReferencedPairs() {
+        return referencedPairs;
+    }
+
+    /**
+     * Runs {@code action} with this session bound to the current thread
+     */
+    <T> T call(@Nonnull Supplier<T> action) {
+        DiffSession previous = CURRENT.get();
+        if (previous == this) {
+            return action.get();
+        }
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.xcorpion.jdiff.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handlers registered per type, resolved against the type hierarchy.
+ * <p>
+ * A handler registered for the exact type wins. Otherwise the nearest superclass with a handler is used,
+ * then the interfaces of the class and its superclasses in breadth first order. A handler registered for
+ * {@link Object} only applies to {@link Object} itself rather than to every type, and generic types such as
+ * parameterized ones only match exactly, like before handlers were resolved against the hierarchy.
+ * Results are memoized per class, including misses, until the next registration.
+ */
+class HandlerLookup<H> {
+
+    private static final Object NONE = new Object();
+
+    private final Map<Type, H> handlers = new ConcurrentHashMap<>();
+    // replaced rather than cleared on registration, so a lookup racing with it can only memoize into a stale map
+    private volatile Map<Class<?>, Object> resolved = new ConcurrentHashMap<>();
+    private volatile boolean hasGenericTypes;
+
+    void register(@Nonnull Type type, @Nonnull H handler) {
+        handlers.put(type, handler);
+        if (!(type instanceof Class)) {
+            hasGenericTypes = true;
+        }
+        resolved = new ConcurrentHashMap<>();
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    H get(@Nonnull Type type) {
+        if (handlers.isEmpty()) {
+            return null;
+        }
+        if (!(type instanceof Class)) {
+            // generic types can only match exactly, avoid hashing them unless something was registered for one
+            return hasGenericTypes ? handlers.get(type) : null;
+        }
+        Class<?> cls = (Class<?>) type;
+        // read before resolving, so the handlers resolved against are at least as recent as the memo
+        Map<Class<?>, Object> resolved = this.resolved;
+        Object handler = resolved.get(cls);
+        if (handler == null) {
+            handler = resolve(cls);
+            resolved.put(cls, handler == null ? NONE : handler);
+        }
+        return handler == NONE ? null : (H) handler;
+    }
+
+    @Nullable
+    private H resolve(@Nonnull Class<?> cls) {
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            H handler = handlers.get(c);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        Set<Class<?>> visited = new HashSet<>();
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+            if (c.isInterface()) {
+                interfaces.add(c);
+            }
+            Collections.addAll(interfaces, c.getInterfaces());
+        }
+        while (!interfaces.isEmpty()) {
+            Class<?> c = interfaces.poll();
+            if (!visited.add(c)) {
+                continue;
+            }
+            H handler = handlers.get(c);
+            if (handler != null) {
+                return handler;
+            }
+            Collections.addAll(interfaces, c.getInterfaces());
+        }
+        return cls == Object.class ? handlers.get(Object.class) : null;
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.xcorpion.jdiff.util;
+
+/**
+ * Two objects compared by identity, e.g. a pair of objects diffed against each other
+ */
+final class IdentityPair {
+
+    final Object src;
+    final Object target;
+
+    IdentityPair(Object src, Object target) {
+        this.src = src;
+        this.target = target;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IdentityPair)) {
+            return false;
+        }
+        IdentityPair pair = (IdentityPair) o;
+        return src == pair.src && target == pair.target;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(src) + System.identityHashCode(target);
+    }
+
+}
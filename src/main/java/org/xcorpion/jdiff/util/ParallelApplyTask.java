@@ -0,0 +1,80 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.MergingContext;
+import org.xcorpion.jdiff.api.ParallelOptions;
+import org.xcorpion.jdiff.util.collection.DiffApplicationTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Applies a diff with fork/join.
+ * <p>
+ * A node is always applied before its children are pulled, so containers have been cloned or resized, and list
+ * elements updated, removed and appended, before anything below them is applied. The children of a node are
+ * then pulled by a single task, in order, since pulling them walks the updated container, and only then are
+ * their subtrees applied in parallel, each by its own task. Subtrees only change the objects below them,
+ * so the result is the same as the one of a sequential pre-order application.
+ */
+class ParallelApplyTask extends RecursiveTask<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DiffApplicationTree node;
+    private final int depth;
+    private final MergingContext mergingContext;
+    private final MergingContext childMergingContext;
+    private final ParallelOptions options;
+
+    /**
+     * @param mergingContext context to apply the node with, which is the root one at depth 0
+     * @param childMergingContext context to apply the nodes below with
+     */
+    ParallelApplyTask(@Nonnull DiffApplicationTree node, int depth, @Nonnull MergingContext mergingContext,
+            @Nonnull MergingContext childMergingContext, @Nonnull ParallelOptions options) {
+        this.node = node;
+        this.depth = depth;
+        this.mergingContext = mergingContext;
+        this.childMergingContext = childMergingContext;
+        this.options = options;
+    }
+
+    /**
+     * @return the applied object of the node
+     */
+    @Override
+    protected Object compute() {
+        Object applied = node.applyDiff(mergingContext);
+        if (depth >= options.getForkDepth()) {
+            for (DiffApplicationTree child : node.getChildren()) {
+                applySequentially(child);
+            }
+            return applied;
+        }
+        List<DiffApplicationTree> pulledChildren = new ArrayList<>();
+        for (DiffApplicationTree child : node.getChildren()) {
+            pulledChildren.add(child);
+        }
+        if (pulledChildren.size() < options.getMinForkedChildren()) {
+            for (DiffApplicationTree child : pulledChildren) {
+                new ParallelApplyTask(child, depth + 1, childMergingContext, childMergingContext, options).compute();
+            }
+            return applied;
+        }
+        List<ParallelApplyTask> tasks = new ArrayList<>(pulledChildren.size());
+        for (DiffApplicationTree child : pulledChildren) {
+            tasks.add(new ParallelApplyTask(child, depth + 1, childMergingContext, childMergingContext, options));
+        }
+        invokeAll(tasks);
+        return applied;
+    }
+
+    private void applySequentially(@Nonnull DiffApplicationTree subtree) {
+        for (DiffApplicationTree descendant : subtree.preOrderTraversal()) {
+            descendant.applyDiff(childMergingContext);
+        }
+    }
+
+}
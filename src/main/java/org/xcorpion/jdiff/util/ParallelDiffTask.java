@@ -0,0 +1,123 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.api.ParallelOptions;
+import org.xcorpion.jdiff.util.collection.Tree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a lazy diff tree with fork/join.
+ * <p>
+ * The children of a node are always pulled by a single task, in order, since pulling a child adds its node
+ * to the field diffs of the parent. Only then are the subtrees of the children expanded in parallel, each by
+ * its own task, so every {@link DiffNode} is only ever modified by one thread and the resulting tree is the
+ * same as the one of a sequential diff.
+ * <p>
+ * Children of large collections are the exception, see {@link ChunkedDiffChildren}: their chunks are
+ * expanded by a task each at any depth and joined into the parent in chunk order.
+ * <p>
+ * Objects shared between subtrees are diffed by whichever task reaches them first, so the diff has to be
+ * settled by {@link ReferenceOwnership} once the tree is complete.
+ */
+class ParallelDiffTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Tree<DiffNode> tree;
+    private final int depth;
+    private final DiffSession session;
+    private final ParallelOptions options;
+
+    ParallelDiffTask(@Nonnull Tree<DiffNode> tree, int depth, @Nonnull DiffSession session) {
+        this.tree = tree;
+        this.depth = depth;
+        this.session = session;
+        this.options = session.getParallelOptions();
+    }
+
+    @Override
+    protected void compute() {
+        session.call(() -> {
+            expand();
+            return null;
+        });
+    }
+
+    private void expand() {
+        Iterable<Tree<DiffNode>> children = tree.getChildren();
+        if (children instanceof ChunkedDiffChildren) {
+            expandChunks((ChunkedDiffChildren) children);
+            return;
+        }
+        if (depth >= options.getForkDepth()) {
+            expandInTask(children);
+            return;
+        }
+        List<Tree<DiffNode>> pulledChildren = new ArrayList<>();
+        for (Tree<DiffNode> child : children) {
+            pulledChildren.add(child);
+        }
+        if (pulledChildren.size() < options.getMinForkedChildren()) {
+            for (Tree<DiffNode> child : pulledChildren) {
+                new ParallelDiffTask(child, depth + 1, session).expand();
+            }
+            return;
+        }
+        List<ParallelDiffTask> tasks = new ArrayList<>(pulledChildren.size());
+        for (Tree<DiffNode> child : pulledChildren) {
+            tasks.add(new ParallelDiffTask(child, depth + 1, session));
+        }
+        invokeAll(tasks);
+    }
+
+    private void expandChunks(@Nonnull ChunkedDiffChildren chunkedChildren) {
+        List<ParallelDiffTask> tasks = new ArrayList<>(chunkedChildren.getChunkCount());
+        for (int chunk = 0; chunk < chunkedChildren.getChunkCount(); chunk++) {
+            // a chunk node takes the place of the parent, so its children are one level deeper
+            tasks.add(new ParallelDiffTask(chunkedChildren.createChunk(chunk), depth, session));
+        }
+        invokeAll(tasks);
+        for (ParallelDiffTask task : tasks) {
+            chunkedChildren.complete(task.tree);
+        }
+    }
+
+    /**
+     * Same as {@link #expandSequentially} except that chunked children below are still expanded in parallel
+     */
+    private void expandInTask(@Nonnull Iterable<Tree<DiffNode>> children) {
+        Deque<Iterator<Tree<DiffNode>>> iterators = new ArrayDeque<>();
+        iterators.push(children.iterator());
+        while (!iterators.isEmpty()) {
+            Iterator<Tree<DiffNode>> iter = iterators.peek();
+            if (!iter.hasNext()) {
+                iterators.pop();
+                continue;
+            }
+            Tree<DiffNode> child = iter.next();
+            Iterable<Tree<DiffNode>> grandChildren = child.getChildren();
+            if (grandChildren instanceof ChunkedDiffChildren) {
+                new ParallelDiffTask(child, depth + iterators.size(), session)
+                        .expandChunks((ChunkedDiffChildren) grandChildren);
+            } else {
+                iterators.push(grandChildren.iterator());
+            }
+        }
+    }
+
+    static void expandSequentially(@Nonnull Tree<DiffNode> tree) {
+        // this introduces side effects as it builds the tree as traversal goes
+        Iterator<DiffNode> iter = tree.preOrderTraversal().iterator();
+        while (iter.hasNext()) {
+            iter.next();
+        }
+    }
+
+}
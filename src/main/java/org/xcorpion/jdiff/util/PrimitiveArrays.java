@@ -0,0 +1,141 @@
+package org.xcorpion.jdiff.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Boxing free scanning and writing of primitive arrays.
+ * <p>
+ * Elements are compared with the semantics of the boxed {@code equals()}, so floating point values
+ * are compared by their bits. {@code char[]} is not supported as {@link Character} is not diffed as a primitive.
+ */
+public final class PrimitiveArrays {
+
+    private PrimitiveArrays() {
+    }
+
+    /**
+     * @return boxed type of the array elements or null if the array type is not supported
+     */
+    @Nullable
+    public static Class<?> getBoxedComponentType(@Nonnull Class<?> arrayClass) {
+        Class<?> componentType = arrayClass.getComponentType();
+        if (componentType == int.class) {
+            return Integer.class;
+        }
+        if (componentType == long.class) {
+            return Long.class;
+        }
+        if (componentType == double.class) {
+            return Double.class;
+        }
+        if (componentType == float.class) {
+            return Float.class;
+        }
+        if (componentType == short.class) {
+            return Short.class;
+        }
+        if (componentType == byte.class) {
+            return Byte.class;
+        }
+        if (componentType == boolean.class) {
+            return Boolean.class;
+        }
+        return null;
+    }
+
+    /**
+     * @param src supported primitive array
+     * @param target array of the same type as {@code src}
+     * @return the first index in {@code [from, to)} at which the arrays differ, or -1 if there is none
+     */
+    public static int nextMismatch(@Nonnull Object src, @Nonnull Object target, int from, int to) {
+        if (src instanceof int[]) {
+            int[] a = (int[]) src;
+            int[] b = (int[]) target;
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return i;
+                }
+            }
+        } else if (src instanceof long[]) {
+            long[] a = (long[]) src;
+            long[] b = (long[]) target;
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return i;
+                }
+            }
+        } else if (src instanceof double[]) {
+            double[] a = (double[]) src;
+            double[] b = (double[]) target;
+            for (int i = from; i < to; i++) {
+                if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i])) {
+                    return i;
+                }
+            }
+        } else if (src instanceof float[]) {
+            float[] a = (float[]) src;
+            float[] b = (float[]) target;
+            for (int i = from; i < to; i++) {
+                if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i])) {
+                    return i;
+                }
+            }
+        } else if (src instanceof short[]) {
+            short[] a = (short[]) src;
+            short[] b = (short[]) target;
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return i;
+                }
+            }
+        } else if (src instanceof byte[]) {
+            byte[] a = (byte[]) src;
+            byte[] b = (byte[]) target;
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return i;
+                }
+            }
+        } else if (src instanceof boolean[]) {
+            boolean[] a = (boolean[]) src;
+            boolean[] b = (boolean[]) target;
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return i;
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported array type: " + src.getClass().getName());
+        }
+        return -1;
+    }
+
+    /**
+     * Writes {@code value} without going through {@link java.lang.reflect.Array#set}
+     *
+     * @return false if {@code value} is not exactly the boxed component type and has to be converted by the caller
+     */
+    public static boolean set(@Nonnull Object array, int index, @Nullable Object value) {
+        if (array instanceof int[] && value instanceof Integer) {
+            ((int[]) array)[index] = (Integer) value;
+        } else if (array instanceof long[] && value instanceof Long) {
+            ((long[]) array)[index] = (Long) value;
+        } else if (array instanceof double[] && value instanceof Double) {
+            ((double[]) array)[index] = (Double) value;
+        } else if (array instanceof float[] && value instanceof Float) {
+            ((float[]) array)[index] = (Float) value;
+        } else if (array instanceof short[] && value instanceof Short) {
+            ((short[]) array)[index] = (Short) value;
+        } else if (array instanceof byte[] && value instanceof Byte) {
+            ((byte[]) array)[index] = (Byte) value;
+        } else if (array instanceof boolean[] && value instanceof Boolean) {
+            ((boolean[]) array)[index] = (Boolean) value;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+}
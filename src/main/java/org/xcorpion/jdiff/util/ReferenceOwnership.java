@@ -0,0 +1,105 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.Diff;
+import org.xcorpion.jdiff.api.DiffNode;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Moves the diff of every pair of objects reached along several paths to the first of these paths in pre-order
+ * of the field diffs, leaving {@link Diff.Operation#REFERENCE}s on all the others.
+ * <p>
+ * Which path gets to diff a shared pair depends on the order the tree is expanded in, which differs from run to run
+ * of a parallel diff and, with compiled handlers diffing nested objects ahead of their siblings, from the pre-order
+ * of the tree. Settling the pairs on the finished tree makes the result independent of it.
+ */
+final class ReferenceOwnership {
+
+    private ReferenceOwnership() {
+    }
+
+    static void settle(@Nonnull DiffNode root, @Nonnull DiffSession session) {
+        Map<DiffNode, IdentityPair> ownedPairs = new IdentityHashMap<>();
+        for (IdentityPair pair : session.getReferencedPairs()) {
+            DiffNode owner = session.getOwner(pair);
+            if (owner != null) {
+                ownedPairs.put(owner, pair);
+            }
+        }
+        if (ownedPairs.isEmpty()) {
+            return;
+        }
+        Map<DiffNode, Map.Entry<Object, DiffNode>> ownerEntries = new IdentityHashMap<>();
+        walk(root, entry -> {
+            if (ownedPairs.containsKey(entry.getValue())) {
+                ownerEntries.put(entry.getValue(), entry);
+            }
+        });
+        Set<IdentityPair> settledPairs = new HashSet<>();
+        if (ownedPairs.containsKey(root)) {
+            settledPairs.add(ownedPairs.get(root));
+        }
+        walk(root, entry -> {
+            DiffNode node = entry.getValue();
+            Diff diff = node.getDiff();
+            if (diff.getOperation() != Diff.Operation.REFERENCE) {
+                IdentityPair pair = ownedPairs.get(node);
+                if (pair != null) {
+                    settledPairs.add(pair);
+                }
+                return;
+            }
+            IdentityPair pair = new IdentityPair(diff.getSrcValue(), diff.getTargetValue());
+            DiffNode owner = session.getOwner(pair);
+            if (owner == null) {
+                return;
+            }
+            if (settledPairs.add(pair)) {
+                // owners are not always part of the tree, e.g. the diffs of moved list elements
+                Map.Entry<Object, DiffNode> ownerEntry = ownerEntries.get(owner);
+                if (ownerEntry != null) {
+                    entry.setValue(owner);
+                    ownerEntry.setValue(node);
+                    ownerEntries.put(owner, entry);
+                }
+            } else if (owner.getDiff().getOperation() == Diff.Operation.UPDATE_VALUE && owner.getFieldDiffs() == null) {
+                // a replaced value is not patched in place, so every path has to replace it
+                entry.setValue(new DiffNode(owner.getDiff()));
+            }
+        });
+    }
+
+    /**
+     * Visits the field diffs below {@code root} in pre-order. Nodes are descended into after they have been visited,
+     * so the visitor may replace them.
+     */
+    private static void walk(@Nonnull DiffNode root, @Nonnull Consumer<Map.Entry<Object, DiffNode>> visitor) {
+        if (root.getFieldDiffs() == null) {
+            return;
+        }
+        Deque<Iterator<Map.Entry<Object, DiffNode>>> iterators = new ArrayDeque<>();
+        iterators.push(root.getFieldDiffs().entrySet().iterator());
+        while (!iterators.isEmpty()) {
+            Iterator<Map.Entry<Object, DiffNode>> iter = iterators.peek();
+            if (!iter.hasNext()) {
+                iterators.pop();
+                continue;
+            }
+            Map.Entry<Object, DiffNode> entry = iter.next();
+            visitor.accept(entry);
+            Map<Object, DiffNode> fieldDiffs = entry.getValue().getFieldDiffs();
+            if (fieldDiffs != null) {
+                iterators.push(fieldDiffs.entrySet().iterator());
+            }
+        }
+    }
+
+}
@@ -1,42 +1,188 @@
 package org.xcorpion.jdiff.util;
 
-import org.xcorpion.jdiff.annotation.TypeHandler;
 import org.xcorpion.jdiff.api.*;
 import org.xcorpion.jdiff.exception.DiffException;
 import org.xcorpion.jdiff.exception.MergingException;
+import org.xcorpion.jdiff.handler.CompiledHandlers;
+import org.xcorpion.jdiff.handler.CompiledObjectDiffingHandler;
 import org.xcorpion.jdiff.internal.model.DefaultDiffingContext;
 import org.xcorpion.jdiff.internal.model.DefaultMergingContext;
+import org.xcorpion.jdiff.util.collection.DiffApplicationPlan;
 import org.xcorpion.jdiff.util.collection.DiffApplicationTree;
+import org.xcorpion.jdiff.util.collection.ElementKeys;
 import org.xcorpion.jdiff.util.collection.Iterables;
+import org.xcorpion.jdiff.util.collection.ListAlignment;
 import org.xcorpion.jdiff.util.collection.Tree;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
 import org.xcorpion.jdiff.util.reflection.ReflectionUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public class ReflectionObjectDiffMapper
         extends BaseObjectDiffMapper
         implements ObjectDiffMapper {
 
+    // number of targets a diff is applied to by a single task of applyDiffToAll
+    private static final int BATCH_APPLY_SIZE = 64;
+
+    private static class DeferredFieldDiff {
+        final DiffNode parent;
+        final String fieldName;
+        final Type type;
+        final Object srcValue;
+        final Object targetValue;
+
+        DeferredFieldDiff(DiffNode parent, String fieldName, Type type, Object srcValue, Object targetValue) {
+            this.parent = parent;
+            this.fieldName = fieldName;
+            this.type = type;
+            this.srcValue = srcValue;
+            this.targetValue = targetValue;
+        }
+    }
+
+    /**
+     * Creates the children of the indices {@code [from, to)} of an array or list
+     */
+    private interface IndexRangeDiffs {
+        Iterable<Tree<DiffNode>> create(@Nonnull DiffNode parentDiffNode, int from, int to);
+    }
+
+    // marks the end of a sorted set while walking it
+    private static final Object NO_MORE_ELEMENTS = new Object();
+
+    private static class ListEdit {
+        final Diff.Operation operation;
+        final int srcIndex;
+        final int targetIndex;
+        // diff of a moved element which is not equal to its target, its nested diffs not expanded yet
+        final Tree<DiffNode> movedElementDiff;
+
+        ListEdit(Diff.Operation operation, int srcIndex, int targetIndex) {
+            this(operation, srcIndex, targetIndex, null);
+        }
+
+        ListEdit(Diff.Operation operation, int srcIndex, int targetIndex, Tree<DiffNode> movedElementDiff) {
+            this.operation = operation;
+            this.srcIndex = srcIndex;
+            this.targetIndex = targetIndex;
+            this.movedElementDiff = movedElementDiff;
+        }
+    }
+
     @Override
     @Nonnull
     public <T> DiffNode diff(@Nullable T src, @Nullable T target) {
-        if (isEqualTo(src, target)) {
+        // nested diffs, e.g. the ones of custom handlers, are part of the diff which owns the session
+        boolean nested = DiffSession.current() != null;
+        DiffSession session = DiffSession.currentOrNew();
+        return session.call(() -> {
+            if (isEqualTo(src, target)) {
+                return new DiffNode();
+            }
+            Tree<DiffNode> diffTree = createNextDiffTreeNode(ObjectUtils.inferClass(src, target), src, target);
+            ParallelDiffTask.expandSequentially(diffTree);
+            if (!nested) {
+                ReferenceOwnership.settle(diffTree.getNodeValue(), session);
+            }
+            return diffTree.getNodeValue();
+        });
+    }
+
+    @Override
+    @Nonnull
+    public <T> DiffNode diff(@Nullable T src, @Nullable T target, @Nonnull ParallelOptions parallelOptions) {
+        DiffSession session = new DiffSession(parallelOptions);
+        if (session.call(() -> isEqualTo(src, target))) {
             return new DiffNode();
         }
-        Tree<DiffNode> diffTree = createNextDiffTreeNode(ObjectUtils.inferClass(src, target), src, target);
-        Iterable<DiffNode> diffGroups = diffTree.preOrderTraversal();
-        Iterator<DiffNode> iter = diffGroups.iterator();
-        DiffNode root = iter.next();
-        // this introduces side effects as it builds the tree as traversal goes
-        while (iter.hasNext()) {
-            iter.next();
+        Tree<DiffNode> diffTree = session.call(
+                () -> createNextDiffTreeNode(ObjectUtils.inferClass(src, target), src, target));
+        parallelOptions.getPool().invoke(new ParallelDiffTask(diffTree, 0, session));
+        ReferenceOwnership.settle(diffTree.getNodeValue(), session);
+        return diffTree.getNodeValue();
+    }
+
+    /**
+     * Rebuilds the diff tree from the first {@code limit} changes, so that no more of the tree is expanded
+     */
+    @Override
+    @Nonnull
+    public <T> DiffNode diff(@Nullable T src, @Nullable T target, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Change limit must not be negative: " + limit);
         }
+        Iterator<DiffEvent> events = diffEvents(src, target);
+        DiffNode root = null;
+        for (int count = 0; count < limit && events.hasNext(); count++) {
+            DiffEvent event = events.next();
+            List<Object> path = event.getPath();
+            if (path.isEmpty()) {
+                root = new DiffNode(event.getDiff());
+                continue;
+            }
+            if (root == null) {
+                root = new DiffNode(new Diff());
+            }
+            DiffNode parent = root;
+            for (Object key : path.subList(0, path.size() - 1)) {
+                DiffNode node = parent.getFieldDiffs() == null ? null : parent.getFieldDiffs().get(key);
+                if (node == null) {
+                    node = new DiffNode(new Diff());
+                    parent.addFieldDiff(key, node);
+                }
+                parent = node;
+            }
+            parent.addFieldDiff(path.get(path.size() - 1), new DiffNode(event.getDiff()));
+        }
+        if (root == null) {
+            root = new DiffNode();
+        }
+        root.setTruncated(events.hasNext());
         return root;
     }
 
+    @Override
+    public <T> boolean hasDifferences(@Nullable T src, @Nullable T target) {
+        return diffEvents(src, target).hasNext();
+    }
+
+    @Override
+    @Nonnull
+    public <T> Iterator<DiffEvent> diffEvents(@Nullable T src, @Nullable T target) {
+        DiffSession session = DiffSession.currentOrNew();
+        if (session.call(() -> isEqualTo(src, target))) {
+            return Collections.emptyIterator();
+        }
+        return new DiffEventIterator(session.call(
+                () -> createNextDiffTreeNode(ObjectUtils.inferClass(src, target), src, target)), session);
+    }
+
+    @Override
+    @Nonnull
+    public <T> Spliterator<DiffEvent> diffEventSpliterator(@Nullable T src, @Nullable T target) {
+        return Spliterators.spliteratorUnknownSize(diffEvents(src, target),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @Override
+    public <T> void visitDiff(@Nullable T src, @Nullable T target, @Nonnull DiffVisitor visitor) {
+        Iterator<DiffEvent> events = diffEvents(src, target);
+        while (events.hasNext()) {
+            visitor.visit(events.next());
+        }
+    }
+
     @Nonnull
     private DiffNode createDiffGroupOneLevel(@Nullable Object src, @Nullable Object target) {
         if (target == DELETION_MARK) {
@@ -77,20 +223,67 @@ public class ReflectionObjectDiffMapper
             return createArrayDiffIterable(parentDiffNode, src, target);
         }
         if (src instanceof Set) {
+            if (target instanceof Set) {
+                ElementKeys elementKeys = findElementKeys((Set<?>) src, (Set<?>) target);
+                Iterable<Tree<DiffNode>> keyedSetDiffs = elementKeys == null ? null :
+                        createKeyedSetDiffIterable(parentDiffNode, (Set<?>) src, (Set<?>) target, elementKeys);
+                if (keyedSetDiffs != null) {
+                    return keyedSetDiffs;
+                }
+            }
+            if (src instanceof SortedSet && target instanceof SortedSet) {
+                Comparator<Object> ordering = findSharedOrdering(
+                        ((SortedSet<?>) src).comparator(), ((SortedSet<?>) target).comparator());
+                if (ordering != null) {
+                    return createSortedSetDiffIterable(parentDiffNode, (SortedSet<?>) src, (SortedSet<?>) target,
+                            ordering);
+                }
+            }
             return createSetDiffIterable(parentDiffNode, src, target);
         }
         if (src instanceof Map) {
+            if (src instanceof SortedMap && target instanceof SortedMap) {
+                Comparator<Object> ordering = findSharedOrdering(
+                        ((SortedMap<?, ?>) src).comparator(), ((SortedMap<?, ?>) target).comparator());
+                if (ordering != null) {
+                    return createSortedMapDiffIterable(parentDiffNode, (SortedMap<?, ?>) src,
+                            (SortedMap<?, ?>) target, ordering);
+                }
+            }
             return createMapDiffIterable(parentDiffNode, src, target);
         }
+        if (src instanceof List && target instanceof List) {
+            // looking for key extractors stops at the first element without one, so plain lists are not copied
+            ElementKeys elementKeys = findElementKeys((List<?>) src, (List<?>) target);
+            if (elementKeys != null || isEnabled(Feature.ListDiffing.ALIGN_ELEMENTS)) {
+                return createAlignedListDiffIterable(parentDiffNode,
+                        ((List<?>) src).toArray(), ((List<?>) target).toArray(), elementKeys);
+            }
+        }
+        if (src instanceof List && src instanceof RandomAccess &&
+                target instanceof List && target instanceof RandomAccess) {
+            List<?> srcList = (List<?>) src;
+            List<?> targetList = (List<?>) target;
+            Iterable<Tree<DiffNode>> chunkedDiffs = createChunkedRangeDiffIterable(parentDiffNode,
+                    Math.max(srcList.size(), targetList.size()),
+                    (chunkNode, from, to) -> createListRangeDiffIterable(chunkNode, srcList, targetList, from, to));
+            if (chunkedDiffs != null) {
+                return chunkedDiffs;
+            }
+        }
         if (src instanceof Iterable) {
             return createOrderedDiffIterable(parentDiffNode, src, target);
         }
 
-        List<Field> fields = ReflectionUtils.getAllFieldsRecursive(objectClass);
+        List<FieldDiffPlan> fields = ClassDiffPlan.of(objectClass).getFields();
+        boolean ignoreTransient = isEnabled(Feature.IgnoreFields.TRANSIENT);
+        boolean ignoreInaccessible = isEnabled(Feature.IgnoreFields.INACCESSIBLE);
+        boolean ignoreFieldTypeHandler = isEnabled(Feature.DiffingHandler.IGNORE_FIELD_TYPE_HANDLER);
+        boolean ignoreGlobalTypeHandler = isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER);
 
         return () -> new Iterator<Tree<DiffNode>>() {
             int index = 0;
-            Field field;
+            FieldDiffPlan field;
             Type fieldType;
             Object srcFieldValue;
             Object targetFieldValue;
@@ -108,15 +301,12 @@ public class ReflectionObjectDiffMapper
                 for (; index < fields.size(); index++) {
                     reset();
                     field = fields.get(index);
-                    if (isEnabled(Feature.IgnoreFields.TRANSIENT)) {
-                        if (Modifier.isTransient(field.getModifiers())) {
-                            continue;
-                        }
+                    if (ignoreTransient && field.isTransient()) {
+                        continue;
                     }
-                    if (isEnabled(Feature.IgnoreFields.INACCESSIBLE) && !field.isAccessible()) {
+                    if (ignoreInaccessible && !field.isAccessible()) {
                         continue;
                     }
-                    field.setAccessible(true);
                     try {
                         srcFieldValue = field.get(src);
                     } catch (IllegalAccessException e) {
@@ -132,18 +322,18 @@ public class ReflectionObjectDiffMapper
                     if (isEqualTo(srcFieldValue, targetFieldValue)) {
                         continue;
                     }
-                    fieldType = ReflectionUtils.guessType(field, srcFieldValue, targetFieldValue);
+                    fieldType = field.resolveType(srcFieldValue, targetFieldValue);
                     index++;
-                    if (!isEnabled(Feature.DiffingHandler.IGNORE_FIELD_TYPE_HANDLER)) {
-                        TypeHandler typeHandler = field.getAnnotation(TypeHandler.class);
-                        if (typeHandler != null && typeHandler.diffUsing() != TypeHandler.None.class) {
+                    if (!ignoreFieldTypeHandler) {
+                        Class<? extends DiffingHandler<?>> handlerClass = field.getDiffingHandlerClass();
+                        if (handlerClass != null) {
                             try {
                                 //noinspection unchecked
-                                fieldDiffingHandler = (DiffingHandler<Object>) typeHandler.diffUsing().newInstance();
+                                fieldDiffingHandler = (DiffingHandler<Object>) HandlerInstances.get(handlerClass);
                             }
                             catch (Throwable e) {
                                 String message = String.format("Failed to instantiate diffing handler %s for %s in %s",
-                                        typeHandler.diffUsing().getName(),
+                                        handlerClass.getName(),
                                         field.getName(),
                                         objectClass.getName());
                                 throw new DiffException(message);
@@ -153,7 +343,7 @@ public class ReflectionObjectDiffMapper
                             fieldDiffingHandler = getDiffingHandler(fieldType);
                         }
                     }
-                    if (fieldDiffingHandler == null && !isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER)) {
+                    if (fieldDiffingHandler == null && !ignoreGlobalTypeHandler) {
                         fieldDiffingHandler = getDiffingHandler(fieldType);
                     }
                     return true;
@@ -166,8 +356,14 @@ public class ReflectionObjectDiffMapper
                 Tree<DiffNode> nextDiffTreeNode;
                 if (fieldDiffingHandler != null) {
                     DiffNode diffNode = fieldDiffingHandler.diff(srcFieldValue, targetFieldValue,
-                            new DefaultDiffingContext(ReflectionObjectDiffMapper.this));
+                            createDiffingContext());
                     nextDiffTreeNode = new Tree<>(diffNode);
+                } else if (field.getCategory() == ClassDiffPlan.Category.PRIMITIVE) {
+                    // declared primitive types are final, so there is nothing below this level
+                    nextDiffTreeNode = new Tree<>(createPrimitiveUpdateDiffGroup(srcFieldValue, targetFieldValue));
+                } else if (!ignoreFieldTypeHandler && field.getKeyExtractorClass() != null) {
+                    nextDiffTreeNode = createKeyedDiffTreeNode(fieldType, srcFieldValue, targetFieldValue,
+                            createFieldElementKeys(field, objectClass));
                 } else {
                     nextDiffTreeNode = createNextDiffTreeNode(fieldType, srcFieldValue, targetFieldValue);
                 }
@@ -179,18 +375,33 @@ public class ReflectionObjectDiffMapper
 
     private Iterable<Tree<DiffNode>> createArrayDiffIterable(@Nonnull DiffNode parentDiffNode,
             @Nonnull final Object src, @Nonnull final Object target) {
+        int maxSize = Math.max(Array.getLength(src), Array.getLength(target));
+        IndexRangeDiffs rangeDiffs;
+        if (src.getClass() == target.getClass() && hasPlainPrimitiveElements(src.getClass())) {
+            rangeDiffs = (chunkNode, from, to) -> createPrimitiveArrayDiffIterable(chunkNode, src, target, from, to);
+        } else {
+            rangeDiffs = (chunkNode, from, to) -> createArrayRangeDiffIterable(chunkNode, src, target, from, to);
+        }
+        Iterable<Tree<DiffNode>> chunkedDiffs = createChunkedRangeDiffIterable(parentDiffNode, maxSize, rangeDiffs);
+        return chunkedDiffs != null ? chunkedDiffs : rangeDiffs.create(parentDiffNode, 0, maxSize);
+    }
+
+    /**
+     * @return children of the elements in {@code [from, to)} of two arrays
+     */
+    private Iterable<Tree<DiffNode>> createArrayRangeDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull final Object src, @Nonnull final Object target, int from, int to) {
         int srcArraySize = Array.getLength(src);
         int targetArraySize = Array.getLength(target);
-        int maxSize = Math.max(srcArraySize, targetArraySize);
 
         return () -> new Iterator<Tree<DiffNode>>() {
-            int index = 0;
+            int index = from;
             Object srcValue = null;
             Object targetValue = null;
 
             @Override
             public boolean hasNext() {
-                for (; index < maxSize; index++) {
+                for (; index < to; index++) {
                     srcValue = null;
                     targetValue = null;
                     if (index < srcArraySize) {
@@ -233,6 +444,118 @@ public class ReflectionObjectDiffMapper
         };
     }
 
+    /**
+     * Same as {@link #createOrderedDiffIterable} for the elements in {@code [from, to)} of two random access lists
+     */
+    private Iterable<Tree<DiffNode>> createListRangeDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull List<?> src, @Nonnull List<?> target, int from, int to) {
+        int srcSize = src.size();
+        int targetSize = target.size();
+
+        return () -> new Iterator<Tree<DiffNode>>() {
+            int index = from;
+            int diffIndex = -1;
+            Object srcValue;
+            Object targetValue;
+
+            @Override
+            public boolean hasNext() {
+                if (diffIndex >= 0) {
+                    return true;
+                }
+                for (; index < to; index++) {
+                    srcValue = index < srcSize ? src.get(index) : null;
+                    targetValue = index < targetSize ? target.get(index) : null;
+                    if (!isEqualTo(srcValue, targetValue)) {
+                        diffIndex = index++;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int currentIndex = diffIndex;
+                diffIndex = -1;
+                Tree<DiffNode> nextDiffTreeNode;
+                if (currentIndex < srcSize && currentIndex < targetSize) {
+                    nextDiffTreeNode = createNextDiffTreeNode(ObjectUtils.inferClass(srcValue, targetValue),
+                            srcValue, targetValue);
+                } else if (currentIndex >= targetSize) {
+                    nextDiffTreeNode = new Tree<>(new DiffNode(new Diff(Diff.Operation.REMOVE_VALUE, srcValue, null)));
+                } else {
+                    nextDiffTreeNode = new Tree<>(new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, targetValue)));
+                }
+                parentDiffNode.addFieldDiff(currentIndex, nextDiffTreeNode.getNodeValue());
+                return nextDiffTreeNode;
+            }
+        };
+    }
+
+    /**
+     * Splits the indices {@code [0, size)} into chunks of {@link ParallelOptions#getChunkSize()} indices
+     * when running a parallel diff
+     *
+     * @return null if there is a single chunk
+     */
+    @Nullable
+    private static Iterable<Tree<DiffNode>> createChunkedRangeDiffIterable(@Nonnull DiffNode parentDiffNode,
+            int size, @Nonnull IndexRangeDiffs rangeDiffs) {
+        ParallelOptions options = DiffSession.currentParallelOptions();
+        if (options == null || size <= options.getChunkSize()) {
+            return null;
+        }
+        int chunkSize = options.getChunkSize();
+        return new ChunkedDiffChildren(parentDiffNode, (size - 1) / chunkSize + 1, (chunkNode, chunk) -> {
+            int from = chunk * chunkSize;
+            return rangeDiffs.create(chunkNode, from, from + Math.min(chunkSize, size - from));
+        }, false);
+    }
+
+    /**
+     * Splits two unordered collections into chunks of roughly {@link ParallelOptions#getChunkSize()} elements
+     * by the hash of their keys when running a parallel diff. Each chunk still looks its elements up
+     * in the whole other collection, so keys which are equal but hash differently are diffed correctly.
+     *
+     * @return null if there is a single chunk
+     */
+    @Nullable
+    private static <E> Iterable<Tree<DiffNode>> createChunkedHashDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull Collection<E> src, @Nonnull Collection<E> target, @Nonnull Function<E, Object> keys,
+            @Nonnull BiFunction<DiffNode, List<List<E>>, Iterable<Tree<DiffNode>>> partitionDiffs,
+            boolean renumbered) {
+        ParallelOptions options = DiffSession.currentParallelOptions();
+        int size = Math.max(src.size(), target.size());
+        if (options == null || size <= options.getChunkSize()) {
+            return null;
+        }
+        int chunkCount = (size - 1) / options.getChunkSize() + 1;
+        List<List<E>> srcPartitions = partitionByHash(src, keys, chunkCount);
+        List<List<E>> targetPartitions = partitionByHash(target, keys, chunkCount);
+        return new ChunkedDiffChildren(parentDiffNode, chunkCount,
+                (chunkNode, chunk) -> partitionDiffs.apply(chunkNode,
+                        Arrays.asList(srcPartitions.get(chunk), targetPartitions.get(chunk))),
+                renumbered);
+    }
+
+    @Nonnull
+    private static <E> List<List<E>> partitionByHash(@Nonnull Collection<E> elements, @Nonnull Function<E, Object> keys,
+            int partitionCount) {
+        List<List<E>> partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayList<>(elements.size() / partitionCount + 1));
+        }
+        for (E element : elements) {
+            int hash = Objects.hashCode(keys.apply(element));
+            partitions.get(Math.floorMod(hash ^ (hash >>> 16), partitionCount)).add(element);
+        }
+        return partitions;
+    }
+
     @SuppressWarnings("unchecked")
     private Iterable<Tree<DiffNode>> createOrderedDiffIterable(@Nonnull DiffNode parentDiffNode,
             @Nonnull Object src, @Nonnull Object target) {
@@ -294,77 +617,728 @@ public class ReflectionObjectDiffMapper
         };
     }
 
+    /**
+     * Diffs the values of a field with a key extractor, which only applies if they are lists or sets
+     */
+    @Nonnull
+    private Tree<DiffNode> createKeyedDiffTreeNode(@Nonnull Type type, @Nullable Object src, @Nullable Object target,
+            @Nonnull ElementKeys elementKeys) {
+        Iterable<Tree<DiffNode>> children = null;
+        DiffNode node = new DiffNode(new Diff(Diff.Operation.NO_OP, null, null));
+        if (src instanceof List && target instanceof List) {
+            children = createAlignedListDiffIterable(node,
+                    ((List<?>) src).toArray(), ((List<?>) target).toArray(), elementKeys);
+        } else if (src instanceof Set && target instanceof Set) {
+            children = createKeyedSetDiffIterable(node, (Set<?>) src, (Set<?>) target, elementKeys);
+        }
+        if (children == null) {
+            return createNextDiffTreeNode(type, src, target);
+        }
+        return new Tree<>(node, children);
+    }
+
+    /**
+     * @param elementKeys if not null, elements are matched by key instead of being aligned
+     */
+    private Iterable<Tree<DiffNode>> createAlignedListDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull Object[] srcElements, @Nonnull Object[] targetElements, @Nullable ElementKeys elementKeys) {
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<ListEdit> edits = (elementKeys != null ?
+                    matchListElementsByKey(srcElements, targetElements, elementKeys) :
+                    alignListElements(srcElements, targetElements)).iterator();
+
+            @Override
+            public boolean hasNext() {
+                return edits.hasNext();
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                ListEdit edit = edits.next();
+                DiffNode nextLevelRoot;
+                switch (edit.operation) {
+                    case REMOVE_VALUE:
+                        nextLevelRoot = new DiffNode(new Diff(Diff.Operation.REMOVE_VALUE,
+                                srcElements[edit.srcIndex], null));
+                        parentDiffNode.addFieldDiff(ListAlignment.removalKey(edit.srcIndex), nextLevelRoot);
+                        return new Tree<>(nextLevelRoot);
+                    case INSERT_VALUE:
+                        nextLevelRoot = new DiffNode(new Diff(Diff.Operation.INSERT_VALUE,
+                                null, targetElements[edit.targetIndex]));
+                        break;
+                    case MOVE_VALUE:
+                        Diff moveDiff = new Diff(Diff.Operation.MOVE_VALUE, edit.srcIndex, edit.targetIndex);
+                        if (edit.movedElementDiff != null) {
+                            Tree<DiffNode> movedElementTree = createMovedElementTree(moveDiff,
+                                    edit.movedElementDiff);
+                            parentDiffNode.addFieldDiff(edit.targetIndex, movedElementTree.getNodeValue());
+                            return movedElementTree;
+                        }
+                        nextLevelRoot = new DiffNode(moveDiff);
+                        break;
+                    default:
+                        Object srcValue = srcElements[edit.srcIndex];
+                        Object targetValue = targetElements[edit.targetIndex];
+                        Tree<DiffNode> nextDiffTreeNode = createNextDiffTreeNode(
+                                ObjectUtils.inferClass(srcValue, targetValue), srcValue, targetValue);
+                        parentDiffNode.addFieldDiff(edit.targetIndex, nextDiffTreeNode.getNodeValue());
+                        return nextDiffTreeNode;
+                }
+                parentDiffNode.addFieldDiff(edit.targetIndex, nextLevelRoot);
+                return new Tree<>(nextLevelRoot);
+            }
+        };
+    }
+
+    /**
+     * The nested diffs of a moved element are added to its own diff as they are expanded,
+     * and handed over to the node moving it
+     */
+    @Nonnull
+    private static Tree<DiffNode> createMovedElementTree(@Nonnull Diff moveDiff,
+            @Nonnull Tree<DiffNode> elementDiffTree) {
+        DiffNode elementDiff = elementDiffTree.getNodeValue();
+        DiffNode moveNode = new DiffNode(moveDiff);
+        moveFieldDiffs(elementDiff, moveNode);
+        return new Tree<>(moveNode, () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Tree<DiffNode>> children = elementDiffTree.getChildren().iterator();
+
+            @Override
+            public boolean hasNext() {
+                return children.hasNext();
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                Tree<DiffNode> child = children.next();
+                moveFieldDiffs(elementDiff, moveNode);
+                return child;
+            }
+        });
+    }
+
+    private static void moveFieldDiffs(@Nonnull DiffNode from, @Nonnull DiffNode to) {
+        Map<Object, DiffNode> fieldDiffs = from.getFieldDiffs();
+        if (fieldDiffs == null || fieldDiffs.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Object, DiffNode> entry : fieldDiffs.entrySet()) {
+            to.addFieldDiff(entry.getKey(), entry.getValue());
+        }
+        fieldDiffs.clear();
+    }
+
+    /**
+     * Turns the alignment of two lists into edits. Unaligned elements between two aligned ones are paired up
+     * in order and diffed against each other, the rest of them is removed or inserted unless it has been moved.
+     */
+    @Nonnull
+    private List<ListEdit> alignListElements(@Nonnull Object[] srcElements, @Nonnull Object[] targetElements) {
+        int[] matches = ListAlignment.align(srcElements, targetElements, this::isEqualTo);
+        int[] movedTo = null;
+        int[] movedFrom = null;
+        if (isEnabled(Feature.ListDiffing.DETECT_MOVES)) {
+            movedTo = new int[srcElements.length];
+            movedFrom = new int[targetElements.length];
+            detectMoves(srcElements, targetElements, matches, movedTo, movedFrom);
+        }
+        return toListEdits(srcElements, targetElements, matches, movedTo, movedFrom, null, null);
+    }
+
+    /**
+     * Matches elements by key. Matched elements that are in the same order in both lists are diffed in place,
+     * the other ones are moved and diffed, or removed and inserted again if their diff would replace them.
+     * Elements are never paired up with an element of another key. Every matched pair is compared once,
+     * and only the top level of the diff of a moved pair is created here, its nested diffs are expanded
+     * along with the rest of the tree.
+     */
+    @Nonnull
+    private List<ListEdit> matchListElementsByKey(@Nonnull Object[] srcElements, @Nonnull Object[] targetElements,
+            @Nonnull ElementKeys elementKeys) {
+        int[] matches = ListAlignment.matchByKey(srcElements, targetElements, elementKeys);
+        BitSet ordered = ListAlignment.findOrderedMatches(matches);
+        int[] movedTo = new int[srcElements.length];
+        int[] movedFrom = new int[targetElements.length];
+        Arrays.fill(movedTo, -1);
+        Arrays.fill(movedFrom, -1);
+        BitSet changed = new BitSet(srcElements.length);
+        @SuppressWarnings("unchecked")
+        Tree<DiffNode>[] movedElementDiffs = new Tree[targetElements.length];
+        for (int i = 0; i < matches.length; i++) {
+            int j = matches[i];
+            if (j < 0) {
+                continue;
+            }
+            boolean equal = isEqualTo(srcElements[i], targetElements[j]);
+            if (ordered.get(i)) {
+                changed.set(i, !equal);
+                continue;
+            }
+            matches[i] = -1;
+            if (!equal) {
+                Tree<DiffNode> elementDiff = createNextDiffTreeNode(
+                        ObjectUtils.inferClass(srcElements[i], targetElements[j]), srcElements[i], targetElements[j]);
+                if (elementDiff.getNodeValue().getDiff().getOperation() != Diff.Operation.NO_OP) {
+                    continue;
+                }
+                movedElementDiffs[j] = elementDiff;
+            }
+            movedTo[i] = j;
+            movedFrom[j] = i;
+        }
+        return toListEdits(srcElements, targetElements, matches, movedTo, movedFrom, movedElementDiffs, changed);
+    }
+
+    /**
+     * @param matches aligned indices, strictly increasing
+     * @param movedElementDiffs only given for keyed matches, which are not necessarily equal when aligned and
+     *                          are never paired up with unaligned elements
+     * @param changed source indices of the keyed matches which are not equal when aligned
+     */
+    @Nonnull
+    private static List<ListEdit> toListEdits(@Nonnull Object[] srcElements, @Nonnull Object[] targetElements,
+            @Nonnull int[] matches, @Nullable int[] movedTo, @Nullable int[] movedFrom,
+            @Nullable Tree<DiffNode>[] movedElementDiffs, @Nullable BitSet changed) {
+        boolean keyed = movedElementDiffs != null;
+        List<ListEdit> edits = new ArrayList<>();
+        int srcIndex = 0;
+        int targetIndex = 0;
+        while (srcIndex <= srcElements.length) {
+            int nextSrcIndex = srcIndex;
+            while (nextSrcIndex < srcElements.length && matches[nextSrcIndex] < 0) {
+                nextSrcIndex++;
+            }
+            int nextTargetIndex = nextSrcIndex < srcElements.length ? matches[nextSrcIndex] : targetElements.length;
+            while (srcIndex < nextSrcIndex || targetIndex < nextTargetIndex) {
+                if (srcIndex < nextSrcIndex && movedTo != null && movedTo[srcIndex] >= 0) {
+                    srcIndex++;
+                } else if (targetIndex < nextTargetIndex && movedFrom != null && movedFrom[targetIndex] >= 0) {
+                    edits.add(new ListEdit(Diff.Operation.MOVE_VALUE, movedFrom[targetIndex], targetIndex,
+                            keyed ? movedElementDiffs[targetIndex] : null));
+                    targetIndex++;
+                } else if (!keyed && srcIndex < nextSrcIndex && targetIndex < nextTargetIndex) {
+                    edits.add(new ListEdit(Diff.Operation.UPDATE_VALUE, srcIndex++, targetIndex++));
+                } else if (srcIndex < nextSrcIndex) {
+                    edits.add(new ListEdit(Diff.Operation.REMOVE_VALUE, srcIndex++, -1));
+                } else {
+                    edits.add(new ListEdit(Diff.Operation.INSERT_VALUE, -1, targetIndex++));
+                }
+            }
+            //noinspection ConstantConditions
+            if (keyed && nextSrcIndex < srcElements.length && changed.get(nextSrcIndex)) {
+                edits.add(new ListEdit(Diff.Operation.UPDATE_VALUE, nextSrcIndex, nextTargetIndex));
+            }
+            srcIndex = nextSrcIndex + 1;
+            targetIndex = nextTargetIndex + 1;
+        }
+        return edits;
+    }
+
+    private void detectMoves(@Nonnull Object[] srcElements, @Nonnull Object[] targetElements, @Nonnull int[] matches,
+            @Nonnull int[] movedTo, @Nonnull int[] movedFrom) {
+        Arrays.fill(movedTo, -1);
+        Arrays.fill(movedFrom, -1);
+        boolean[] aligned = new boolean[targetElements.length];
+        Map<Object, Deque<Integer>> removedIndices = new HashMap<>();
+        for (int i = 0; i < srcElements.length; i++) {
+            if (matches[i] >= 0) {
+                aligned[matches[i]] = true;
+            } else {
+                removedIndices.computeIfAbsent(srcElements[i], k -> new ArrayDeque<>()).add(i);
+            }
+        }
+        for (int j = 0; j < targetElements.length; j++) {
+            if (aligned[j]) {
+                continue;
+            }
+            Deque<Integer> candidates = removedIndices.get(targetElements[j]);
+            if (candidates == null) {
+                continue;
+            }
+            for (Iterator<Integer> iter = candidates.iterator(); iter.hasNext(); ) {
+                int i = iter.next();
+                if (isEqualTo(srcElements[i], targetElements[j])) {
+                    iter.remove();
+                    movedTo[i] = j;
+                    movedFrom[j] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return keys of the elements of a list or set if every non null element has a key extractor, null otherwise
+     */
+    @Nullable
+    private ElementKeys findElementKeys(@Nonnull Iterable<?> srcElements, @Nonnull Iterable<?> targetElements) {
+        try {
+            return ElementKeys.forElements(this,
+                    !isEnabled(Feature.DiffingHandler.IGNORE_CLASS_TYPE_HANDLER),
+                    !isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER),
+                    srcElements, targetElements);
+        }
+        catch (Throwable e) {
+            throw new DiffException("Failed to instantiate key extractor: " + e.getMessage(), e);
+        }
+    }
+
+    @Nonnull
+    private ElementKeys createFieldElementKeys(@Nonnull FieldDiffPlan field, @Nonnull Class<?> objectClass) {
+        Class<? extends KeyExtractor<?>> keyExtractorClass = field.getKeyExtractorClass();
+        try {
+            //noinspection ConstantConditions
+            return ElementKeys.of(keyExtractorClass);
+        }
+        catch (Throwable e) {
+            String message = String.format("Failed to instantiate key extractor %s for %s in %s",
+                    keyExtractorClass.getName(),
+                    field.getName(),
+                    objectClass.getName());
+            throw new DiffException(message, e);
+        }
+    }
+
+    /**
+     * @return true if elements of the array class can be compared and diffed without boxing,
+     * i.e. nothing registered for their boxed type would change the outcome
+     */
+    private boolean hasPlainPrimitiveElements(@Nonnull Class<?> arrayClass) {
+        Class<?> boxedType = PrimitiveArrays.getBoxedComponentType(arrayClass);
+        if (boxedType == null || isEnabled(Feature.EqualityCheck.USE_HASHCODE) ||
+                getEqualityChecker(boxedType) != null) {
+            return false;
+        }
+        return isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER) || getDiffingHandler(boxedType) == null;
+    }
+
+    private Iterable<Tree<DiffNode>> createPrimitiveArrayDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull final Object src, @Nonnull final Object target, int from, int to) {
+        int srcArraySize = Array.getLength(src);
+        int targetArraySize = Array.getLength(target);
+        int commonSize = Math.min(Math.min(srcArraySize, targetArraySize), to);
+
+        return () -> new Iterator<Tree<DiffNode>>() {
+            int index = from;
+            int diffIndex = -1;
+
+            @Override
+            public boolean hasNext() {
+                if (diffIndex >= 0) {
+                    return true;
+                }
+                if (index < commonSize) {
+                    int mismatch = PrimitiveArrays.nextMismatch(src, target, index, commonSize);
+                    if (mismatch >= 0) {
+                        diffIndex = mismatch;
+                        index = mismatch + 1;
+                        return true;
+                    }
+                    index = commonSize;
+                }
+                if (index < to) {
+                    diffIndex = index++;
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int currentIndex = diffIndex;
+                diffIndex = -1;
+                DiffNode nextLevelRoot;
+                if (currentIndex >= targetArraySize) {
+                    nextLevelRoot = createDiffGroupOneLevel(Array.get(src, currentIndex), DELETION_MARK);
+                } else if (currentIndex >= srcArraySize) {
+                    nextLevelRoot = createDiffGroupOneLevel(null, Array.get(target, currentIndex));
+                } else {
+                    nextLevelRoot = createPrimitiveUpdateDiffGroup(Array.get(src, currentIndex),
+                            Array.get(target, currentIndex));
+                }
+                parentDiffNode.addFieldDiff(currentIndex, nextLevelRoot);
+                return new Tree<>(nextLevelRoot);
+            }
+        };
+    }
+
+    /**
+     * Removed elements are found by probing the target with every source element, added ones by probing
+     * the source with every target element, so nothing is copied and unchanged elements are never kept.
+     */
     @SuppressWarnings("unchecked")
     private Iterable<Tree<DiffNode>> createSetDiffIterable(@Nonnull DiffNode parentDiffNode,
             @Nonnull Object src, @Nonnull Object target) {
         final Set<Object> srcSet = (Set<Object>) src;
         final Set<Object> targetSet = (Set<Object>) target;
-        final Set<Object> allElementsSet = new HashSet<>(targetSet);
-        allElementsSet.addAll(srcSet);
-        List<Tree<DiffNode>> diffGroupNextLevelRootNodes = new ArrayList<>();
-
-        int diffIndex = 0;
-        for (Object obj : allElementsSet) {
-            boolean srcHasElement = srcSet.contains(obj);
-            boolean targetHasElement = targetSet.contains(obj);
-            if (srcHasElement && targetHasElement) {
-                //noinspection UnnecessaryContinue
-                continue;
-            } else {
-                DiffNode nextLevelRoot;
-                if (srcHasElement) {
-                    nextLevelRoot = createDiffGroupOneLevel(obj, DELETION_MARK);
-                } else {
-                    nextLevelRoot = new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, obj));
+        Iterable<Tree<DiffNode>> chunkedDiffs = createChunkedHashDiffIterable(parentDiffNode, srcSet, targetSet,
+                Function.identity(), (chunkNode, partitions) -> createSetDiffIterable(chunkNode, srcSet, targetSet,
+                        partitions.get(0), partitions.get(1)), true);
+        if (chunkedDiffs != null) {
+            return chunkedDiffs;
+        }
+        return createSetDiffIterable(parentDiffNode, srcSet, targetSet, srcSet, targetSet);
+    }
+
+    /**
+     * @param srcElements elements of {@code srcSet} to diff
+     * @param targetElements elements of {@code targetSet} to diff
+     */
+    private Iterable<Tree<DiffNode>> createSetDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull Set<Object> srcSet, @Nonnull Set<Object> targetSet,
+            @Nonnull Iterable<Object> srcElements, @Nonnull Iterable<Object> targetElements) {
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Object> srcIter = srcElements.iterator();
+            final Iterator<Object> targetIter = targetElements.iterator();
+            int diffIndex = 0;
+            DiffNode nextLevelRoot;
+
+            @Override
+            public boolean hasNext() {
+                if (nextLevelRoot != null) {
+                    return true;
                 }
-                diffGroupNextLevelRootNodes.add(new Tree<>(nextLevelRoot));
-                parentDiffNode.addFieldDiff(diffIndex++, nextLevelRoot);
+                while (srcIter.hasNext()) {
+                    Object obj = srcIter.next();
+                    if (!targetSet.contains(obj)) {
+                        nextLevelRoot = createDiffGroupOneLevel(obj, DELETION_MARK);
+                        return true;
+                    }
+                }
+                while (targetIter.hasNext()) {
+                    Object obj = targetIter.next();
+                    if (!srcSet.contains(obj)) {
+                        nextLevelRoot = new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, obj));
+                        return true;
+                    }
+                }
+                return false;
             }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DiffNode diffNode = nextLevelRoot;
+                nextLevelRoot = null;
+                parentDiffNode.addFieldDiff(diffIndex++, diffNode);
+                return new Tree<>(diffNode);
+            }
+        };
+    }
+
+    /**
+     * Elements with the same key are diffed against each other and their diffs are keyed by the element key,
+     * so that they can be applied without depending on the iteration order of the set.
+     *
+     * @return null if the keys of either set are not unique
+     */
+    @Nullable
+    private Iterable<Tree<DiffNode>> createKeyedSetDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull Set<?> src, @Nonnull Set<?> target, @Nonnull ElementKeys elementKeys) {
+        Map<Object, Object> srcElements = indexByKey(src, elementKeys);
+        Map<Object, Object> targetElements = srcElements == null ? null : indexByKey(target, elementKeys);
+        if (targetElements == null) {
+            return null;
         }
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Map.Entry<Object, Object>> srcIter = srcElements.entrySet().iterator();
+            final Iterator<Map.Entry<Object, Object>> targetIter = targetElements.entrySet().iterator();
+            Map.Entry<Object, Object> srcEntry;
+            Map.Entry<Object, Object> targetEntry;
+
+            @Override
+            public boolean hasNext() {
+                if (srcEntry != null || targetEntry != null) {
+                    return true;
+                }
+                while (srcIter.hasNext()) {
+                    Map.Entry<Object, Object> entry = srcIter.next();
+                    Object key = entry.getKey();
+                    if (!targetElements.containsKey(key) ||
+                            !isEqualTo(entry.getValue(), targetElements.get(key))) {
+                        srcEntry = entry;
+                        return true;
+                    }
+                }
+                while (targetIter.hasNext()) {
+                    Map.Entry<Object, Object> entry = targetIter.next();
+                    if (!srcElements.containsKey(entry.getKey())) {
+                        targetEntry = entry;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tree<DiffNode> nextDiffTreeNode;
+                Object key;
+                if (srcEntry != null) {
+                    key = srcEntry.getKey();
+                    Object srcValue = srcEntry.getValue();
+                    srcEntry = null;
+                    if (targetElements.containsKey(key)) {
+                        Object targetValue = targetElements.get(key);
+                        nextDiffTreeNode = createNextDiffTreeNode(ObjectUtils.inferClass(srcValue, targetValue),
+                                srcValue, targetValue);
+                    } else {
+                        nextDiffTreeNode = new Tree<>(createDiffGroupOneLevel(srcValue, DELETION_MARK));
+                    }
+                } else {
+                    key = targetEntry.getKey();
+                    nextDiffTreeNode = new Tree<>(new DiffNode(
+                            new Diff(Diff.Operation.ADD_VALUE, null, targetEntry.getValue())));
+                    targetEntry = null;
+                }
+                parentDiffNode.addFieldDiff(key, nextDiffTreeNode.getNodeValue());
+                return nextDiffTreeNode;
+            }
+        };
+    }
 
-        return diffGroupNextLevelRootNodes;
+    @Nullable
+    private static Map<Object, Object> indexByKey(@Nonnull Set<?> elements, @Nonnull ElementKeys elementKeys) {
+        Map<Object, Object> index = new HashMap<>(elements.size() * 4 / 3 + 1);
+        for (Object element : elements) {
+            Object key = elementKeys.apply(element);
+            if (index.containsKey(key)) {
+                return null;
+            }
+            index.put(key, element);
+        }
+        return index;
     }
 
+    /**
+     * Same two passes as {@link #createSetDiffIterable}: source entries are looked up in the target once,
+     * target entries are only checked for keys missing from the source.
+     */
     @SuppressWarnings("unchecked")
     private Iterable<Tree<DiffNode>> createMapDiffIterable(@Nonnull DiffNode parentDiffNode,
             @Nonnull Object src, @Nonnull Object target) {
         final Map<Object, Object> srcMap = (Map<Object, Object>) src;
         final Map<Object, Object> targetMap = (Map<Object, Object>) target;
-        final Map<Object, Object> mapWithAllElements = new HashMap<>(targetMap);
-        mapWithAllElements.putAll(srcMap);
-
-        List<Tree<DiffNode>> diffGroupNextLevelRootNodes = new ArrayList<>();
-
-        for (Map.Entry<Object, Object> entry : mapWithAllElements.entrySet()) {
-            Object key = entry.getKey();
-            boolean srcHasKey = srcMap.containsKey(key);
-            boolean targetHasKey = targetMap.containsKey(key);
-            if (srcHasKey && targetHasKey) {
-                Object srcElement = srcMap.get(key);
-                Object targetElement = targetMap.get(key);
-                if (isEqualTo(srcElement, targetElement)) {
-                    continue;
+        Iterable<Tree<DiffNode>> chunkedDiffs = createChunkedHashDiffIterable(parentDiffNode,
+                srcMap.entrySet(), targetMap.entrySet(), Map.Entry::getKey,
+                (chunkNode, partitions) -> createMapDiffIterable(chunkNode, srcMap, targetMap,
+                        partitions.get(0), partitions.get(1)), false);
+        if (chunkedDiffs != null) {
+            return chunkedDiffs;
+        }
+        return createMapDiffIterable(parentDiffNode, srcMap, targetMap, srcMap.entrySet(), targetMap.entrySet());
+    }
+
+    /**
+     * @param srcEntries entries of {@code srcMap} to diff
+     * @param targetEntries entries of {@code targetMap} to diff
+     */
+    private Iterable<Tree<DiffNode>> createMapDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull Map<Object, Object> srcMap, @Nonnull Map<Object, Object> targetMap,
+            @Nonnull Iterable<Map.Entry<Object, Object>> srcEntries,
+            @Nonnull Iterable<Map.Entry<Object, Object>> targetEntries) {
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Map.Entry<Object, Object>> srcIter = srcEntries.iterator();
+            final Iterator<Map.Entry<Object, Object>> targetIter = targetEntries.iterator();
+            Object key;
+            Object srcElement;
+            Object targetElement;
+            // operation of the next child, null if it has not been found yet
+            Diff.Operation pending;
+
+            @Override
+            public boolean hasNext() {
+                if (pending != null) {
+                    return true;
                 }
-                Tree<DiffNode> nextLevelTreeNode = createNextDiffTreeNode(ObjectUtils.inferClass(srcElement, targetElement),
-                        srcElement, targetElement);
-                diffGroupNextLevelRootNodes.add(nextLevelTreeNode);
+                while (srcIter.hasNext()) {
+                    Map.Entry<Object, Object> entry = srcIter.next();
+                    key = entry.getKey();
+                    srcElement = entry.getValue();
+                    targetElement = targetMap.get(key);
+                    if (targetElement == null && !targetMap.containsKey(key)) {
+                        pending = Diff.Operation.REMOVE_VALUE;
+                        return true;
+                    }
+                    if (!isEqualTo(srcElement, targetElement)) {
+                        pending = Diff.Operation.UPDATE_VALUE;
+                        return true;
+                    }
+                }
+                while (targetIter.hasNext()) {
+                    Map.Entry<Object, Object> entry = targetIter.next();
+                    if (!srcMap.containsKey(entry.getKey())) {
+                        key = entry.getKey();
+                        srcElement = null;
+                        targetElement = entry.getValue();
+                        pending = Diff.Operation.ADD_VALUE;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tree<DiffNode> nextLevelTreeNode;
+                switch (pending) {
+                    case REMOVE_VALUE:
+                        nextLevelTreeNode = new Tree<>(createDiffGroupOneLevel(srcElement, DELETION_MARK));
+                        break;
+                    case ADD_VALUE:
+                        nextLevelTreeNode = new Tree<>(new DiffNode(
+                                new Diff(Diff.Operation.ADD_VALUE, null, targetElement)));
+                        break;
+                    default:
+                        nextLevelTreeNode = createNextDiffTreeNode(ObjectUtils.inferClass(srcElement, targetElement),
+                                srcElement, targetElement);
+                }
+                pending = null;
                 parentDiffNode.addFieldDiff(key, nextLevelTreeNode.getNodeValue());
-            } else {
+                return nextLevelTreeNode;
+            }
+        };
+    }
+
+    /**
+     * @return the ordering of two sorted collections, or null if they are not ordered the same way
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> findSharedOrdering(@Nullable Comparator<?> srcComparator,
+            @Nullable Comparator<?> targetComparator) {
+        if (!Objects.equals(srcComparator, targetComparator)) {
+            return null;
+        }
+        if (srcComparator == null) {
+            return (Comparator<Object>) (Comparator<?>) Comparator.naturalOrder();
+        }
+        return (Comparator<Object>) srcComparator;
+    }
+
+    /**
+     * Walks both sets in their shared order at once, so that elements are compared instead of looked up
+     * and child diffs come out in element order
+     */
+    @SuppressWarnings("unchecked")
+    private Iterable<Tree<DiffNode>> createSortedSetDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull SortedSet<?> src, @Nonnull SortedSet<?> target, @Nonnull Comparator<Object> ordering) {
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Object> srcIter = (Iterator<Object>) src.iterator();
+            final Iterator<Object> targetIter = (Iterator<Object>) target.iterator();
+            Object srcElement = srcIter.hasNext() ? srcIter.next() : NO_MORE_ELEMENTS;
+            Object targetElement = targetIter.hasNext() ? targetIter.next() : NO_MORE_ELEMENTS;
+            int diffIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (srcElement != NO_MORE_ELEMENTS && targetElement != NO_MORE_ELEMENTS &&
+                        ordering.compare(srcElement, targetElement) == 0) {
+                    srcElement = srcIter.hasNext() ? srcIter.next() : NO_MORE_ELEMENTS;
+                    targetElement = targetIter.hasNext() ? targetIter.next() : NO_MORE_ELEMENTS;
+                }
+                return srcElement != NO_MORE_ELEMENTS || targetElement != NO_MORE_ELEMENTS;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
                 DiffNode nextLevelRoot;
-                if (srcHasKey) {
-                    nextLevelRoot = createDiffGroupOneLevel(entry.getValue(), DELETION_MARK);
+                if (targetElement == NO_MORE_ELEMENTS ||
+                        (srcElement != NO_MORE_ELEMENTS && ordering.compare(srcElement, targetElement) < 0)) {
+                    nextLevelRoot = createDiffGroupOneLevel(srcElement, DELETION_MARK);
+                    srcElement = srcIter.hasNext() ? srcIter.next() : NO_MORE_ELEMENTS;
                 } else {
-                    nextLevelRoot = new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, entry.getValue()));
+                    nextLevelRoot = new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, targetElement));
+                    targetElement = targetIter.hasNext() ? targetIter.next() : NO_MORE_ELEMENTS;
                 }
-                diffGroupNextLevelRootNodes.add(new Tree<>(nextLevelRoot));
-                parentDiffNode.addFieldDiff(key, nextLevelRoot);
+                parentDiffNode.addFieldDiff(diffIndex++, nextLevelRoot);
+                return new Tree<>(nextLevelRoot);
             }
-        }
+        };
+    }
+
+    /**
+     * Same walk as {@link #createSortedSetDiffIterable} over the entries of two maps
+     */
+    @SuppressWarnings("unchecked")
+    private Iterable<Tree<DiffNode>> createSortedMapDiffIterable(@Nonnull DiffNode parentDiffNode,
+            @Nonnull SortedMap<?, ?> src, @Nonnull SortedMap<?, ?> target, @Nonnull Comparator<Object> ordering) {
+        return () -> new Iterator<Tree<DiffNode>>() {
+            final Iterator<Map.Entry<Object, Object>> srcIter =
+                    ((SortedMap<Object, Object>) src).entrySet().iterator();
+            final Iterator<Map.Entry<Object, Object>> targetIter =
+                    ((SortedMap<Object, Object>) target).entrySet().iterator();
+            Map.Entry<Object, Object> srcEntry = srcIter.hasNext() ? srcIter.next() : null;
+            Map.Entry<Object, Object> targetEntry = targetIter.hasNext() ? targetIter.next() : null;
 
-        return diffGroupNextLevelRootNodes;
+            @Override
+            public boolean hasNext() {
+                while (srcEntry != null && targetEntry != null &&
+                        ordering.compare(srcEntry.getKey(), targetEntry.getKey()) == 0 &&
+                        isEqualTo(srcEntry.getValue(), targetEntry.getValue())) {
+                    srcEntry = srcIter.hasNext() ? srcIter.next() : null;
+                    targetEntry = targetIter.hasNext() ? targetIter.next() : null;
+                }
+                return srcEntry != null || targetEntry != null;
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int order = srcEntry == null ? 1 : targetEntry == null ? -1 :
+                        ordering.compare(srcEntry.getKey(), targetEntry.getKey());
+                Object key;
+                Tree<DiffNode> nextLevelTreeNode;
+                if (order < 0) {
+                    key = srcEntry.getKey();
+                    nextLevelTreeNode = new Tree<>(createDiffGroupOneLevel(srcEntry.getValue(), DELETION_MARK));
+                    srcEntry = srcIter.hasNext() ? srcIter.next() : null;
+                } else if (order > 0) {
+                    key = targetEntry.getKey();
+                    nextLevelTreeNode = new Tree<>(new DiffNode(
+                            new Diff(Diff.Operation.ADD_VALUE, null, targetEntry.getValue())));
+                    targetEntry = targetIter.hasNext() ? targetIter.next() : null;
+                } else {
+                    key = srcEntry.getKey();
+                    Object srcElement = srcEntry.getValue();
+                    Object targetElement = targetEntry.getValue();
+                    nextLevelTreeNode = createNextDiffTreeNode(ObjectUtils.inferClass(srcElement, targetElement),
+                            srcElement, targetElement);
+                    srcEntry = srcIter.hasNext() ? srcIter.next() : null;
+                    targetEntry = targetIter.hasNext() ? targetIter.next() : null;
+                }
+                parentDiffNode.addFieldDiff(key, nextLevelTreeNode.getNodeValue());
+                return nextLevelTreeNode;
+            }
+        };
     }
 
     private Tree<DiffNode> createNextDiffTreeNode(@Nonnull Type type, @Nullable Object src, @Nullable Object target) {
+        if (isRepeatedPair(src, target)) {
+            return new Tree<>(new DiffNode(new Diff(Diff.Operation.REFERENCE, src, target)));
+        }
+        Tree<DiffNode> diffTree = createDiffTree(type, src, target);
+        ownPair(src, target, diffTree.getNodeValue());
+        return diffTree;
+    }
+
+    private Tree<DiffNode> createDiffTree(@Nonnull Type type, @Nullable Object src, @Nullable Object target) {
         DiffNode node;
         if (src == target) {
             node = new DiffNode(new Diff());
@@ -376,47 +1350,217 @@ public class ReflectionObjectDiffMapper
         if (node != null) {
             return new Tree<>(node);
         }
+        if (src != null && target != null) {
+            Tree<DiffNode> compiledDiffTree = diffUsingCompiledHandler(type, src, target);
+            if (compiledDiffTree != null) {
+                return compiledDiffTree;
+            }
+        }
         node = createDiffGroupOneLevel(src, target);
         Iterable<Tree<DiffNode>> nextLevelDiffChildren =
                 generateChildDiffGroups(node, type, src, target);
         return new Tree<>(node, nextLevelDiffChildren);
     }
 
+    /**
+     * Objects reachable along several paths, e.g. shared values or back references of cyclic graphs,
+     * are only diffed the first time they are reached
+     */
+    private boolean isRepeatedPair(@Nullable Object src, @Nullable Object target) {
+        if (!isTrackedPair(src, target)) {
+            return false;
+        }
+        DiffSession session = DiffSession.current();
+        return session != null && !session.visit(src, target);
+    }
+
+    /**
+     * Records the node diffing a pair the first time it is reached, see {@link ReferenceOwnership}
+     */
+    private void ownPair(@Nullable Object src, @Nullable Object target, @Nonnull DiffNode node) {
+        if (!isTrackedPair(src, target)) {
+            return;
+        }
+        DiffSession session = DiffSession.current();
+        if (session != null) {
+            session.own(src, target, node);
+        }
+    }
+
+    private boolean isTrackedPair(@Nullable Object src, @Nullable Object target) {
+        return src != null && target != null && src != target && !isPrimitive(src);
+    }
+
+    /**
+     * Handlers compiled for this mapper, i.e. generated and compiled object handlers, compare values through
+     * the context the same way the mapper does
+     */
+    @Nonnull
+    private DiffingContext createDiffingContext() {
+        return new DefaultDiffingContext(this, this::isEqualTo);
+    }
+
     @SuppressWarnings("unchecked")
     private DiffNode diffUsingClassLevelCustomHandler(@Nonnull Type type, @Nonnull Object src, @Nonnull Object target) {
         Class<?> cls = ReflectionUtils.typeToClass(type);
         if (!isEnabled(Feature.DiffingHandler.IGNORE_CLASS_TYPE_HANDLER)) {
-            TypeHandler typeHandler = ReflectionUtils.getClassAnnotation(cls, TypeHandler.class);
-            if (typeHandler != null) {
-                Class<? extends DiffingHandler<?>> handlerClass = typeHandler.diffUsing();
-                if (handlerClass != TypeHandler.None.class) {
-                    DiffingHandler<Object> diffingHandler;
-                    try {
-                        diffingHandler = (DiffingHandler<Object>) handlerClass.newInstance();
-                    }
-                    catch (Throwable e) {
-                        String message = String.format("Failed to instantiate diffing handler %s for %s",
-                                handlerClass.getName(),
-                                type.getTypeName());
-                        throw new DiffException(message);
-                    }
-                    return diffingHandler.diff(src, target, new DefaultDiffingContext(this));
+            Class<? extends DiffingHandler<?>> handlerClass = ClassDiffPlan.of(cls).getDiffingHandlerClass();
+            if (handlerClass != null) {
+                DiffingHandler<Object> diffingHandler;
+                try {
+                    diffingHandler = (DiffingHandler<Object>) HandlerInstances.get(handlerClass);
+                }
+                catch (Throwable e) {
+                    String message = String.format("Failed to instantiate diffing handler %s for %s",
+                            handlerClass.getName(),
+                            type.getTypeName());
+                    throw new DiffException(message);
                 }
+                return diffingHandler.diff(src, target, createDiffingContext());
             }
         }
         if (!isEnabled(Feature.DiffingHandler.IGNORE_GLOBAL_TYPE_HANDLER)) {
             DiffingHandler<Object> diffingHandler = getDiffingHandler(type);
             if (diffingHandler != null) {
-                return diffingHandler.diff(src, target, new DefaultDiffingContext(this));
+                return diffingHandler.diff(src, target, createDiffingContext());
             }
         }
         return null;
     }
 
+    @Nullable
+    private Tree<DiffNode> diffUsingCompiledHandler(@Nonnull Type type, @Nonnull Object src, @Nonnull Object target) {
+        if (!isEnabled(Feature.DiffingHandler.USE_COMPILED_OBJECT_HANDLER)) {
+            return null;
+        }
+        Class<?> cls = ReflectionUtils.typeToClass(type);
+        if (!CompiledHandlers.isPlainObject(ClassDiffPlan.of(cls), src, target)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        CompiledObjectDiffingHandler<Object> diffingHandler =
+                (CompiledObjectDiffingHandler<Object>) CompiledHandlers.getDiffingHandler(cls);
+        if (diffingHandler == null) {
+            return null;
+        }
+        List<DeferredFieldDiff> deferredFieldDiffs = new ArrayList<>();
+        DiffNode node = diffingHandler.diff(src, target, createDiffingContext(),
+                new CompiledObjectDiffingHandler.DeferredDiffs() {
+                    @Override
+                    public void defer(@Nonnull DiffNode parent, @Nonnull String fieldName, @Nonnull Type fieldType,
+                            @Nullable Object srcFieldValue, @Nullable Object targetFieldValue) {
+                        deferredFieldDiffs.add(
+                                new DeferredFieldDiff(parent, fieldName, fieldType, srcFieldValue, targetFieldValue));
+                    }
+
+                    @Override
+                    public boolean visit(@Nonnull Object srcValue, @Nonnull Object targetValue) {
+                        return !isRepeatedPair(srcValue, targetValue);
+                    }
+
+                    @Override
+                    public void diffed(@Nonnull Object srcValue, @Nonnull Object targetValue,
+                            @Nonnull DiffNode diffNode) {
+                        ownPair(srcValue, targetValue, diffNode);
+                    }
+                });
+        // values the handler did not diff itself are expanded lazily like any other child
+        return new Tree<>(node, () -> new Iterator<Tree<DiffNode>>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < deferredFieldDiffs.size();
+            }
+
+            @Override
+            public Tree<DiffNode> next() {
+                DeferredFieldDiff deferred = deferredFieldDiffs.get(index++);
+                Tree<DiffNode> nextDiffTreeNode = createNextDiffTreeNode(deferred.type,
+                        deferred.srcValue, deferred.targetValue);
+                deferred.parent.addFieldDiff(deferred.fieldName, nextDiffTreeNode.getNodeValue());
+                return nextDiffTreeNode;
+            }
+        });
+    }
+
     @Override
     public <T> T applyDiff(@Nullable T src, @Nonnull DiffNode diffs, @Nonnull Set<Feature.MergingStrategy> mergingStrategies) {
+        return applyDiffWithPlan(src, diffs, mergingStrategies, null);
+    }
+
+    @Override
+    public <T> T applyDiff(@Nullable T src, @Nonnull DiffNode diffs, @Nonnull Set<Feature.MergingStrategy> mergingStrategies,
+            @Nonnull ParallelOptions parallelOptions) {
+        DiffApplicationTree diffApplicationTree = new DiffApplicationTree(ObjectUtils.inferClass(src, diffs), src, diffs);
+        try {
+            @SuppressWarnings("unchecked")
+            T newRoot = (T) parallelOptions.getPool().invoke(new ParallelApplyTask(
+                    diffApplicationTree,
+                    0,
+                    new DefaultMergingContext(this, mergingStrategies, true),
+                    new DefaultMergingContext(this, mergingStrategies, false),
+                    parallelOptions
+            ));
+            return newRoot;
+        }
+        catch (Throwable e) {
+            if (e instanceof MergingException) {
+                throw e;
+            }
+            throw new MergingException("Failed to merge diff: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    @Nonnull
+    public <T> BatchApplyResult<T> applyDiffToAll(@Nonnull Iterable<? extends T> targets, @Nonnull DiffNode diffs,
+            @Nonnull Set<Feature.MergingStrategy> mergingStrategies) {
+        List<T> targetList = Iterables.toList(targets);
+        DiffApplicationPlan plan = DiffApplicationPlan.compile(diffs);
+        List<T> results = new ArrayList<>(Collections.nCopies(targetList.size(), null));
+        SortedMap<Integer, MergingException> failures = new TreeMap<>();
+        applyDiffToRange(targetList, 0, targetList.size(), diffs, mergingStrategies, plan, results, failures);
+        return new BatchApplyResult<>(results, failures);
+    }
+
+    @Override
+    @Nonnull
+    public <T> BatchApplyResult<T> applyDiffToAll(@Nonnull Iterable<? extends T> targets, @Nonnull DiffNode diffs,
+            @Nonnull Set<Feature.MergingStrategy> mergingStrategies, @Nonnull Executor executor) {
+        List<T> targetList = Iterables.toList(targets);
+        DiffApplicationPlan plan = DiffApplicationPlan.compile(diffs);
+        // every batch writes its own slots only
+        List<T> results = new ArrayList<>(Collections.nCopies(targetList.size(), null));
+        SortedMap<Integer, MergingException> failures = new ConcurrentSkipListMap<>();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < targetList.size(); from += BATCH_APPLY_SIZE) {
+            int batchFrom = from;
+            int batchTo = Math.min(from + BATCH_APPLY_SIZE, targetList.size());
+            batches.add(CompletableFuture.runAsync(() -> applyDiffToRange(targetList, batchFrom, batchTo, diffs,
+                    mergingStrategies, plan, results, failures), executor));
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+        return new BatchApplyResult<>(results, new TreeMap<>(failures));
+    }
+
+    private <T> void applyDiffToRange(List<T> targets, int from, int to, DiffNode diffs,
+            Set<Feature.MergingStrategy> mergingStrategies, DiffApplicationPlan plan,
+            List<T> results, Map<Integer, MergingException> failures) {
+        for (int i = from; i < to; i++) {
+            try {
+                results.set(i, applyDiffWithPlan(targets.get(i), diffs, mergingStrategies, plan));
+            }
+            catch (MergingException e) {
+                failures.put(i, e);
+            }
+        }
+    }
+
+    private <T> T applyDiffWithPlan(@Nullable T src, @Nonnull DiffNode diffs,
+            @Nonnull Set<Feature.MergingStrategy> mergingStrategies, @Nullable DiffApplicationPlan plan) {
         DiffApplicationTree diffApplicationTree = new DiffApplicationTree(ObjectUtils.inferClass(src, diffs),
-                src, diffs);
+                src, diffs, plan);
         try {
             Iterable<DiffApplicationTree> applicationTreeNodes = diffApplicationTree.preOrderTraversal();
             Iterator<DiffApplicationTree> iter = applicationTreeNodes.iterator();
@@ -426,13 +1570,14 @@ public class ReflectionObjectDiffMapper
                     mergingStrategies,
                     true
             ));
+            // contexts are immutable, so a single one serves all the other nodes
+            MergingContext mergingContext = new DefaultMergingContext(
+                    this,
+                    mergingStrategies,
+                    false
+            );
             while (iter.hasNext()) {
-                DiffApplicationTree node = iter.next();
-                node.applyDiff(new DefaultMergingContext(
-                        this,
-                        mergingStrategies,
-                        false
-                ));
+                iter.next().applyDiff(mergingContext);
             }
             return newRoot;
         }
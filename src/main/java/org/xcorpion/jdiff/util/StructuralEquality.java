@@ -0,0 +1,491 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep equality and 64 bit hashing of object graphs, walking the objects the way they are diffed
+ * but without building any diff tree.
+ * <p>
+ * Values of classes overriding {@code equals} (boxed primitives, strings, enums, value classes...) are compared
+ * with {@code equals}. Arrays, collections and maps are compared element by element, sets and maps regardless
+ * of their iteration order, map keys with {@code equals}. Any other object is compared field by field using
+ * its {@link ClassDiffPlan}; objects whose fields cannot be read are only equal to themselves.
+ * Shared and cyclic objects are compared once per object pair.
+ * <p>
+ * Comparisons made with a {@link Memo} record which object pairs they have proven equal or not equal, so that
+ * comparing the parts of graphs compared before, e.g. at every level of a diff, does not walk them again.
+ * <p>
+ * {@link #hash(Object)} is consistent with {@link #isEqual(Object, Object)}. It only covers the first
+ * {@value #MAX_HASH_DEPTH} levels and {@value #MAX_HASHED_VALUES} values of a graph, so that it stays cheap
+ * on large and cyclic graphs at the price of more collisions.
+ */
+public final class StructuralEquality {
+
+    public static final int MAX_HASH_DEPTH = 32;
+    public static final int MAX_HASHED_VALUES = 1 << 12;
+
+    private static final long SEED = 0xCBF29CE484222325L;
+    private static final long TRUNCATED = 0x5851F42D4C957F2DL;
+    // ArrayDeque does not accept nulls
+    private static final Object NULL = new Object();
+    private static final Object END_OF_CHILDREN = new Object();
+    // queued after the children of a pair, so that popping it tells all of them have been compared
+    private static final Object COMPARED = new Object();
+
+    private StructuralEquality() {
+    }
+
+    /**
+     * @return true if both objects are structurally equal
+     */
+    public static boolean isEqual(@Nullable Object a, @Nullable Object b) {
+        return new Comparison(new HashSet<>(), null).isEqual(a, b);
+    }
+
+    /**
+     * Same as {@link #isEqual(Object, Object)}, skipping the pairs of objects whose equality is in {@code memo}
+     * and recording the ones proven by this comparison
+     */
+    static boolean isEqual(@Nullable Object a, @Nullable Object b, @Nonnull Memo memo) {
+        return new Comparison(new HashSet<>(), memo).isEqual(a, b);
+    }
+
+    /**
+     * @return structural hash of the object, equal for structurally equal objects
+     */
+    public static long hash(@Nullable Object obj) {
+        return hash(obj, MAX_HASH_DEPTH);
+    }
+
+    /**
+     * Object pairs proven structurally equal or not equal, shared by the comparisons of a diff
+     */
+    static final class Memo {
+
+        private final Set<IdentityPair> equalPairs;
+        private final Set<IdentityPair> unequalPairs;
+
+        Memo(boolean concurrent) {
+            if (concurrent) {
+                this.equalPairs = ConcurrentHashMap.newKeySet();
+                this.unequalPairs = ConcurrentHashMap.newKeySet();
+            } else {
+                this.equalPairs = new HashSet<>();
+                this.unequalPairs = new HashSet<>();
+            }
+        }
+    }
+
+    private static final class Comparison {
+
+        private final Deque<Object> pending = new ArrayDeque<>();
+        private final Set<IdentityPair> visitedPairs;
+        @Nullable
+        private final Memo memo;
+        // visited pairs whose children have all been compared, tracked for the memo only
+        private final Set<IdentityPair> comparedPairs;
+        // set if a pair has been reached again while its children were being compared
+        private boolean cyclic;
+
+        Comparison(Set<IdentityPair> visitedPairs, @Nullable Memo memo) {
+            this.visitedPairs = visitedPairs;
+            this.memo = memo;
+            this.comparedPairs = memo == null ? null : new HashSet<>();
+        }
+
+        boolean isEqual(@Nullable Object a, @Nullable Object b) {
+            push(a, b);
+            while (!pending.isEmpty()) {
+                Object target = pending.pop();
+                Object src = pending.pop();
+                if (target == COMPARED) {
+                    comparedPairs.add((IdentityPair) src);
+                    continue;
+                }
+                if (!compare(unmask(src), unmask(target))) {
+                    record(false);
+                    return false;
+                }
+            }
+            record(true);
+            return true;
+        }
+
+        /**
+         * All the visited pairs are equal if the comparison succeeds. Otherwise the pairs still being compared
+         * lead to the mismatch and are not equal, while the pairs compared in full are equal unless they
+         * depend on one of the former through a cycle.
+         */
+        private void record(boolean equal) {
+            if (memo == null) {
+                return;
+            }
+            if (equal) {
+                memo.equalPairs.addAll(visitedPairs);
+                return;
+            }
+            for (IdentityPair pair : visitedPairs) {
+                if (!comparedPairs.contains(pair)) {
+                    memo.unequalPairs.add(pair);
+                } else if (!cyclic) {
+                    memo.equalPairs.add(pair);
+                }
+            }
+        }
+
+        /**
+         * @return false if the pair has been compared before, in which case it is equal as far as this
+         * comparison can tell
+         */
+        private boolean visit(@Nonnull IdentityPair pair) {
+            if (!visitedPairs.add(pair)) {
+                if (memo != null && !comparedPairs.contains(pair)) {
+                    cyclic = true;
+                }
+                return false;
+            }
+            if (memo != null) {
+                pending.push(pair);
+                pending.push(COMPARED);
+            }
+            return true;
+        }
+
+        private void push(@Nullable Object a, @Nullable Object b) {
+            pending.push(mask(a));
+            pending.push(mask(b));
+        }
+
+        /**
+         * Compares what can be compared right away and queues the children of both objects
+         */
+        private boolean compare(@Nullable Object a, @Nullable Object b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null || a.getClass() != b.getClass()) {
+                return false;
+            }
+            ClassDiffPlan plan = ClassDiffPlan.of(a.getClass());
+            switch (plan.getCategory()) {
+                case PRIMITIVE:
+                    return a.equals(b);
+                case ARRAY:
+                    if (a.getClass().getComponentType().isPrimitive()) {
+                        return primitiveArrayEquals(a, b);
+                    }
+                    break;
+                case ITERABLE:
+                    if (plan.overridesEquals() && !(a instanceof Collection)) {
+                        return a.equals(b);
+                    }
+                    break;
+                case SET:
+                case MAP:
+                    break;
+                default:
+                    if (plan.overridesEquals()) {
+                        return a.equals(b);
+                    }
+                    break;
+            }
+            IdentityPair pair = new IdentityPair(a, b);
+            if (memo != null) {
+                if (memo.equalPairs.contains(pair)) {
+                    return true;
+                }
+                if (memo.unequalPairs.contains(pair)) {
+                    return false;
+                }
+            }
+            if (!visit(pair)) {
+                return true;
+            }
+            switch (plan.getCategory()) {
+                case ARRAY:
+                    return compareArrays((Object[]) a, (Object[]) b);
+                case SET:
+                    return compareSets((Set<?>) a, (Set<?>) b);
+                case MAP:
+                    return compareMaps((Map<?, ?>) a, (Map<?, ?>) b);
+                case ITERABLE:
+                    return compareIterables((Iterable<?>) a, (Iterable<?>) b);
+                default:
+                    return compareFields(plan, a, b);
+            }
+        }
+
+        private boolean compareArrays(Object[] a, Object[] b) {
+            if (a.length != b.length) {
+                return false;
+            }
+            for (int i = a.length - 1; i >= 0; i--) {
+                push(a[i], b[i]);
+            }
+            return true;
+        }
+
+        private boolean compareIterables(Iterable<?> a, Iterable<?> b) {
+            if (a instanceof Collection && ((Collection<?>) a).size() != ((Collection<?>) b).size()) {
+                return false;
+            }
+            Iterator<?> aIterator = a.iterator();
+            Iterator<?> bIterator = b.iterator();
+            while (aIterator.hasNext() && bIterator.hasNext()) {
+                push(aIterator.next(), bIterator.next());
+            }
+            return aIterator.hasNext() == bIterator.hasNext();
+        }
+
+        private boolean compareMaps(Map<?, ?> a, Map<?, ?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : a.entrySet()) {
+                Object key = entry.getKey();
+                Object value = entry.getValue();
+                Object otherValue = b.get(key);
+                if (otherValue == null && (value != null || !b.containsKey(key))) {
+                    return false;
+                }
+                push(value, otherValue);
+            }
+            return true;
+        }
+
+        /**
+         * Elements equal to an element of the other set are paired up first, the remaining ones are matched
+         * by structural hash and compared one pair at a time
+         */
+        private boolean compareSets(Set<?> a, Set<?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            List<Object> unmatched = new ArrayList<>();
+            for (Object element : a) {
+                if (!b.contains(element)) {
+                    unmatched.add(element);
+                }
+            }
+            if (unmatched.isEmpty()) {
+                return true;
+            }
+            Map<Long, List<Object>> candidatesByHash = new HashMap<>();
+            int candidateCount = 0;
+            for (Object element : b) {
+                if (!a.contains(element)) {
+                    candidatesByHash.computeIfAbsent(hash(element), h -> new ArrayList<>()).add(element);
+                    candidateCount++;
+                }
+            }
+            if (candidateCount != unmatched.size()) {
+                return false;
+            }
+            for (Object element : unmatched) {
+                List<Object> candidates = candidatesByHash.get(hash(element));
+                if (candidates == null || !removeEqual(candidates, element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Failed comparisons must not leave their pairs behind as visited, so each candidate is compared
+         * with a copy of the pairs visited so far. They do not record anything in the memo either, as their
+         * results rely on the pairs this comparison is still comparing.
+         */
+        private boolean removeEqual(List<Object> candidates, Object element) {
+            for (Iterator<Object> iterator = candidates.iterator(); iterator.hasNext(); ) {
+                if (new Comparison(new HashSet<>(visitedPairs), null).isEqual(element, iterator.next())) {
+                    iterator.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean compareFields(ClassDiffPlan plan, Object a, Object b) {
+            for (FieldDiffPlan fieldPlan : plan.getFields()) {
+                try {
+                    push(fieldPlan.get(a), fieldPlan.get(b));
+                }
+                catch (IllegalAccessException | RuntimeException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Hashes the values of the graph in pre-order, mixing in the size of every container so that
+     * differently nested graphs hash differently
+     */
+    private static long hash(@Nullable Object obj, int maxDepth) {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(mask(obj));
+        long h = SEED;
+        int depth = 0;
+        int hashedValues = 0;
+        while (!pending.isEmpty() && hashedValues < MAX_HASHED_VALUES) {
+            Object value = pending.pop();
+            if (value == END_OF_CHILDREN) {
+                depth--;
+                continue;
+            }
+            hashedValues++;
+            value = unmask(value);
+            if (value == null) {
+                h = mix(h, 0);
+                continue;
+            }
+            ClassDiffPlan plan = ClassDiffPlan.of(value.getClass());
+            List<Object> children;
+            switch (plan.getCategory()) {
+                case PRIMITIVE:
+                    h = mix(h, value.hashCode());
+                    continue;
+                case ARRAY:
+                    if (value.getClass().getComponentType().isPrimitive()) {
+                        h = mix(h, primitiveArrayHash(value));
+                        continue;
+                    }
+                    children = Arrays.asList((Object[]) value);
+                    break;
+                case SET:
+                    h = mix(h, ((Set<?>) value).size());
+                    if (depth < maxDepth) {
+                        long elementsHash = 0;
+                        for (Object element : (Set<?>) value) {
+                            elementsHash += hash(element, maxDepth - depth - 1);
+                        }
+                        h = mix(h, elementsHash);
+                    }
+                    continue;
+                case MAP:
+                    h = mix(h, ((Map<?, ?>) value).size());
+                    if (depth < maxDepth) {
+                        long entriesHash = 0;
+                        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                            entriesHash += mix(mix(SEED, Objects.hashCode(entry.getKey())),
+                                    hash(entry.getValue(), maxDepth - depth - 1));
+                        }
+                        h = mix(h, entriesHash);
+                    }
+                    continue;
+                case ITERABLE:
+                    if (plan.overridesEquals() && !(value instanceof Collection)) {
+                        h = mix(h, value.hashCode());
+                        continue;
+                    }
+                    children = new ArrayList<>();
+                    for (Object element : (Iterable<?>) value) {
+                        children.add(element);
+                    }
+                    break;
+                default:
+                    if (plan.overridesEquals()) {
+                        h = mix(h, value.hashCode());
+                        continue;
+                    }
+                    h = mix(h, value.getClass().getName().hashCode());
+                    children = new ArrayList<>();
+                    try {
+                        for (FieldDiffPlan fieldPlan : plan.getFields()) {
+                            children.add(fieldPlan.get(value));
+                        }
+                    }
+                    catch (IllegalAccessException | RuntimeException e) {
+                        // such objects are only equal to themselves
+                        h = mix(h, System.identityHashCode(value));
+                        continue;
+                    }
+                    break;
+            }
+            h = mix(h, children.size());
+            if (depth == maxDepth) {
+                h = mix(h, TRUNCATED);
+                continue;
+            }
+            pending.push(END_OF_CHILDREN);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(mask(children.get(i)));
+            }
+            depth++;
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value;
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static Object mask(@Nullable Object obj) {
+        return obj == null ? NULL : obj;
+    }
+
+    @Nullable
+    private static Object unmask(Object obj) {
+        return obj == NULL ? null : obj;
+    }
+
+    private static boolean primitiveArrayEquals(Object a, Object b) {
+        if (a instanceof int[]) {
+            return Arrays.equals((int[]) a, (int[]) b);
+        }
+        if (a instanceof long[]) {
+            return Arrays.equals((long[]) a, (long[]) b);
+        }
+        if (a instanceof double[]) {
+            return Arrays.equals((double[]) a, (double[]) b);
+        }
+        if (a instanceof float[]) {
+            return Arrays.equals((float[]) a, (float[]) b);
+        }
+        if (a instanceof short[]) {
+            return Arrays.equals((short[]) a, (short[]) b);
+        }
+        if (a instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        if (a instanceof char[]) {
+            return Arrays.equals((char[]) a, (char[]) b);
+        }
+        return Arrays.equals((boolean[]) a, (boolean[]) b);
+    }
+
+    private static int primitiveArrayHash(Object array) {
+        if (array instanceof int[]) {
+            return Arrays.hashCode((int[]) array);
+        }
+        if (array instanceof long[]) {
+            return Arrays.hashCode((long[]) array);
+        }
+        if (array instanceof double[]) {
+            return Arrays.hashCode((double[]) array);
+        }
+        if (array instanceof float[]) {
+            return Arrays.hashCode((float[]) array);
+        }
+        if (array instanceof short[]) {
+            return Arrays.hashCode((short[]) array);
+        }
+        if (array instanceof byte[]) {
+            return Arrays.hashCode((byte[]) array);
+        }
+        if (array instanceof char[]) {
+            return Arrays.hashCode((char[]) array);
+        }
+        return Arrays.hashCode((boolean[]) array);
+    }
+
+}
@@ -0,0 +1,366 @@
+package org.xcorpion.jdiff.util;
+
+import org.xcorpion.jdiff.api.Versioned;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of 64 bit hashes of whole subtrees, each one computed from the hashes of its children like in a Merkle tree,
+ * so that a mapper using it skips the subtrees whose hashes match, see
+ * {@link BaseObjectDiffMapper#useSubtreeHashCache(SubtreeHashCache)}.
+ * <p>
+ * Only the hashes of {@link Versioned} objects are cached. They are weakly keyed by identity and valid as long as
+ * the version of the object does not change, so the version must change whenever anything reachable from the object
+ * changes. Other objects are hashed again every time they are reached. Subtrees containing a cycle, or an object
+ * whose fields cannot be read and whose class does not override {@code equals}, have no hash.
+ * <p>
+ * A cache can be shared by several mappers and threads.
+ */
+public final class SubtreeHashCache {
+
+    private static final long SEED = 0xCBF29CE484222325L;
+    private static final long NULL_HASH = 0x5851F42D4C957F2DL;
+
+    private static final class WeakKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        WeakKey(Object referent, @Nullable ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof WeakKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((WeakKey) o).get();
+        }
+    }
+
+    private static final class Entry {
+
+        final long version;
+        final long hash;
+
+        Entry(long version, long hash) {
+            this.version = version;
+            this.hash = hash;
+        }
+    }
+
+    private final ConcurrentMap<WeakKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collectedKeys = new ReferenceQueue<>();
+
+    /**
+     * @return hash of the subtree of {@code obj}, or empty if it has none
+     */
+    public OptionalLong hash(@Nullable Object obj) {
+        expungeCollectedKeys();
+        return new Hashing().hash(obj);
+    }
+
+    /**
+     * @return true if both subtrees have a hash and the hashes are equal
+     */
+    public boolean isSameSubtree(@Nullable Object a, @Nullable Object b) {
+        if (a == b) {
+            return true;
+        }
+        OptionalLong aHash = hash(a);
+        if (!aHash.isPresent()) {
+            return false;
+        }
+        OptionalLong bHash = hash(b);
+        return bHash.isPresent() && aHash.getAsLong() == bHash.getAsLong();
+    }
+
+    /**
+     * @return number of cached hashes, including the ones of objects which have been modified since
+     */
+    public int size() {
+        expungeCollectedKeys();
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void expungeCollectedKeys() {
+        Reference<?> key;
+        while ((key = collectedKeys.poll()) != null) {
+            entries.remove(key);
+        }
+    }
+
+    private enum Kind {
+        ORDERED,
+        SET,
+        MAP
+    }
+
+    /**
+     * Children of an object being hashed and the hashes of the ones hashed so far
+     */
+    private static final class Frame {
+
+        final Object value;
+        final long version;
+        final Kind kind;
+        final List<?> children;
+        int next;
+        long hash;
+        long unorderedHash;
+        long keyHash;
+
+        private Frame(Object value, Kind kind, List<?> children, long hash) {
+            this.value = value;
+            this.version = value instanceof Versioned ? ((Versioned) value).getVersion() : 0;
+            this.kind = kind;
+            this.children = children;
+            this.hash = hash;
+        }
+
+        /**
+         * @return frame of the value or null if it cannot be hashed
+         */
+        @Nullable
+        static Frame of(Object value) {
+            ClassDiffPlan plan = ClassDiffPlan.of(value.getClass());
+            long classHash = mix(SEED, value.getClass().hashCode());
+            switch (plan.getCategory()) {
+                case ARRAY:
+                    return new Frame(value, Kind.ORDERED, Arrays.asList((Object[]) value), classHash);
+                case SET:
+                    return new Frame(value, Kind.SET, new ArrayList<>((Set<?>) value), classHash);
+                case MAP:
+                    List<Object> keysAndValues = new ArrayList<>(((Map<?, ?>) value).size() * 2);
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                        keysAndValues.add(entry.getKey());
+                        keysAndValues.add(entry.getValue());
+                    }
+                    return new Frame(value, Kind.MAP, keysAndValues, classHash);
+                case ITERABLE:
+                    if (value instanceof Collection || !plan.overridesEquals()) {
+                        List<Object> elements = new ArrayList<>();
+                        for (Object element : (Iterable<?>) value) {
+                            elements.add(element);
+                        }
+                        return new Frame(value, Kind.ORDERED, elements, classHash);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            List<Object> fieldValues = new ArrayList<>();
+            try {
+                for (FieldDiffPlan fieldPlan : plan.getFields()) {
+                    fieldValues.add(fieldPlan.get(value));
+                }
+            }
+            catch (IllegalAccessException | RuntimeException e) {
+                if (!plan.overridesEquals()) {
+                    return null;
+                }
+                return new Frame(value, Kind.ORDERED, Collections.emptyList(), mix(classHash, value.hashCode()));
+            }
+            return new Frame(value, Kind.ORDERED, fieldValues, classHash);
+        }
+
+        void accept(long childHash) {
+            switch (kind) {
+                case SET:
+                    unorderedHash += childHash;
+                    break;
+                case MAP:
+                    // next has already moved past the child, so odd means a key
+                    if ((next & 1) == 1) {
+                        keyHash = childHash;
+                    } else {
+                        unorderedHash += mix(mix(SEED, keyHash), childHash);
+                    }
+                    break;
+                default:
+                    hash = mix(hash, childHash);
+                    break;
+            }
+        }
+
+        long finish() {
+            long result = mix(hash, children.size());
+            return kind == Kind.ORDERED ? result : mix(result, unorderedHash);
+        }
+    }
+
+    /**
+     * Hashes a single subtree, objects shared within it being hashed once
+     */
+    private final class Hashing {
+
+        private final Map<Object, Long> hashes = new IdentityHashMap<>();
+        private final Set<Object> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        OptionalLong hash(@Nullable Object root) {
+            Long rootHash = knownHash(root);
+            if (rootHash != null) {
+                return OptionalLong.of(rootHash);
+            }
+            Frame rootFrame = Frame.of(root);
+            if (rootFrame == null) {
+                return OptionalLong.empty();
+            }
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(rootFrame);
+            inProgress.add(root);
+            while (true) {
+                Frame frame = stack.peek();
+                if (frame.next < frame.children.size()) {
+                    Object child = frame.children.get(frame.next++);
+                    Long childHash = knownHash(child);
+                    if (childHash != null) {
+                        frame.accept(childHash);
+                        continue;
+                    }
+                    Frame childFrame = inProgress.add(child) ? Frame.of(child) : null;
+                    if (childFrame == null) {
+                        return OptionalLong.empty();
+                    }
+                    stack.push(childFrame);
+                    continue;
+                }
+                stack.pop();
+                long hash = frame.finish();
+                inProgress.remove(frame.value);
+                hashes.put(frame.value, hash);
+                if (frame.value instanceof Versioned) {
+                    entries.put(new WeakKey(frame.value, collectedKeys), new Entry(frame.version, hash));
+                }
+                if (stack.isEmpty()) {
+                    return OptionalLong.of(hash);
+                }
+                stack.peek().accept(hash);
+            }
+        }
+
+        /**
+         * @return hash of a value which has no children to hash, or has been hashed before, otherwise null
+         */
+        @Nullable
+        private Long knownHash(@Nullable Object value) {
+            if (value == null) {
+                return NULL_HASH;
+            }
+            Class<?> cls = value.getClass();
+            if (ClassDiffPlan.of(cls).isPrimitive()) {
+                return mix(mix(SEED, cls.hashCode()), primitiveHash(value));
+            }
+            if (value instanceof Enum) {
+                return mix(mix(SEED, cls.hashCode()), ((Enum<?>) value).ordinal());
+            }
+            if (cls.isArray() && cls.getComponentType().isPrimitive()) {
+                return mix(mix(SEED, cls.hashCode()), primitiveArrayHash(value));
+            }
+            Long hash = hashes.get(value);
+            if (hash != null) {
+                return hash;
+            }
+            if (value instanceof Versioned) {
+                Entry entry = entries.get(new WeakKey(value, null));
+                if (entry != null && entry.version == ((Versioned) value).getVersion()) {
+                    return entry.hash;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value;
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Hashes every bit of the value, as the 32 bit {@code hashCode} of boxed longs and strings collides too easily
+     */
+    private static long primitiveHash(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            long h = SEED;
+            for (int i = 0; i < string.length(); i++) {
+                h = (h ^ string.charAt(i)) * 0x100000001B3L;
+            }
+            return mix(h, string.length());
+        }
+        if (value instanceof Double) {
+            return Double.doubleToLongBits((Double) value);
+        }
+        if (value instanceof Float) {
+            return Float.floatToIntBits((Float) value);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static long primitiveArrayHash(Object array) {
+        int length = Array.getLength(array);
+        long h = mix(SEED, length);
+        if (array instanceof int[]) {
+            for (int value : (int[]) array) {
+                h = mix(h, value);
+            }
+        } else if (array instanceof long[]) {
+            for (long value : (long[]) array) {
+                h = mix(h, value);
+            }
+        } else if (array instanceof double[]) {
+            for (double value : (double[]) array) {
+                h = mix(h, Double.doubleToLongBits(value));
+            }
+        } else if (array instanceof float[]) {
+            for (float value : (float[]) array) {
+                h = mix(h, Float.floatToIntBits(value));
+            }
+        } else if (array instanceof short[]) {
+            for (short value : (short[]) array) {
+                h = mix(h, value);
+            }
+        } else if (array instanceof byte[]) {
+            for (byte value : (byte[]) array) {
+                h = mix(h, value);
+            }
+        } else if (array instanceof char[]) {
+            for (char value : (char[]) array) {
+                h = mix(h, value);
+            }
+        } else {
+            for (boolean value : (boolean[]) array) {
+                h = mix(h, value ? 1 : 0);
+            }
+        }
+        return h;
+    }
+
+}
@@ -0,0 +1,263 @@
+package org.xcorpion.jdiff.util.collection;
+
+import org.xcorpion.jdiff.api.Diff;
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.api.Feature;
+import org.xcorpion.jdiff.api.KeyExtractor;
+import org.xcorpion.jdiff.api.MergingHandler;
+import org.xcorpion.jdiff.api.ObjectDiffMapper;
+import org.xcorpion.jdiff.exception.MergingException;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * How a {@link DiffApplicationTree} applies each node of a diff, worked out once so that the diff can be applied
+ * to many objects.
+ * <p>
+ * {@link #compile(DiffNode)} walks the whole diff up front and orders the child diffs of every node keyed by
+ * indices, which are applied in that order to lists and arrays, and tells which of them are aligned list diffs.
+ * The merging handlers of a node depend on the type and class of the object it is applied to, which a diff does not
+ * record for unchanged nodes, so they are resolved when the node is first applied and kept for the following
+ * objects of the same class. A plan can be shared by threads applying the diff concurrently.
+ */
+public final class DiffApplicationPlan {
+
+    private final DiffNode diffNode;
+    private Map<DiffNode, DiffApplicationPlan> children = Collections.emptyMap();
+    // child diffs in increasing index order, set if all the keys are integers
+    private List<Map.Entry<Object, DiffNode>> indexedChildDiffs;
+    private boolean alignedListDiff;
+    // handlers resolved for the last object the node has been applied to
+    private volatile NodeHandlers handlers;
+    private volatile ObjectFields objectFields;
+
+    private DiffApplicationPlan(@Nonnull DiffNode diffNode) {
+        this.diffNode = diffNode;
+    }
+
+    @Nonnull
+    public static DiffApplicationPlan compile(@Nonnull DiffNode diffNode) {
+        DiffApplicationPlan root = new DiffApplicationPlan(diffNode);
+        Deque<DiffApplicationPlan> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            DiffApplicationPlan plan = pending.pop();
+            Map<Object, DiffNode> childDiffs = plan.diffNode.getFieldDiffs();
+            if (childDiffs == null || childDiffs.isEmpty()) {
+                continue;
+            }
+            plan.children = new IdentityHashMap<>(childDiffs.size());
+            for (DiffNode childDiff : childDiffs.values()) {
+                DiffApplicationPlan child = new DiffApplicationPlan(childDiff);
+                plan.children.put(childDiff, child);
+                pending.push(child);
+            }
+            if (hasIndexKeys(childDiffs)) {
+                List<Map.Entry<Object, DiffNode>> entries = new ArrayList<>(childDiffs.entrySet());
+                entries.sort(Comparator.comparingInt(entry -> (int) entry.getKey()));
+                plan.indexedChildDiffs = entries;
+                plan.alignedListDiff = isAlignedListDiff(childDiffs);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @return plan of a child diff of this node
+     */
+    @Nullable
+    DiffApplicationPlan getChild(@Nonnull DiffNode childDiff) {
+        return children.get(childDiff);
+    }
+
+    /**
+     * @return child diffs of an array or list in increasing index order
+     */
+    @Nullable
+    List<Map.Entry<Object, DiffNode>> getIndexedChildDiffs() {
+        return indexedChildDiffs;
+    }
+
+    /**
+     * @return true if the child diffs of a list have been created by
+     * {@link org.xcorpion.jdiff.api.Feature.ListDiffing#ALIGN_ELEMENTS}
+     */
+    boolean isAlignedListDiff() {
+        return alignedListDiff;
+    }
+
+    @Nonnull
+    NodeHandlers getHandlers(@Nullable Type type, @Nullable Class<?> objectClass,
+            @Nonnull ObjectDiffMapper mapper) {
+        NodeHandlers resolved = handlers;
+        if (resolved == null || resolved.objectClass != objectClass || !Objects.equals(resolved.type, type)) {
+            resolved = resolveHandlers(type, objectClass, mapper);
+            handlers = resolved;
+        }
+        return resolved;
+    }
+
+    @Nonnull
+    ObjectFields getObjectFields(@Nonnull Class<?> objectClass, @Nonnull ObjectDiffMapper mapper) {
+        ObjectFields resolved = objectFields;
+        if (resolved == null || resolved.objectClass != objectClass) {
+            resolved = resolveObjectFields(diffNode, objectClass, mapper);
+            objectFields = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * @param type type the node is applied as
+     * @param objectClass class of the object the node is applied to, null if there is none
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static NodeHandlers resolveHandlers(@Nullable Type type, @Nullable Class<?> objectClass,
+            @Nonnull ObjectDiffMapper mapper) {
+        MergingHandler<?> typeHandler = null;
+        if (type != null && !mapper.isEnabled(Feature.MergingHandler.IGNORE_CLASS_TYPE_HANDLER)) {
+            typeHandler = mapper.getMergingHandler(type);
+        }
+        MergingHandler<?> globalHandler = null;
+        if (objectClass != null && !mapper.isEnabled(Feature.MergingHandler.IGNORE_GLOBAL_TYPE_HANDLER)) {
+            globalHandler = mapper.getMergingHandler((Class<Object>) objectClass);
+        }
+        return new NodeHandlers(type, objectClass, typeHandler, globalHandler);
+    }
+
+    /**
+     * @param diffNode diff of an object whose child diffs are keyed by field names
+     */
+    @Nonnull
+    static ObjectFields resolveObjectFields(@Nonnull DiffNode diffNode, @Nonnull Class<?> objectClass,
+            @Nonnull ObjectDiffMapper mapper) {
+        Map<Object, DiffNode> childDiffs = diffNode.getFieldDiffs();
+        if (childDiffs == null) {
+            return new ObjectFields(objectClass, Collections.emptyMap());
+        }
+        ClassDiffPlan classPlan = ClassDiffPlan.of(objectClass);
+        boolean useFieldHandlers = !mapper.isEnabled(Feature.MergingHandler.IGNORE_FIELD_TYPE_HANDLER);
+        Map<String, PlannedField> fields = new HashMap<>();
+        for (Object key : childDiffs.keySet()) {
+            FieldDiffPlan fieldPlan = key instanceof String ? classPlan.getField((String) key) : null;
+            if (fieldPlan != null) {
+                MergingHandler<?> mergingHandler = useFieldHandlers ? findMergingHandler(fieldPlan, mapper) : null;
+                fields.put(fieldPlan.getName(), new PlannedField(fieldPlan, mergingHandler, findElementKeys(fieldPlan)));
+            }
+        }
+        return new ObjectFields(objectClass, fields);
+    }
+
+    @Nullable
+    private static MergingHandler<?> findMergingHandler(@Nonnull FieldDiffPlan fieldPlan,
+            @Nonnull ObjectDiffMapper mapper) {
+        Class<? extends MergingHandler<?>> mergingHandlerClass = fieldPlan.getMergingHandlerClass();
+        if (mergingHandlerClass != null) {
+            try {
+                return HandlerInstances.get(mergingHandlerClass);
+            }
+            catch (Throwable e) {
+                throw new MergingException("Failed to instantiate merging handler " + mergingHandlerClass +
+                        " for field " + fieldPlan.getName(), e);
+            }
+        }
+        return mapper.getMergingHandler(fieldPlan.getGenericType());
+    }
+
+    @Nullable
+    private static ElementKeys findElementKeys(@Nonnull FieldDiffPlan fieldPlan) {
+        Class<? extends KeyExtractor<?>> keyExtractorClass = fieldPlan.getKeyExtractorClass();
+        if (keyExtractorClass == null) {
+            return null;
+        }
+        try {
+            return ElementKeys.of(keyExtractorClass);
+        }
+        catch (Throwable e) {
+            throw new MergingException("Failed to instantiate key extractor " + keyExtractorClass +
+                    " for field " + fieldPlan.getName(), e);
+        }
+    }
+
+    private static boolean hasIndexKeys(@Nonnull Map<Object, DiffNode> childDiffs) {
+        for (Object key : childDiffs.keySet()) {
+            if (!(key instanceof Integer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the child diffs have been created by
+     * {@link org.xcorpion.jdiff.api.Feature.ListDiffing#ALIGN_ELEMENTS}. An aligned diff without insertions,
+     * moves or removals has the same meaning as a positional one.
+     */
+    static boolean isAlignedListDiff(@Nonnull Map<Object, DiffNode> childDiffs) {
+        for (Map.Entry<Object, DiffNode> entry : childDiffs.entrySet()) {
+            Diff.Operation op = entry.getValue().getDiff().getOperation();
+            if (op == Diff.Operation.INSERT_VALUE || op == Diff.Operation.MOVE_VALUE ||
+                    (op == Diff.Operation.REMOVE_VALUE && (int) entry.getKey() < 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merging handlers of a node, null where disabled or not registered
+     */
+    static final class NodeHandlers {
+        final Type type;
+        final Class<?> objectClass;
+        final MergingHandler<?> typeHandler;
+        final MergingHandler<?> globalHandler;
+
+        NodeHandlers(Type type, Class<?> objectClass, MergingHandler<?> typeHandler,
+                MergingHandler<?> globalHandler) {
+            this.type = type;
+            this.objectClass = objectClass;
+            this.typeHandler = typeHandler;
+            this.globalHandler = globalHandler;
+        }
+    }
+
+    /**
+     * Fields of an object that have child diffs, by name
+     */
+    static final class ObjectFields {
+        final Class<?> objectClass;
+        private final Map<String, PlannedField> fields;
+
+        ObjectFields(Class<?> objectClass, Map<String, PlannedField> fields) {
+            this.objectClass = objectClass;
+            this.fields = fields;
+        }
+
+        @Nullable
+        PlannedField get(@Nonnull String fieldName) {
+            return fields.get(fieldName);
+        }
+    }
+
+    static final class PlannedField {
+        final FieldDiffPlan fieldPlan;
+        // null where disabled or not registered
+        final MergingHandler<?> mergingHandler;
+        final ElementKeys elementKeys;
+
+        PlannedField(FieldDiffPlan fieldPlan, MergingHandler<?> mergingHandler, ElementKeys elementKeys) {
+            this.fieldPlan = fieldPlan;
+            this.mergingHandler = mergingHandler;
+            this.elementKeys = elementKeys;
+        }
+    }
+
+}
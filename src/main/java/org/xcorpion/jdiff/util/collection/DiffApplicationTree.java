@@ -1,15 +1,18 @@
 package org.xcorpion.jdiff.util.collection;
 
-import org.xcorpion.jdiff.annotation.TypeHandler;
 import org.xcorpion.jdiff.api.*;
 import org.xcorpion.jdiff.exception.MergingException;
 import org.xcorpion.jdiff.exception.MergingValidationError;
+import org.xcorpion.jdiff.handler.CompiledHandlers;
+import org.xcorpion.jdiff.handler.CompiledObjectMergingHandler;
 import org.xcorpion.jdiff.internal.model.DefaultMergingContext;
 import org.xcorpion.jdiff.util.ObjectUtils;
+import org.xcorpion.jdiff.util.PrimitiveArrays;
+import org.xcorpion.jdiff.util.StructuralEquality;
+import org.xcorpion.jdiff.util.reflection.FieldDiffPlan;
 import org.xcorpion.jdiff.util.reflection.ReflectionUtils;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.*;
 import javax.annotation.Nonnull;
@@ -17,13 +20,16 @@ import javax.annotation.Nullable;
 
 public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
 
-    private static class RemovalPair {
+    private static class ListUpdate {
         final int index;
-        final Object obj;
+        // unused for references, which are resolved against the current element
+        final Object value;
+        final Diff diff;
 
-        RemovalPair(int index, Object obj) {
+        ListUpdate(int index, Object value, Diff diff) {
             this.index = index;
-            this.obj = obj;
+            this.value = value;
+            this.diff = diff;
         }
     }
 
@@ -33,11 +39,30 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
     private DiffNode diffNode;
     private Set<Object> removedFieldDiffKeys = new HashSet<>();
     private boolean shouldSkip;
+    // set once child diffs have been applied as a whole, e.g. by a custom handler owning the subtree
+    // or onto a primitive array, so they must not be visited again
+    private boolean childDiffsApplied;
+    // original indices of the elements removed from a list, which shift the positions of the following ones
+    private BitSet removedListIndices;
+    // keys of set elements given by the field holding the set, if any
+    private ElementKeys elementKeys;
+    // objects of the graph being patched replaced by other objects while applying, e.g. a cloned root,
+    // shared by the whole tree so that references to them can be updated
+    private Map<Object, Object> replacedObjects = new IdentityHashMap<>();
+    // set if the diff has been compiled to be applied to many objects, the plan of this node
+    private DiffApplicationPlan plan;
+    // fields of an object having child diffs, resolved when the object is applied
+    private DiffApplicationPlan.ObjectFields objectFields;
 
     public DiffApplicationTree(Type type, Object obj, DiffNode diffNode) {
         this(type, obj, diffNode, false);
     }
 
+    public DiffApplicationTree(Type type, Object obj, DiffNode diffNode, @Nullable DiffApplicationPlan plan) {
+        this(type, obj, diffNode, false);
+        this.plan = plan;
+    }
+
     @SuppressWarnings("WeakerAccess")
     public DiffApplicationTree(Type type, Object obj, DiffNode diffNode, boolean shouldSkip) {
         this.type = type;
@@ -66,20 +91,26 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
         if (op == null) {
             throw new IllegalStateException("Unexpected operation: null");
         }
-        if (!objectDiffMapper.isEnabled(Feature.MergingHandler.IGNORE_CLASS_TYPE_HANDLER)) {
-            MergingHandler<?> mergingHandler = findMergingHandler(this.type, mergingContext);
-            if (mergingHandler != null) {
-                return mergeUsingCustomHandler(src, diffNode, mergingContext, mergingHandler);
-            }
+        if (op == Diff.Operation.MOVE_VALUE) {
+            // the parent list has moved the element already, only its nested diffs are left
+            op = Diff.Operation.NO_OP;
         }
-        if (!objectDiffMapper.isEnabled(Feature.MergingHandler.IGNORE_GLOBAL_TYPE_HANDLER)) {
-            if (src != null) {
-                org.xcorpion.jdiff.api.MergingHandler mergingHandler = objectDiffMapper.getMergingHandler((Class<Object>) src.getClass());
-                if (mergingHandler != null) {
-                    this.updatedObj = mergeUsingCustomHandler(src, diffNode, mergingContext, mergingHandler);
-                    return this.updatedObj;
-                }
-            }
+        if (op == Diff.Operation.REFERENCE) {
+            // the parent has resolved the reference already
+            return src;
+        }
+        Class<?> srcClass = src == null ? null : src.getClass();
+        DiffApplicationPlan.NodeHandlers handlers = plan != null ?
+                plan.getHandlers(this.type, srcClass, objectDiffMapper) :
+                DiffApplicationPlan.resolveHandlers(this.type, srcClass, objectDiffMapper);
+        if (handlers.typeHandler != null) {
+            this.childDiffsApplied = true;
+            return mergeUsingCustomHandler(src, diffNode, mergingContext, handlers.typeHandler);
+        }
+        if (handlers.globalHandler != null) {
+            this.childDiffsApplied = true;
+            this.updatedObj = mergeUsingCustomHandler(src, diffNode, mergingContext, handlers.globalHandler);
+            return this.updatedObj;
         }
 
         // for these ops there's no further actions required
@@ -159,6 +190,9 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
         }
         if (mergingContext.isRootObject()) {
             this.updatedObj = cloneSrcIfNeeded(src, mergingContext);
+            if (this.updatedObj != src) {
+                replacedObjects.put(src, this.updatedObj);
+            }
         }
         if (this.updatedObj instanceof List) {
             if (op != Diff.Operation.NO_OP) {
@@ -179,12 +213,23 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
             throw new UnsupportedOperationException("Sorry, auto iterable merging is not supported. " +
                     "Please implement your type handler to handle merging.");
         } else {
-            handleObjectChildUpdates(this.updatedObj, nextLevelMergingContext);
+            Class<?> objectClass = this.updatedObj.getClass();
+            this.objectFields = plan != null ?
+                    plan.getObjectFields(objectClass, objectDiffMapper) :
+                    DiffApplicationPlan.resolveObjectFields(diffNode, objectClass, objectDiffMapper);
+            if (applyUsingCompiledHandler(this.updatedObj, nextLevelMergingContext)) {
+                setObjectReferences(this.updatedObj);
+            } else {
+                handleObjectChildUpdates(this.updatedObj, nextLevelMergingContext);
+            }
         }
         return this.updatedObj;
     }
 
-    private static Object cloneSrcIfNeeded(Object src, MergingContext mergingContext) {
+    /**
+     * Clones {@code src} as required by the merging strategies in the context
+     */
+    public static Object cloneSrcIfNeeded(Object src, MergingContext mergingContext) {
         ObjectDiffMapper objectDiffMapper = mergingContext.getObjectDiffMapper();
         Set<Feature.MergingStrategy> currentContextStrategies = mergingContext.getMergingStrategies();
         if (objectDiffMapper.isMergingStrategyEnabled(
@@ -207,26 +252,25 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
         return src;
     }
 
-    @Nullable
-    private MergingHandler<?> findMergingHandler(@Nonnull Field field, @Nonnull MergingContext mergingContext) {
-        TypeHandler typeHandler = field.getAnnotation(TypeHandler.class);
-        if (typeHandler != null && typeHandler.mergeUsing() != TypeHandler.None.class) {
-            Class<? extends org.xcorpion.jdiff.api.MergingHandler> mergingHandlerClass = typeHandler.mergeUsing();
-            try {
-                return mergingHandlerClass.newInstance();
-            }
-            catch (Throwable e) {
-                throw new MergingException("Failed to instantiate merging handler " + mergingHandlerClass +
-                        " for field " + field.getName(), e);
+    /**
+     * @return true if {@code keys} are in strictly increasing order, false if not or if they cannot be compared
+     */
+    private static boolean isInOrder(@Nonnull Collection<Object> keys, @Nonnull Comparator<Object> ordering) {
+        Object previous = null;
+        boolean first = true;
+        try {
+            for (Object key : keys) {
+                if (!first && ordering.compare(previous, key) >= 0) {
+                    return false;
+                }
+                previous = key;
+                first = false;
             }
         }
-        return findMergingHandler(field.getGenericType(), mergingContext);
-    }
-
-    @Nullable
-    private MergingHandler<?> findMergingHandler(@Nonnull Type type, @Nonnull MergingContext mergingContext) {
-        ObjectDiffMapper mapper = mergingContext.getObjectDiffMapper();
-        return mapper.getMergingHandler(type);
+        catch (ClassCastException | NullPointerException e) {
+            return false;
+        }
+        return true;
     }
 
     @SuppressWarnings("unchecked")
@@ -236,6 +280,26 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
         return mergingHandler.merge(src, diffNode, mergingContext);
     }
 
+    @Nonnull
+    private Map<Object, DiffNode> getChildDiffs() {
+        Map<Object, DiffNode> childDiffs = diffNode.getFieldDiffs();
+        // objects that are not equal but have no changed fields come without child diffs
+        return childDiffs == null ? Collections.emptyMap() : childDiffs;
+    }
+
+    /**
+     * Objects are applied in place apart from the root, so the object a {@link Diff.Operation#REFERENCE} points to
+     * in the graph being patched is the one patched along its first path, unless it has been replaced as a whole.
+     * The source value of the diff is not used as the diff may be applied to a copy of its source.
+     *
+     * @param current value in the graph being patched
+     * @return the object to refer to
+     */
+    private Object resolveReference(@Nullable Object current) {
+        Object replacement = current == null ? null : replacedObjects.get(current);
+        return replacement != null ? replacement : current;
+    }
+
     private static Object cloneArray(Object src) {
         int len = Array.getLength(src);
         Object newArray = Array.newInstance(src.getClass().getComponentType(), len);
@@ -245,7 +309,7 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
     }
 
     private void handleArrayChildUpdates(Object parent, MergingContext mergingContext) {
-        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
             int index = (int) entry.getKey();
             Diff diff = entry.getValue().getDiff();
             switch (diff.getOperation()) {
@@ -260,81 +324,390 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
                         validateSourceValue(diffMapper, src, expectedSrc);
                     }
                 case ADD_VALUE:
-                    Array.set(parent, index, diff.getTargetValue());
+                    if (!PrimitiveArrays.set(parent, index, diff.getTargetValue())) {
+                        Array.set(parent, index, diff.getTargetValue());
+                    }
                     break;
                 case REMOVE_VALUE:
                     removedFieldDiffKeys.add(entry.getKey());
                     break;
+                case REFERENCE:
+                    Object current = Array.get(parent, index);
+                    Object referred = resolveReference(current);
+                    if (referred != current) {
+                        Array.set(parent, index, referred);
+                    }
+                    break;
             }
         }
+        // primitive elements have no children of their own, so unless a handler wants to see them
+        // there is nothing left to apply
+        Class<?> boxedType = PrimitiveArrays.getBoxedComponentType(parent.getClass());
+        if (boxedType != null) {
+            ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
+            this.childDiffsApplied = diffMapper.getMergingHandler(boxedType) == null &&
+                    diffMapper.getMergingHandler(parent.getClass().getComponentType()) == null;
+        }
     }
 
     @SuppressWarnings("unchecked")
     private void handleListChildUpdates(Object parent, MergingContext mergingContext) {
         List<Object> list = (List<Object>) parent;
-        List<RemovalPair> itemsToRemove = new ArrayList<>();
-        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
+        if (isAlignedListDiff()) {
+            handleAlignedListChildUpdates(list, mergingContext);
+            return;
+        }
+        ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
+        boolean validate = diffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_SOURCE_VALUE);
+        boolean randomAccess = list instanceof RandomAccess;
+        int size = list.size();
+        // added elements are appended at once, after the removals, and may be updated or removed by index as well
+        List<Object> added = new ArrayList<>();
+        List<ListUpdate> deferredUpdates = new ArrayList<>();
+        BitSet removed = new BitSet();
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
             int index = (int) entry.getKey();
             Diff diff = entry.getValue().getDiff();
+            ListUpdate update;
             switch (diff.getOperation()) {
-                case NO_OP:
-                    break;
                 case UPDATE_VALUE:
-                    ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
-                    if (diffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_SOURCE_VALUE)) {
-                        Object expectedSrc = diff.getSrcValue();
-                        Object src = list.get(index);
-                        validateSourceValue(diffMapper, src, expectedSrc);
+                    update = new ListUpdate(index, diff.getTargetValue(), diff);
+                    break;
+                case REFERENCE:
+                    if (replacedObjects.isEmpty()) {
+                        continue;
                     }
-                    list.set(index, diff.getTargetValue());
+                    update = new ListUpdate(index, null, diff);
                     break;
                 case ADD_VALUE:
-                    list.add(diff.getTargetValue());
+                    added.add(diff.getTargetValue());
+                    continue;
+                case REMOVE_VALUE:
+                    removed.set(index);
+                    removedFieldDiffKeys.add(entry.getKey());
+                    continue;
+                default:
+                    continue;
+            }
+            if (index >= size) {
+                if (index - size >= added.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (size + added.size()));
+                }
+                added.set(index - size, applyListUpdate(update, added.get(index - size), validate, diffMapper));
+            } else if (randomAccess) {
+                list.set(index, applyListUpdate(update, list.get(index), validate, diffMapper));
+            } else {
+                deferredUpdates.add(update);
+            }
+        }
+        if (removed.length() > size + added.size()) {
+            throw new IndexOutOfBoundsException("Index: " + (removed.length() - 1) + ", Size: " + (size + added.size()));
+        }
+
+        if (!removed.isEmpty()) {
+            removedListIndices = removed;
+        }
+        if (randomAccess) {
+            compactRandomAccessList(list, size, removed);
+        } else {
+            walkSequentialList(list, size, deferredUpdates, removed, validate, diffMapper);
+        }
+        if (removed.length() > size) {
+            List<Object> kept = new ArrayList<>(added.size());
+            for (int i = 0; i < added.size(); i++) {
+                if (!removed.get(size + i)) {
+                    kept.add(added.get(i));
+                }
+            }
+            added = kept;
+        }
+        if (!added.isEmpty()) {
+            list.addAll(added);
+        }
+    }
+
+    /**
+     * @return the updated value after validating the current one
+     */
+    private Object applyListUpdate(ListUpdate update, Object current, boolean validate,
+            ObjectDiffMapper diffMapper) {
+        if (update.diff.getOperation() == Diff.Operation.REFERENCE) {
+            return resolveReference(current);
+        }
+        if (validate) {
+            validateSourceValue(diffMapper, current, update.diff.getSrcValue());
+        }
+        return update.value;
+    }
+
+    /**
+     * Removes the elements below {@code size} marked in {@code removed}, shifting every remaining element once
+     */
+    private static void compactRandomAccessList(List<Object> list, int size, BitSet removed) {
+        int firstRemoved = removed.nextSetBit(0);
+        if (firstRemoved < 0 || firstRemoved >= size) {
+            return;
+        }
+        int write = firstRemoved;
+        for (int read = firstRemoved + 1; read < size; read++) {
+            if (!removed.get(read)) {
+                list.set(write++, list.get(read));
+            }
+        }
+        list.subList(write, size).clear();
+    }
+
+    /**
+     * Applies the updates and removals below {@code size} in a single walk
+     */
+    private void walkSequentialList(List<Object> list, int size, List<ListUpdate> updates, BitSet removed,
+            boolean validate, ObjectDiffMapper diffMapper) {
+        if (!isSortedByIndex(updates)) {
+            updates.sort(Comparator.comparingInt(update -> update.index));
+        }
+        int end = Math.max(removed.previousSetBit(size - 1) + 1,
+                updates.isEmpty() ? 0 : updates.get(updates.size() - 1).index + 1);
+        ListIterator<Object> iterator = list.listIterator();
+        int nextUpdate = 0;
+        for (int i = 0; i < end; i++) {
+            Object element = iterator.next();
+            if (removed.get(i)) {
+                iterator.remove();
+            } else if (nextUpdate < updates.size() && updates.get(nextUpdate).index == i) {
+                iterator.set(applyListUpdate(updates.get(nextUpdate++), element, validate, diffMapper));
+            }
+        }
+    }
+
+    private static boolean isSortedByIndex(List<ListUpdate> updates) {
+        for (int i = 1; i < updates.size(); i++) {
+            if (updates.get(i - 1).index >= updates.get(i).index) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAlignedListDiff() {
+        if (plan != null) {
+            return plan.isAlignedListDiff();
+        }
+        return DiffApplicationPlan.isAlignedListDiff(getChildDiffs());
+    }
+
+    /**
+     * Rebuilds the list from the first changed index on: target indices that are not inserted or moved
+     * take the next source element that has been neither removed nor moved away.
+     */
+    private void handleAlignedListChildUpdates(List<Object> list, MergingContext mergingContext) {
+        Map<Object, DiffNode> childDiffs = getChildDiffs();
+        ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
+        int srcSize = list.size();
+        BitSet leaving = new BitSet(srcSize);
+        int firstChangedIndex = Integer.MAX_VALUE;
+        int removed = 0;
+        int inserted = 0;
+        for (Map.Entry<Object, DiffNode> entry : childDiffs.entrySet()) {
+            int index = (int) entry.getKey();
+            Diff diff = entry.getValue().getDiff();
+            switch (diff.getOperation()) {
+                case NO_OP:
+                case REFERENCE:
+                    break;
+                case UPDATE_VALUE:
+                    firstChangedIndex = Math.min(firstChangedIndex, index);
+                    break;
+                case INSERT_VALUE:
+                    inserted++;
+                    firstChangedIndex = Math.min(firstChangedIndex, index);
+                    removedFieldDiffKeys.add(entry.getKey());
+                    break;
+                case MOVE_VALUE:
+                    int movedIndex = (int) diff.getSrcValue();
+                    if (movedIndex < 0 || movedIndex >= srcSize) {
+                        throw new MergingException("Unable to move element " + movedIndex +
+                                " of a list of size " + srcSize);
+                    }
+                    leaving.set(movedIndex);
+                    firstChangedIndex = Math.min(firstChangedIndex, Math.min(index, movedIndex));
+                    // elements matched by key may still have changes of their own to apply once moved
+                    if (entry.getValue().getFieldDiffs() == null) {
+                        removedFieldDiffKeys.add(entry.getKey());
+                    }
                     break;
                 case REMOVE_VALUE:
-                    itemsToRemove.add(new RemovalPair(index, diff.getSrcValue()));
+                    if (index >= 0) {
+                        throw new MergingException("Unexpected removal of index " + index + " in an aligned list diff");
+                    }
+                    int removedIndex = ListAlignment.removedSrcIndex(index);
+                    if (removedIndex >= srcSize) {
+                        throw new MergingException("Unable to remove element " + removedIndex +
+                                " of a list of size " + srcSize);
+                    }
+                    leaving.set(removedIndex);
+                    removed++;
+                    firstChangedIndex = Math.min(firstChangedIndex, removedIndex);
                     removedFieldDiffKeys.add(entry.getKey());
                     break;
+                default:
+                    throw new MergingException("Illegal operation for list element: " + diff.getOperation());
             }
         }
+        if (firstChangedIndex != Integer.MAX_VALUE) {
+            rebuildAlignedList(list, childDiffs, diffMapper, srcSize, leaving, firstChangedIndex,
+                    srcSize - removed + inserted);
+        }
+        if (replacedObjects.isEmpty()) {
+            return;
+        }
+        // references are keyed by their index in the target list
+        List<ListUpdate> references = new ArrayList<>();
+        for (Map.Entry<Object, DiffNode> entry : childDiffs.entrySet()) {
+            Diff diff = entry.getValue().getDiff();
+            if (diff.getOperation() == Diff.Operation.REFERENCE) {
+                references.add(new ListUpdate((int) entry.getKey(), null, diff));
+            }
+        }
+        if (references.isEmpty()) {
+            return;
+        }
+        if (list instanceof RandomAccess) {
+            for (ListUpdate reference : references) {
+                list.set(reference.index, resolveReference(list.get(reference.index)));
+            }
+        } else {
+            walkSequentialList(list, list.size(), references, new BitSet(), false, diffMapper);
+        }
+    }
 
-        itemsToRemove.sort((p1, p2) -> p2.index - p1.index);
-        for (RemovalPair pair : itemsToRemove) {
-            list.remove(pair.index);
+    private void rebuildAlignedList(List<Object> list, Map<Object, DiffNode> childDiffs, ObjectDiffMapper diffMapper,
+            int srcSize, BitSet leaving, int firstChangedIndex, int targetSize) {
+        List<Object> srcTail = list.subList(firstChangedIndex, srcSize);
+        Object[] srcElements = srcTail.toArray();
+        List<Object> targetTail = new ArrayList<>(Math.max(targetSize - firstChangedIndex, 0));
+        int srcIndex = firstChangedIndex;
+        for (int targetIndex = firstChangedIndex; targetIndex < targetSize; targetIndex++) {
+            DiffNode childDiffNode = childDiffs.get(targetIndex);
+            Diff diff = childDiffNode == null ? null : childDiffNode.getDiff();
+            if (diff != null && diff.getOperation() == Diff.Operation.INSERT_VALUE) {
+                targetTail.add(diff.getTargetValue());
+                continue;
+            }
+            if (diff != null && diff.getOperation() == Diff.Operation.MOVE_VALUE) {
+                targetTail.add(srcElements[(int) diff.getSrcValue() - firstChangedIndex]);
+                continue;
+            }
+            srcIndex = leaving.nextClearBit(srcIndex);
+            if (srcIndex >= srcSize) {
+                throw new MergingException("Aligned list diff does not match a source list of size " + srcSize);
+            }
+            Object value = srcElements[srcIndex++ - firstChangedIndex];
+            if (diff != null && diff.getOperation() == Diff.Operation.UPDATE_VALUE) {
+                if (diffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_SOURCE_VALUE)) {
+                    validateSourceValue(diffMapper, value, diff.getSrcValue());
+                }
+                value = diff.getTargetValue();
+            }
+            targetTail.add(value);
         }
+        if (leaving.nextClearBit(srcIndex) < srcSize) {
+            throw new MergingException("Aligned list diff does not match a source list of size " + srcSize);
+        }
+        srcTail.clear();
+        list.addAll(targetTail);
     }
 
+    /**
+     * Set elements are not visited as children: elements with nested diffs are looked up by their key
+     * and taken out of the set while the diffs are applied, since they may change their hash code.
+     */
     @SuppressWarnings("unchecked")
     private void handleSetChildUpdates(Object parent, MergingContext mergingContext) {
         Set<Object> set = (Set<Object>) parent;
-        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
-            Diff diff = entry.getValue().getDiff();
+        ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
+        Map<Object, Object> elementsByKey = null;
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
+            Object key = entry.getKey();
+            DiffNode childDiffNode = entry.getValue();
+            Diff diff = childDiffNode.getDiff();
+            removedFieldDiffKeys.add(key);
             switch (diff.getOperation()) {
                 case NO_OP:
+                    if (childDiffNode.getFieldDiffs() == null) {
+                        break;
+                    }
+                    if (elementsByKey == null) {
+                        elementsByKey = indexSetElements(set, mergingContext);
+                    }
+                    if (!elementsByKey.containsKey(key)) {
+                        throw new MergingException("Set does not contain an element with key " + key);
+                    }
+                    Object element = elementsByKey.get(key);
+                    set.remove(element);
+                    set.add(diffMapper.applyDiff(element, childDiffNode, mergingContext.getMergingStrategies()));
                     break;
                 case UPDATE_VALUE:
-                    ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
                     if (diffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_SOURCE_VALUE)) {
                         Object expectedSrc = diff.getSrcValue();
                         if (!set.contains(expectedSrc)) {
                             throw new MergingValidationError("Set does not contain expected source value: " + expectedSrc);
                         }
                     }
+                    set.remove(diff.getSrcValue());
+                    // fall through, the target value replaces the removed one
                 case ADD_VALUE:
                     set.add(diff.getTargetValue());
                     break;
                 case REMOVE_VALUE:
                     set.remove(diff.getSrcValue());
-                    removedFieldDiffKeys.add(entry.getKey());
                     break;
+                case REFERENCE:
+                    if (replacedObjects.isEmpty()) {
+                        break;
+                    }
+                    if (elementsByKey == null) {
+                        elementsByKey = indexSetElements(set, mergingContext);
+                    }
+                    Object current = elementsByKey.get(key);
+                    Object referred = resolveReference(current);
+                    if (referred != current) {
+                        set.remove(current);
+                        set.add(referred);
+                    }
+                    break;
+            }
+        }
+    }
+
+    @Nonnull
+    private Map<Object, Object> indexSetElements(@Nonnull Set<Object> set, @Nonnull MergingContext mergingContext) {
+        ObjectDiffMapper diffMapper = mergingContext.getObjectDiffMapper();
+        ElementKeys keys = this.elementKeys;
+        if (keys == null) {
+            try {
+                keys = ElementKeys.forElements(diffMapper,
+                        !diffMapper.isEnabled(Feature.MergingHandler.IGNORE_CLASS_TYPE_HANDLER),
+                        !diffMapper.isEnabled(Feature.MergingHandler.IGNORE_GLOBAL_TYPE_HANDLER),
+                        set);
+            }
+            catch (Throwable e) {
+                throw new MergingException("Failed to instantiate key extractor: " + e.getMessage(), e);
+            }
+            if (keys == null) {
+                throw new MergingException("Unable to apply nested diffs to set elements without key extractors");
             }
         }
+        Map<Object, Object> elementsByKey = new HashMap<>(set.size() * 4 / 3 + 1);
+        for (Object element : set) {
+            elementsByKey.put(keys.apply(element), element);
+        }
+        return elementsByKey;
     }
 
     @SuppressWarnings("unchecked")
     private void handleMapChildUpdates(Object parent, MergingContext mergingContext) {
         Map<Object, Object> map = (Map<Object, Object>) parent;
-        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
             Object key = entry.getKey();
             DiffNode diffWrapper = entry.getValue();
             Diff diff = diffWrapper.getDiff();
@@ -362,36 +735,40 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
                     map.remove(key);
                     removedFieldDiffKeys.add(entry.getKey());
                     break;
+                case REFERENCE:
+                    Object current = map.get(key);
+                    Object referred = resolveReference(current);
+                    if (referred != current) {
+                        map.put(key, referred);
+                    }
+                    break;
             }
         }
     }
 
     private void handleObjectChildUpdates(Object parent, MergingContext mergingContext) {
-        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
             String fieldName = (String) entry.getKey();
             DiffNode currentLevelDiffNode = entry.getValue();
             Diff diff = currentLevelDiffNode.getDiff();
-            Field field = ReflectionUtils.getField(parent, fieldName);
+            DiffApplicationPlan.PlannedField field = objectFields.get(fieldName);
             ObjectDiffMapper objectDiffMapper = mergingContext.getObjectDiffMapper();
             if (field == null) {
                 if (objectDiffMapper.isEnabled(Feature.MergingValidationCheck.VALIDATE_OBJECT_FIELD_EXISTENCE)) {
                     throw new MergingException("Unable to find " + fieldName + " in " + parent.getClass().getName());
                 }
+                removedFieldDiffKeys.add(fieldName);
                 continue;
             }
-            field.setAccessible(true);
-            if (!mergingContext.getObjectDiffMapper().isEnabled(Feature.MergingHandler.IGNORE_FIELD_TYPE_HANDLER)) {
+            FieldDiffPlan fieldPlan = field.fieldPlan;
+            if (field.mergingHandler != null) {
                 try {
-                    Object fieldSrc = field.get(parent);
-                    @SuppressWarnings("unchecked")
-                    MergingHandler<?> mergingHandler = findMergingHandler(field, mergingContext);
-                    if (mergingHandler != null) {
-                        Object result = mergeUsingCustomHandler(fieldSrc,
-                                currentLevelDiffNode, mergingContext, mergingHandler);
-                        field.set(parent, result);
-                        removedFieldDiffKeys.add(fieldName);
-                        continue;
-                    }
+                    Object fieldSrc = fieldPlan.get(parent);
+                    Object result = mergeUsingCustomHandler(fieldSrc,
+                            currentLevelDiffNode, mergingContext, field.mergingHandler);
+                    fieldPlan.set(parent, result);
+                    removedFieldDiffKeys.add(fieldName);
+                    continue;
                 } catch (IllegalAccessException e) {
                     throw new MergingException("Failed to access field " + fieldName + " in " + parent.getClass().getName(), e);
                 }
@@ -400,14 +777,16 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
                 case NO_OP:
                     break;
                 case UPDATE_VALUE:
-                    field.setAccessible(true);
                     Object fieldTarget = diff.getTargetValue();
                     try {
-                        field.set(parent, fieldTarget);
+                        fieldPlan.set(parent, fieldTarget);
                     } catch (IllegalAccessException e) {
                         throw new MergingException("Failed to set " + fieldName + " in " + parent.getClass().getName(), e);
                     }
                     break;
+                case REFERENCE:
+                    setFieldReference(parent, fieldPlan);
+                    break;
                 default:
                     String message = String.format("Unexpected operation: %s to be applied to field %s in %s",
                             diff.getOperation(),
@@ -418,6 +797,60 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
         }
     }
 
+    private boolean applyUsingCompiledHandler(Object parent, MergingContext mergingContext) {
+        if (!mergingContext.getObjectDiffMapper().isEnabled(Feature.MergingHandler.USE_COMPILED_OBJECT_HANDLER)) {
+            return false;
+        }
+        CompiledObjectMergingHandler<?> mergingHandler = CompiledHandlers.getMergingHandler(parent.getClass());
+        if (mergingHandler == null) {
+            return false;
+        }
+        mergingHandler.applyFieldDiffs(parent, getChildDiffs(), mergingContext, removedFieldDiffKeys);
+        return true;
+    }
+
+    /**
+     * Compiled handlers leave the values of references as they are, which may have been replaced since
+     */
+    private void setObjectReferences(Object parent) {
+        if (replacedObjects.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Object, DiffNode> entry : getChildDiffs().entrySet()) {
+            Diff diff = entry.getValue().getDiff();
+            DiffApplicationPlan.PlannedField field = objectFields.get((String) entry.getKey());
+            if (diff.getOperation() == Diff.Operation.REFERENCE && field != null &&
+                    !removedFieldDiffKeys.contains(entry.getKey())) {
+                setFieldReference(parent, field.fieldPlan);
+            }
+        }
+    }
+
+    private void setFieldReference(Object parent, FieldDiffPlan fieldPlan) {
+        if (replacedObjects.isEmpty()) {
+            return;
+        }
+        Object current;
+        try {
+            current = fieldPlan.get(parent);
+        }
+        catch (IllegalAccessException e) {
+            throw new MergingException("Failed to get " + fieldPlan.getName() + " in " + parent.getClass().getName(), e);
+        }
+        Object referred = resolveReference(current);
+        if (referred != current) {
+            setField(parent, fieldPlan, referred);
+        }
+    }
+
+    private static void setField(Object parent, FieldDiffPlan fieldPlan, Object value) {
+        try {
+            fieldPlan.set(parent, value);
+        } catch (IllegalAccessException e) {
+            throw new MergingException("Failed to set " + fieldPlan.getName() + " in " + parent.getClass().getName(), e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static void validateSourceValue(ObjectDiffMapper objectDiffMapper, Object src, Object expectedSrc) {
         if (src != expectedSrc) {
@@ -443,44 +876,120 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
                     throw new MergingValidationError("Expected value not equal to actual: hash code mismatch");
                 }
             }
+            else if (objectDiffMapper.isEnabled(Feature.EqualityCheck.USE_STRUCTURAL)) {
+                if (!StructuralEquality.isEqual(src, expectedSrc)) {
+                    throw new MergingValidationError("Expected value not structurally equal to actual");
+                }
+            }
         }
     }
 
+    @Nonnull
+    private DiffApplicationTree createChild(Type type, Object obj, DiffNode diffNode, boolean shouldSkip) {
+        DiffApplicationTree child = new DiffApplicationTree(type, obj, diffNode, shouldSkip);
+        child.replacedObjects = replacedObjects;
+        child.plan = plan == null ? null : plan.getChild(diffNode);
+        return child;
+    }
+
     @Override
     public Iterable<DiffApplicationTree> getChildren() {
         return () -> new Iterator<DiffApplicationTree>() {
 
             private Iterator<Map.Entry<Object, DiffNode>> diffIter;
+            // position of the next element of collectionIter
             int index = 0;
             Iterator<Object> collectionIter = null;
+            // number of removed list elements before the current index and where to continue counting them
+            int removedBefore;
+            int removedCountedUpTo;
 
             {
                 Map<Object, DiffNode> childDiffs = diffNode.getFieldDiffs();
                 if (childDiffs == null) {
                     diffIter = Collections.emptyListIterator();
-                } else {
-                    List<Map.Entry<Object, DiffNode>> entries = new ArrayList<>(childDiffs.entrySet());
+                } else if ((updatedObj != null && updatedObj.getClass().isArray()) ||
+                        (updatedObj instanceof Iterable && !(updatedObj instanceof Set))) {
                     // for array and iterables we need to sort the indices otherwise we might end up jumping around
-                    if ((updatedObj != null && updatedObj.getClass().isArray()) ||
-                            updatedObj instanceof Iterable) {
-                        entries.sort((e1, e2) -> {
-                            int index1 = (int) e1.getKey();
-                            int index2 = (int) e2.getKey();
-                            return index1 - index2;
-                        });
+                    List<Map.Entry<Object, DiffNode>> indexedChildDiffs = plan == null ? null :
+                            plan.getIndexedChildDiffs();
+                    if (indexedChildDiffs != null) {
+                        diffIter = indexedChildDiffs.iterator();
+                    } else if (isInOrder(childDiffs.keySet(), (key1, key2) -> Integer.compare((int) key1, (int) key2))) {
+                        diffIter = childDiffs.entrySet().iterator();
+                    } else {
+                        List<Map.Entry<Object, DiffNode>> entries = new ArrayList<>(childDiffs.entrySet());
+                        entries.sort(Comparator.comparingInt(entry -> (int) entry.getKey()));
+                        diffIter = entries.iterator();
+                    }
+                } else {
+                    diffIter = childDiffs.entrySet().iterator();
+                }
+            }
+
+            /**
+             * Random access lists are indexed directly, any other iterable is walked once as children are pulled
+             * in increasing index order
+             */
+            @SuppressWarnings("unchecked")
+            private Object elementAt(int position) {
+                if (updatedObj instanceof List && updatedObj instanceof RandomAccess) {
+                    List<Object> list = (List<Object>) updatedObj;
+                    if (position >= list.size()) {
+                        throw new MergingException("Unable to find element " + position +
+                                " in a list of size " + list.size());
+                    }
+                    return list.get(position);
+                }
+                if (position < index) {
+                    throw new MergingException("Elements of " + updatedObj.getClass().getName() +
+                            " must be resolved in increasing order, got " + position + " after " + (index - 1));
+                }
+                if (collectionIter == null) {
+                    collectionIter = ((Iterable<Object>) updatedObj).iterator();
+                }
+                Object element = null;
+                while (index <= position) {
+                    if (!collectionIter.hasNext()) {
+                        throw new MergingException("Unable to find element " + position +
+                                " in an iterable of size " + index);
                     }
-                    diffIter = entries.iterator();
+                    element = collectionIter.next();
+                    index++;
                 }
+                return element;
+            }
+
+            /**
+             * @return position in the patched list of the element at {@code index} in the original one,
+             * indices being pulled in increasing order
+             */
+            private int toListPosition(int index) {
+                if (removedListIndices == null) {
+                    return index;
+                }
+                for (int removed = removedListIndices.nextSetBit(removedCountedUpTo);
+                        removed >= 0 && removed < index;
+                        removed = removedListIndices.nextSetBit(removed + 1)) {
+                    removedBefore++;
+                }
+                removedCountedUpTo = Math.max(removedCountedUpTo, index);
+                return index - removedBefore;
             }
 
             @Override
             public boolean hasNext() {
-                return diffIter.hasNext();
+                // children are only pulled after this node has been applied, skipped nodes have none to apply
+                return !shouldSkip && !childDiffsApplied && diffIter.hasNext();
             }
 
             @SuppressWarnings("unchecked, ConstantConditions")
             @Override
             public DiffApplicationTree next() {
+                if (childDiffsApplied) {
+                    // a pre-order traversal looks for the first child before this node has been applied
+                    return createChild(null, null, diffIter.next().getValue(), true);
+                }
                 if (updatedObj == null) {
                     throw new MergingException("Invalid state: attempting to apply child diff to null object");
                 }
@@ -495,63 +1004,56 @@ public class DiffApplicationTree implements TreeLike<DiffApplicationTree> {
                         throw new MergingException("Expect index value for array object. Got: " + fieldKey);
                     }
                     if (shouldSkip) {
-                        return new DiffApplicationTree(null, null, diffNode, true);
+                        return createChild(null, null, diffNode, true);
                     }
                     Integer key = (Integer) fieldKey;
                     Object fieldObj = Array.get(updatedObj, key);
-                    return new DiffApplicationTree(arrayElementsType, fieldObj, diffNode, shouldSkip);
+                    return createChild(arrayElementsType, fieldObj, diffNode, shouldSkip);
                 } else if (updatedObj instanceof Set) {
-                    if (collectionIter == null) {
-                        collectionIter = ((Set<Object>) updatedObj).iterator();
-                    }
-                    Object fieldObj = collectionIter.next();
-                    return new DiffApplicationTree(ObjectUtils.inferClass(fieldObj, diffNode),
-                            fieldObj, diffNode, shouldSkip);
+                    // set elements have been handled along with the set itself
+                    return createChild(null, null, diffNode, true);
                 } else if (updatedObj instanceof Map) {
                     Map<Object, Object> map = (Map<Object, Object>) updatedObj;
-                    Object fieldObj = map.get(fieldKey);
-                    return new DiffApplicationTree(ObjectUtils.inferClass(fieldObj, diffNode),
+                    Object fieldObj = shouldSkip ? null : map.get(fieldKey);
+                    return createChild(ObjectUtils.inferClass(fieldObj, diffNode),
                             fieldObj, diffNode, shouldSkip);
                 } else if (updatedObj instanceof Iterable) {
                     if (shouldSkip) {
-                        return new DiffApplicationTree(null, null, diffNode, true);
-                    }
-                    if (collectionIter == null) {
-                        collectionIter = ((Iterable<Object>) updatedObj).iterator();
+                        return createChild(null, null, diffNode, true);
                     }
-                    Object fieldObj = collectionIter.next();
                     if (!(fieldKey instanceof Integer)) {
                         throw new MergingException("Expect index value for iterable object. Got: " + fieldKey);
                     }
-                    Integer key = (Integer) fieldKey;
-                    while (index++ != key) {
-                        fieldObj = collectionIter.next();
-                    }
-                    return new DiffApplicationTree(ObjectUtils.inferClass(fieldObj, diffNode),
+                    Object fieldObj = elementAt(toListPosition((Integer) fieldKey));
+                    return createChild(ObjectUtils.inferClass(fieldObj, diffNode),
                             fieldObj, diffNode, shouldSkip);
                 }
                 if (!(fieldKey instanceof String)) {
                     throw new MergingException("Expect field name. Got: " + fieldKey);
                 }
+                if (shouldSkip) {
+                    return createChild(null, null, diffNode, true);
+                }
                 String fieldName = (String) fieldKey;
-                Field field = ReflectionUtils.getField(updatedObj, fieldName);
+                DiffApplicationPlan.PlannedField field = objectFields == null ? null : objectFields.get(fieldName);
                 if (field == null) {
                     throw new MergingException("Unable to find " + fieldName +
-                            " in class " + updatedObj.getClass().getName());
+                            " in class " + currentObjClass.getName());
                 }
-                field.setAccessible(true);
+                FieldDiffPlan fieldPlan = field.fieldPlan;
                 Object fieldObj;
                 try {
-                    fieldObj = field.get(updatedObj);
+                    fieldObj = fieldPlan.get(updatedObj);
                 } catch (IllegalAccessException e) {
                     throw new MergingException("Unable to access " + fieldName +
-                            " in class " + updatedObj.getClass().getName(), e);
+                            " in class " + currentObjClass.getName(), e);
                 }
                 Diff diff = diffNode.getDiff();
                 Object targetValue = diff == null ? null : diff.getTargetValue();
-                return new DiffApplicationTree(
-                        ReflectionUtils.guessType(field, fieldObj, targetValue),
-                        fieldObj, diffNode, shouldSkip);
+                DiffApplicationTree child = createChild(fieldPlan.resolveType(fieldObj, targetValue),
+                        fieldObj, diffNode, false);
+                child.elementKeys = field.elementKeys;
+                return child;
             }
         };
     }
@@ -0,0 +1,95 @@
+package org.xcorpion.jdiff.util.collection;
+
+import org.xcorpion.jdiff.api.KeyExtractor;
+import org.xcorpion.jdiff.api.ObjectDiffMapper;
+import org.xcorpion.jdiff.util.reflection.ClassDiffPlan;
+import org.xcorpion.jdiff.util.reflection.HandlerInstances;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keys of the elements of a keyed list or set, see {@link KeyExtractor}. Null elements have a key of their own.
+ */
+public final class ElementKeys implements Function<Object, Object> {
+
+    private static final Object NULL_ELEMENT_KEY = new Object() {
+        @Override
+        public String toString() {
+            return "<NULL>";
+        }
+    };
+
+    private final KeyExtractor<Object> keyExtractor;
+
+    private ElementKeys(@Nonnull KeyExtractor<Object> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * @return keys given by an instance of {@code keyExtractorClass}, e.g. the one of a field
+     * @throws ReflectiveOperationException if the key extractor cannot be instantiated
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static ElementKeys of(@Nonnull Class<? extends KeyExtractor<?>> keyExtractorClass)
+            throws ReflectiveOperationException {
+        return new ElementKeys((KeyExtractor<Object>) HandlerInstances.get(keyExtractorClass));
+    }
+
+    /**
+     * Looks up the key extractor of every element class, either the one of its
+     * {@link org.xcorpion.jdiff.annotation.TypeHandler} or the one registered to the mapper.
+     *
+     * @return keys of the elements or null if any non null element has no key extractor
+     * @throws ReflectiveOperationException if a key extractor cannot be instantiated
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static ElementKeys forElements(@Nonnull ObjectDiffMapper mapper, boolean useClassKeyExtractors,
+            boolean useRegisteredKeyExtractors, @Nonnull Iterable<?>... elementGroups)
+            throws ReflectiveOperationException {
+        if (!useClassKeyExtractors && !useRegisteredKeyExtractors) {
+            return null;
+        }
+        Map<Class<?>, KeyExtractor<Object>> keyExtractors = new HashMap<>();
+        for (Iterable<?> elements : elementGroups) {
+            for (Object element : elements) {
+                if (element == null || keyExtractors.containsKey(element.getClass())) {
+                    continue;
+                }
+                Class<?> cls = element.getClass();
+                KeyExtractor<Object> keyExtractor = null;
+                if (useClassKeyExtractors) {
+                    Class<? extends KeyExtractor<?>> keyExtractorClass = ClassDiffPlan.of(cls).getKeyExtractorClass();
+                    if (keyExtractorClass != null) {
+                        keyExtractor = (KeyExtractor<Object>) HandlerInstances.get(keyExtractorClass);
+                    }
+                }
+                if (keyExtractor == null && useRegisteredKeyExtractors) {
+                    keyExtractor = (KeyExtractor<Object>) mapper.getKeyExtractor(cls);
+                }
+                if (keyExtractor == null) {
+                    return null;
+                }
+                keyExtractors.put(cls, keyExtractor);
+            }
+        }
+        if (keyExtractors.isEmpty()) {
+            return null;
+        }
+        if (keyExtractors.size() == 1) {
+            return new ElementKeys(keyExtractors.values().iterator().next());
+        }
+        return new ElementKeys(element -> keyExtractors.get(element.getClass()).getKey(element));
+    }
+
+    @Override
+    public Object apply(@Nullable Object element) {
+        return element == null ? NULL_ELEMENT_KEY : keyExtractor.getKey(element);
+    }
+
+}
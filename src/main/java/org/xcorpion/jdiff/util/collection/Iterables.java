@@ -1,7 +1,11 @@
 package org.xcorpion.jdiff.util.collection;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 public class Iterables {
 
@@ -23,4 +27,20 @@ public class Iterables {
         return (Iterable<T>) EMPTY_ITERABLE;
     }
 
+    /**
+     * @return the elements as a random access list, {@code iterable} itself if it is one already
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> toList(Iterable<? extends T> iterable) {
+        if (iterable instanceof List && iterable instanceof RandomAccess) {
+            return (List<T>) iterable;
+        }
+        List<T> list = iterable instanceof Collection ? new ArrayList<>(((Collection<?>) iterable).size()) :
+                new ArrayList<>();
+        for (T element : iterable) {
+            list.add(element);
+        }
+        return list;
+    }
+
 }
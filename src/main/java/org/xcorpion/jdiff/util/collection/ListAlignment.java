@@ -0,0 +1,258 @@
+package org.xcorpion.jdiff.util.collection;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Aligns two lists with Myers' O(ND) difference algorithm using the linear space refinement:
+ * common prefixes and suffixes are trimmed, then each range is split at the middle snake found by
+ * searching forward and backward at the same time.
+ * <p>
+ * The search gives up on a range once it costs much more than the size of both lists and leaves the rest
+ * of the range unmatched, so two completely different lists are not compared quadratically.
+ * <p>
+ * Lists of elements with a stable identity are matched by key instead, see {@link #matchByKey}.
+ */
+public final class ListAlignment {
+
+    private static final int MIN_COST_LIMIT = 1 << 16;
+    private static final int COST_FACTOR = 32;
+
+    private final Object[] src;
+    private final Object[] target;
+    private final BiPredicate<Object, Object> equality;
+    private final int[] matches;
+    private long remainingCost;
+
+    private ListAlignment(Object[] src, Object[] target, BiPredicate<Object, Object> equality) {
+        this.src = src;
+        this.target = target;
+        this.equality = equality;
+        this.matches = new int[src.length];
+        Arrays.fill(matches, -1);
+        this.remainingCost = Math.max(MIN_COST_LIMIT, (long) COST_FACTOR * (src.length + target.length));
+    }
+
+    /**
+     * @return for every index of {@code src} the index of the equal element of {@code target} it is aligned to,
+     * or -1 if it has been removed. Aligned indices are strictly increasing.
+     */
+    @Nonnull
+    public static int[] align(@Nonnull List<?> src, @Nonnull List<?> target,
+            @Nonnull BiPredicate<Object, Object> equality) {
+        return align(src.toArray(), target.toArray(), equality);
+    }
+
+    /**
+     * @see #align(List, List, BiPredicate)
+     */
+    @Nonnull
+    public static int[] align(@Nonnull Object[] src, @Nonnull Object[] target,
+            @Nonnull BiPredicate<Object, Object> equality) {
+        ListAlignment alignment = new ListAlignment(src, target, equality);
+        alignment.align(0, src.length, 0, target.length);
+        return alignment.matches;
+    }
+
+    /**
+     * Matches elements with equal keys in linear time. Elements sharing a key are matched in order.
+     *
+     * @return for every index of {@code src} the index of the {@code target} element with the same key,
+     * or -1 if there is none. Matched indices are not necessarily increasing.
+     */
+    @Nonnull
+    public static int[] matchByKey(@Nonnull Object[] src, @Nonnull Object[] target,
+            @Nonnull Function<Object, Object> keyExtractor) {
+        // most keys are unique, so a queue is only created for the following indices of duplicate keys
+        Map<Object, Integer> firstIndices = new HashMap<>(target.length * 4 / 3 + 1);
+        Map<Object, Deque<Integer>> followingIndices = new HashMap<>();
+        for (int j = target.length - 1; j >= 0; j--) {
+            Object key = keyExtractor.apply(target[j]);
+            Integer previous = firstIndices.put(key, j);
+            if (previous != null) {
+                followingIndices.computeIfAbsent(key, k -> new ArrayDeque<>()).push(previous);
+            }
+        }
+        int[] matches = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            Object key = keyExtractor.apply(src[i]);
+            Integer first = firstIndices.remove(key);
+            if (first != null) {
+                matches[i] = first;
+                continue;
+            }
+            Deque<Integer> following = followingIndices.get(key);
+            Integer next = following == null ? null : following.poll();
+            matches[i] = next == null ? -1 : next;
+        }
+        return matches;
+    }
+
+    /**
+     * Keeps the longest run of matches that are in the same order in both lists, so that every other match
+     * can be reported as a move. Runs in O(n log n).
+     *
+     * @param matches as returned by {@link #matchByKey}
+     * @return the source indices whose matches are in order
+     */
+    @Nonnull
+    public static BitSet findOrderedMatches(@Nonnull int[] matches) {
+        // tails[k] is the source index ending the best increasing run of length k + 1 found so far
+        int[] tails = new int[matches.length];
+        int[] predecessors = new int[matches.length];
+        int length = 0;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (matches[tails[mid]] < matches[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        BitSet ordered = new BitSet(matches.length);
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            ordered.set(i);
+        }
+        return ordered;
+    }
+
+    /**
+     * Child diffs of an aligned list use target indices as keys. Removed elements are keyed by this
+     * negative value instead so they never clash with the target index of another element.
+     */
+    public static int removalKey(int srcIndex) {
+        return -srcIndex - 1;
+    }
+
+    public static int removedSrcIndex(int removalKey) {
+        return -removalKey - 1;
+    }
+
+    private void align(int srcStart, int srcEnd, int targetStart, int targetEnd) {
+        while (srcStart < srcEnd && targetStart < targetEnd && isEqual(srcStart, targetStart)) {
+            matches[srcStart++] = targetStart++;
+        }
+        while (srcStart < srcEnd && targetStart < targetEnd && isEqual(srcEnd - 1, targetEnd - 1)) {
+            matches[--srcEnd] = --targetEnd;
+        }
+        if (srcStart == srcEnd || targetStart == targetEnd || remainingCost <= 0) {
+            return;
+        }
+        int[] split = findMiddleSnake(srcStart, srcEnd, targetStart, targetEnd);
+        // a split at either corner would not make the range any smaller
+        if (split == null || (split[0] == srcStart && split[1] == targetStart) ||
+                (split[0] == srcEnd && split[1] == targetEnd)) {
+            return;
+        }
+        align(srcStart, split[0], targetStart, split[1]);
+        align(split[0], srcEnd, split[1], targetEnd);
+    }
+
+    /**
+     * @return the point at which the forward and the backward path overlap, or null if none has been found
+     * within the cost limit
+     */
+    private int[] findMiddleSnake(int srcStart, int srcEnd, int targetStart, int targetEnd) {
+        int n = srcEnd - srcStart;
+        int m = targetEnd - targetStart;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // if the total number of elements is odd, the forward path is the one to collide with the backward path
+        boolean checkForward = (delta % 2 != 0);
+        // offsets of the diagonals to skip because they went past the end of the range
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        for (int d = 0; d < maxD; d++) {
+            if (remainingCost <= 0) {
+                return null;
+            }
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x;
+                if (k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])) {
+                    x = forward[kOffset + 1];
+                } else {
+                    x = forward[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && isEqual(srcStart + x, targetStart + y)) {
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (checkForward) {
+                    int backwardOffset = offset + delta - k;
+                    if (backwardOffset >= 0 && backwardOffset < length && backward[backwardOffset] != -1) {
+                        if (x >= n - backward[backwardOffset]) {
+                            return new int[]{srcStart + x, targetStart + y};
+                        }
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x;
+                if (k == -d || (k != d && backward[kOffset - 1] < backward[kOffset + 1])) {
+                    x = backward[kOffset + 1];
+                } else {
+                    x = backward[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && isEqual(srcEnd - x - 1, targetEnd - y - 1)) {
+                    x++;
+                    y++;
+                }
+                backward[kOffset] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!checkForward) {
+                    int forwardOffset = offset + delta - k;
+                    if (forwardOffset >= 0 && forwardOffset < length && forward[forwardOffset] != -1) {
+                        int forwardX = forward[forwardOffset];
+                        int forwardY = offset + forwardX - forwardOffset;
+                        if (forwardX >= n - x) {
+                            return new int[]{srcStart + forwardX, targetStart + forwardY};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isEqual(int srcIndex, int targetIndex) {
+        remainingCost--;
+        return equality.test(src[srcIndex], target[targetIndex]);
+    }
+
+}
@@ -0,0 +1,224 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.api.DiffingHandler;
+import org.xcorpion.jdiff.api.KeyExtractor;
+import org.xcorpion.jdiff.api.MergingHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Reflection metadata of a class needed for diffing and merging.
+ * A plan is computed once per class and shared by every mapper instance and every diff,
+ * so none of the information here depends on mapper configuration.
+ */
+public final class ClassDiffPlan {
+
+    public enum Category {
+        PRIMITIVE,
+        ARRAY,
+        SET,
+        MAP,
+        ITERABLE,
+        OBJECT;
+
+        private static final Set<Class<?>> PRIMITIVE_TYPES = new HashSet<>();
+
+        static {
+            PRIMITIVE_TYPES.add(Boolean.class);
+            PRIMITIVE_TYPES.add(boolean.class);
+            PRIMITIVE_TYPES.add(Byte.class);
+            PRIMITIVE_TYPES.add(byte.class);
+            PRIMITIVE_TYPES.add(Short.class);
+            PRIMITIVE_TYPES.add(short.class);
+            PRIMITIVE_TYPES.add(Integer.class);
+            PRIMITIVE_TYPES.add(int.class);
+            PRIMITIVE_TYPES.add(Long.class);
+            PRIMITIVE_TYPES.add(long.class);
+            PRIMITIVE_TYPES.add(Float.class);
+            PRIMITIVE_TYPES.add(float.class);
+            PRIMITIVE_TYPES.add(Double.class);
+            PRIMITIVE_TYPES.add(double.class);
+            PRIMITIVE_TYPES.add(String.class);
+        }
+
+        static Category of(@Nonnull Class<?> cls) {
+            if (PRIMITIVE_TYPES.contains(cls)) {
+                return PRIMITIVE;
+            }
+            if (cls.isArray()) {
+                return ARRAY;
+            }
+            if (Set.class.isAssignableFrom(cls)) {
+                return SET;
+            }
+            if (Map.class.isAssignableFrom(cls)) {
+                return MAP;
+            }
+            if (Iterable.class.isAssignableFrom(cls)) {
+                return ITERABLE;
+            }
+            return OBJECT;
+        }
+    }
+
+    private static final ClassValue<ClassDiffPlan> PLANS = new ClassValue<ClassDiffPlan>() {
+        @Override
+        protected ClassDiffPlan computeValue(Class<?> type) {
+            return new ClassDiffPlan(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final Category category;
+    private final Class<? extends DiffingHandler<?>> diffingHandlerClass;
+    private final Class<? extends MergingHandler<?>> mergingHandlerClass;
+    private final Class<? extends KeyExtractor<?>> keyExtractorClass;
+    private final boolean overridesEquals;
+    // fields are resolved lazily since most plans (boxed values, collections) never need them
+    private volatile Fields fields;
+
+    private static class Fields {
+
+        final List<FieldDiffPlan> instanceFields;
+        final List<FieldDiffPlan> diffFields;
+        final Map<String, FieldDiffPlan> fieldsByName;
+
+        Fields(List<FieldDiffPlan> instanceFields, List<FieldDiffPlan> diffFields,
+                Map<String, FieldDiffPlan> fieldsByName) {
+            this.instanceFields = instanceFields;
+            this.diffFields = diffFields;
+            this.fieldsByName = fieldsByName;
+        }
+    }
+
+    private ClassDiffPlan(@Nonnull Class<?> type) {
+        this.type = type;
+        this.category = Category.of(type);
+        TypeHandler typeHandler = ReflectionUtils.getClassAnnotation(type, TypeHandler.class);
+        if (typeHandler != null) {
+            this.diffingHandlerClass = typeHandler.diffUsing() != TypeHandler.None.class ?
+                    typeHandler.diffUsing() : null;
+            this.mergingHandlerClass = typeHandler.mergeUsing() != TypeHandler.None.class ?
+                    typeHandler.mergeUsing() : null;
+            this.keyExtractorClass = typeHandler.extractKeyUsing() != TypeHandler.None.class ?
+                    typeHandler.extractKeyUsing() : null;
+        } else {
+            this.diffingHandlerClass = null;
+            this.mergingHandlerClass = null;
+            this.keyExtractorClass = null;
+        }
+        this.overridesEquals = overridesEquals(type);
+    }
+
+    private static boolean overridesEquals(@Nonnull Class<?> type) {
+        try {
+            return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        }
+        catch (NoSuchMethodException | SecurityException e) {
+            return false;
+        }
+    }
+
+    @Nonnull
+    public static ClassDiffPlan of(@Nonnull Class<?> cls) {
+        return PLANS.get(cls);
+    }
+
+    @Nonnull
+    public Class<?> getType() {
+        return type;
+    }
+
+    @Nonnull
+    public Category getCategory() {
+        return category;
+    }
+
+    public boolean isPrimitive() {
+        return category == Category.PRIMITIVE;
+    }
+
+    /**
+     * @return true if this class or any of its superclasses overrides {@link Object#equals(Object)}
+     */
+    public boolean overridesEquals() {
+        return overridesEquals;
+    }
+
+    /**
+     * @return diffing handler declared by {@link TypeHandler} on this class or any of its superclasses
+     */
+    @Nullable
+    public Class<? extends DiffingHandler<?>> getDiffingHandlerClass() {
+        return diffingHandlerClass;
+    }
+
+    /**
+     * @return merging handler declared by {@link TypeHandler} on this class or any of its superclasses
+     */
+    @Nullable
+    public Class<? extends MergingHandler<?>> getMergingHandlerClass() {
+        return mergingHandlerClass;
+    }
+
+    @Nullable
+    public Class<? extends KeyExtractor<?>> getKeyExtractorClass() {
+        return keyExtractorClass;
+    }
+
+    /**
+     * @return instance fields of this class and its superclasses, static and synthetic fields excluded
+     */
+    @Nonnull
+    public List<FieldDiffPlan> getFields() {
+        return resolveFields().diffFields;
+    }
+
+    /**
+     * @return all instance fields of this class and its superclasses including synthetic ones,
+     * which is what a field by field copy needs
+     */
+    @Nonnull
+    public List<FieldDiffPlan> getInstanceFields() {
+        return resolveFields().instanceFields;
+    }
+
+    /**
+     * @param name field name
+     * @return the field with the given name, fields in subclasses shadowing the ones in superclasses
+     */
+    @Nullable
+    public FieldDiffPlan getField(@Nonnull String name) {
+        return resolveFields().fieldsByName.get(name);
+    }
+
+    private Fields resolveFields() {
+        Fields result = fields;
+        if (result == null) {
+            List<FieldDiffPlan> instanceFields = new ArrayList<>();
+            List<FieldDiffPlan> diffFields = new ArrayList<>();
+            Map<String, FieldDiffPlan> fieldsByName = new HashMap<>();
+            for (Field field : ReflectionUtils.getAllFieldsRecursive(type)) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                FieldDiffPlan fieldPlan = new FieldDiffPlan(field);
+                instanceFields.add(fieldPlan);
+                if (!field.isSynthetic()) {
+                    diffFields.add(fieldPlan);
+                }
+                fieldsByName.putIfAbsent(fieldPlan.getName(), fieldPlan);
+            }
+            result = new Fields(Collections.unmodifiableList(instanceFields),
+                    Collections.unmodifiableList(diffFields), fieldsByName);
+            fields = result;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,589 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.xcorpion.jdiff.exception.CloneException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Deep copies object graphs field by field using a copy plan computed once per class.
+ * <p>
+ * Values of immutable JDK types (strings, boxed primitives, enums, {@code java.time} values...) are shared with
+ * the source. Primitive arrays are cloned, and common JDK collections are rebuilt with copies of their elements.
+ * So are subclasses of them with a no-arg constructor, whose own fields are copied one by one, and the unmodifiable,
+ * synchronized and singleton collections of {@link Collections}, which are rebuilt around a copy of their contents.
+ * Any other object is instantiated without calling its constructors and its fields are copied one by one.
+ * An object reachable along several paths, including cycles, is copied once.
+ * <p>
+ * Java serialization is only used for serializable classes customizing their serialized form,
+ * e.g. with {@code readResolve}, and for the ones whose fields cannot be accessed, such as most JDK classes
+ * on recent Java versions. Such objects are copied separately from the rest of the graph.
+ * <p>
+ * Hash based and sorted collections are filled once the rest of the graph has been copied, innermost first,
+ * so that their elements hash and compare the same way as in the source. Comparators are shared.
+ */
+public final class DeepCloner {
+
+    private enum Kind {
+        SHARED,
+        PRIMITIVE_ARRAY,
+        OBJECT_ARRAY,
+        // collections filled in iteration order
+        SEQUENCE,
+        // lists of Arrays.asList, which cannot grow
+        FIXED_SIZE_LIST,
+        // collections filled after the rest of the graph
+        DEFERRED_COLLECTION,
+        DEFERRED_MAP,
+        ENUM_SET,
+        // singleton collections of Collections, created with the copies of their contents
+        SINGLETON,
+        FIELDS,
+        SERIALIZED,
+        UNCLONEABLE
+    }
+
+    private static final Set<Class<?>> SHARED_TYPES = new HashSet<>(Arrays.asList(
+            Character.class,
+            Class.class,
+            BigInteger.class,
+            BigDecimal.class,
+            UUID.class,
+            Locale.class,
+            Collections.emptyList().getClass(),
+            Collections.emptySet().getClass(),
+            Collections.emptyMap().getClass(),
+            Collections.emptySortedSet().getClass(),
+            Collections.emptyNavigableMap().getClass()
+    ));
+
+    private static final Set<Class<?>> SINGLETON_TYPES = new HashSet<>(Arrays.asList(
+            Collections.singletonList(null).getClass(),
+            Collections.singleton(null).getClass(),
+            Collections.singletonMap(null, null).getClass()
+    ));
+
+    private static final Class<?> FIXED_SIZE_LIST_CLASS = Arrays.asList().getClass();
+
+    private static final Map<Class<?>, Function<Object, Object>> EMPTY_COLLECTIONS = new HashMap<>();
+
+    static {
+        EMPTY_COLLECTIONS.put(ArrayList.class, src -> new ArrayList<>(((Collection<?>) src).size()));
+        EMPTY_COLLECTIONS.put(LinkedList.class, src -> new LinkedList<>());
+        EMPTY_COLLECTIONS.put(FIXED_SIZE_LIST_CLASS, src -> Arrays.asList(new Object[((Collection<?>) src).size()]));
+        EMPTY_COLLECTIONS.put(Vector.class, src -> new Vector<>(((Collection<?>) src).size()));
+        EMPTY_COLLECTIONS.put(ArrayDeque.class, src -> new ArrayDeque<>(((Collection<?>) src).size()));
+        EMPTY_COLLECTIONS.put(HashSet.class, src -> new HashSet<>(capacityOf(((Collection<?>) src).size())));
+        EMPTY_COLLECTIONS.put(LinkedHashSet.class,
+                src -> new LinkedHashSet<>(capacityOf(((Collection<?>) src).size())));
+        EMPTY_COLLECTIONS.put(TreeSet.class, src -> new TreeSet<>(((TreeSet<?>) src).comparator()));
+        EMPTY_COLLECTIONS.put(HashMap.class, src -> new HashMap<>(capacityOf(((Map<?, ?>) src).size())));
+        // access ordered maps get their current order as insertion order
+        EMPTY_COLLECTIONS.put(LinkedHashMap.class,
+                src -> new LinkedHashMap<>(capacityOf(((Map<?, ?>) src).size())));
+        EMPTY_COLLECTIONS.put(IdentityHashMap.class, src -> new IdentityHashMap<>(((Map<?, ?>) src).size()));
+        EMPTY_COLLECTIONS.put(Hashtable.class, src -> new Hashtable<>(capacityOf(((Map<?, ?>) src).size())));
+        EMPTY_COLLECTIONS.put(TreeMap.class, src -> new TreeMap<>(((TreeMap<?, ?>) src).comparator()));
+        EMPTY_COLLECTIONS.put(ConcurrentHashMap.class, src -> new ConcurrentHashMap<>(((Map<?, ?>) src).size()));
+    }
+
+    /**
+     * Empty collection backing the copy of a wrapper and the function wrapping it
+     */
+    private static final class Rewrap {
+
+        final Function<Object, Object> emptyBacking;
+        final UnaryOperator<Object> wrap;
+
+        Rewrap(Function<Object, Object> emptyBacking, UnaryOperator<Object> wrap) {
+            this.emptyBacking = emptyBacking;
+            this.wrap = wrap;
+        }
+    }
+
+    // the wrapped collections cannot be accessed, so the copies are wrapped around collections with the same order
+    private static final Map<Class<?>, Rewrap> WRAPPERS = new HashMap<>();
+
+    private static void addWrapper(Object wrapper, Function<Object, Object> emptyBacking, UnaryOperator<Object> wrap) {
+        WRAPPERS.put(wrapper.getClass(), new Rewrap(emptyBacking, wrap));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addWrappers(Function<Collection<Object>, Collection<Object>> wrapCollection,
+            Function<List<Object>, List<Object>> wrapList,
+            Function<Set<Object>, Set<Object>> wrapSet,
+            Function<SortedSet<Object>, SortedSet<Object>> wrapSortedSet,
+            Function<NavigableSet<Object>, NavigableSet<Object>> wrapNavigableSet,
+            Function<Map<Object, Object>, Map<Object, Object>> wrapMap,
+            Function<SortedMap<Object, Object>, SortedMap<Object, Object>> wrapSortedMap,
+            Function<NavigableMap<Object, Object>, NavigableMap<Object, Object>> wrapNavigableMap) {
+        addWrapper(wrapCollection.apply(new ArrayList<>()),
+                src -> new ArrayList<>(((Collection<?>) src).size()),
+                backing -> wrapCollection.apply((Collection<Object>) backing));
+        addWrapper(wrapList.apply(new ArrayList<>()),
+                src -> new ArrayList<>(((Collection<?>) src).size()),
+                backing -> wrapList.apply((List<Object>) backing));
+        addWrapper(wrapList.apply(new LinkedList<>()),
+                src -> new LinkedList<>(),
+                backing -> wrapList.apply((List<Object>) backing));
+        addWrapper(wrapSet.apply(new HashSet<>()),
+                src -> new LinkedHashSet<>(capacityOf(((Collection<?>) src).size())),
+                backing -> wrapSet.apply((Set<Object>) backing));
+        addWrapper(wrapSortedSet.apply(new TreeSet<>()),
+                src -> new TreeSet<>(((SortedSet<?>) src).comparator()),
+                backing -> wrapSortedSet.apply((SortedSet<Object>) backing));
+        addWrapper(wrapNavigableSet.apply(new TreeSet<>()),
+                src -> new TreeSet<>(((SortedSet<?>) src).comparator()),
+                backing -> wrapNavigableSet.apply((NavigableSet<Object>) backing));
+        addWrapper(wrapMap.apply(new HashMap<>()),
+                src -> new LinkedHashMap<>(capacityOf(((Map<?, ?>) src).size())),
+                backing -> wrapMap.apply((Map<Object, Object>) backing));
+        addWrapper(wrapSortedMap.apply(new TreeMap<>()),
+                src -> new TreeMap<>(((SortedMap<?, ?>) src).comparator()),
+                backing -> wrapSortedMap.apply((SortedMap<Object, Object>) backing));
+        addWrapper(wrapNavigableMap.apply(new TreeMap<>()),
+                src -> new TreeMap<>(((SortedMap<?, ?>) src).comparator()),
+                backing -> wrapNavigableMap.apply((NavigableMap<Object, Object>) backing));
+    }
+
+    static {
+        addWrappers(Collections::unmodifiableCollection, Collections::unmodifiableList, Collections::unmodifiableSet,
+                Collections::unmodifiableSortedSet, Collections::unmodifiableNavigableSet,
+                Collections::unmodifiableMap, Collections::unmodifiableSortedMap, Collections::unmodifiableNavigableMap);
+        addWrappers(Collections::synchronizedCollection, Collections::synchronizedList, Collections::synchronizedSet,
+                Collections::synchronizedSortedSet, Collections::synchronizedNavigableSet,
+                Collections::synchronizedMap, Collections::synchronizedSortedMap, Collections::synchronizedNavigableMap);
+    }
+
+    private static final class CopyPlan {
+
+        final Kind kind;
+        // set for collections only, creates the collection to fill
+        final Function<Object, Object> emptyCopy;
+        // set for wrappers only, wraps the collection to fill
+        final UnaryOperator<Object> wrap;
+        // set for field by field copies and the own fields of collection subclasses
+        final List<FieldDiffPlan> primitiveFields;
+        final List<FieldDiffPlan> referenceFields;
+
+        private CopyPlan(Kind kind, @Nullable Function<Object, Object> emptyCopy, @Nullable UnaryOperator<Object> wrap,
+                List<FieldDiffPlan> primitiveFields, List<FieldDiffPlan> referenceFields) {
+            this.kind = kind;
+            this.emptyCopy = emptyCopy;
+            this.wrap = wrap;
+            this.primitiveFields = primitiveFields;
+            this.referenceFields = referenceFields;
+        }
+
+        static CopyPlan of(Kind kind) {
+            return new CopyPlan(kind, null, null, Collections.emptyList(), Collections.emptyList());
+        }
+
+        static CopyPlan ofCollection(@Nonnull Class<?> cls, @Nonnull Function<Object, Object> emptyCopy,
+                @Nullable UnaryOperator<Object> wrap,
+                List<FieldDiffPlan> primitiveFields, List<FieldDiffPlan> referenceFields) {
+            Kind kind = Map.class.isAssignableFrom(cls) ? Kind.DEFERRED_MAP :
+                    Set.class.isAssignableFrom(cls) ? Kind.DEFERRED_COLLECTION :
+                    cls == FIXED_SIZE_LIST_CLASS ? Kind.FIXED_SIZE_LIST : Kind.SEQUENCE;
+            return new CopyPlan(kind, emptyCopy, wrap, primitiveFields, referenceFields);
+        }
+
+        static CopyPlan create(@Nonnull Class<?> cls) {
+            if (isShared(cls)) {
+                return of(Kind.SHARED);
+            }
+            if (cls.isArray()) {
+                return of(cls.getComponentType().isPrimitive() ? Kind.PRIMITIVE_ARRAY : Kind.OBJECT_ARRAY);
+            }
+            if (EnumSet.class.isAssignableFrom(cls)) {
+                return of(Kind.ENUM_SET);
+            }
+            Function<Object, Object> emptyCopy = EMPTY_COLLECTIONS.get(cls);
+            if (emptyCopy != null) {
+                return ofCollection(cls, emptyCopy, null, Collections.emptyList(), Collections.emptyList());
+            }
+            Rewrap rewrap = WRAPPERS.get(cls);
+            if (rewrap != null) {
+                return ofCollection(cls, rewrap.emptyBacking, rewrap.wrap, Collections.emptyList(),
+                        Collections.emptyList());
+            }
+            if (SINGLETON_TYPES.contains(cls)) {
+                return of(Kind.SINGLETON);
+            }
+            CopyPlan subclassPlan = createForCollectionSubclass(cls);
+            if (subclassPlan != null) {
+                return subclassPlan;
+            }
+            boolean serializable = Serializable.class.isAssignableFrom(cls);
+            if (serializable && hasCustomSerializedForm(cls)) {
+                return of(Kind.SERIALIZED);
+            }
+            List<FieldDiffPlan> primitiveFields = new ArrayList<>();
+            List<FieldDiffPlan> referenceFields = new ArrayList<>();
+            for (FieldDiffPlan field : ClassDiffPlan.of(cls).getInstanceFields()) {
+                if (!isAccessible(field)) {
+                    return of(serializable ? Kind.SERIALIZED : Kind.UNCLONEABLE);
+                }
+                if (field.getField().getType().isPrimitive()) {
+                    primitiveFields.add(field);
+                } else {
+                    referenceFields.add(field);
+                }
+            }
+            return new CopyPlan(Kind.FIELDS, null, null, primitiveFields, referenceFields);
+        }
+
+        /**
+         * Subclasses of rebuilt collections are created with their no-arg constructor and filled like the collection
+         * they extend, the fields they declare themselves are copied one by one
+         */
+        @Nullable
+        private static CopyPlan createForCollectionSubclass(@Nonnull Class<?> cls) {
+            Class<?> collectionClass = cls.getSuperclass();
+            while (collectionClass != null && !EMPTY_COLLECTIONS.containsKey(collectionClass)) {
+                collectionClass = collectionClass.getSuperclass();
+            }
+            // sorted collections would lose their comparator
+            if (collectionClass == null || SortedSet.class.isAssignableFrom(collectionClass) ||
+                    SortedMap.class.isAssignableFrom(collectionClass)) {
+                return null;
+            }
+            Constructor<?> constructor;
+            try {
+                constructor = cls.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            }
+            catch (NoSuchMethodException | RuntimeException e) {
+                return null;
+            }
+            List<FieldDiffPlan> primitiveFields = new ArrayList<>();
+            List<FieldDiffPlan> referenceFields = new ArrayList<>();
+            for (FieldDiffPlan field : ClassDiffPlan.of(cls).getInstanceFields()) {
+                if (field.getField().getDeclaringClass().isAssignableFrom(collectionClass)) {
+                    continue;
+                }
+                if (!isAccessible(field)) {
+                    return null;
+                }
+                if (field.getField().getType().isPrimitive()) {
+                    primitiveFields.add(field);
+                } else {
+                    referenceFields.add(field);
+                }
+            }
+            return ofCollection(collectionClass, src -> newEmptyInstance(constructor, src), null,
+                    primitiveFields, referenceFields);
+        }
+
+        private static Object newEmptyInstance(@Nonnull Constructor<?> constructor,
+                @Nonnull Object src) {
+            Object instance;
+            try {
+                instance = constructor.newInstance();
+            }
+            catch (ReflectiveOperationException e) {
+                throw new CloneException("Failed to clone " + src.getClass().getName() +
+                        ": failed to create a new empty collection", e);
+            }
+            // constructors may add contents of their own
+            if (instance instanceof Map) {
+                ((Map<?, ?>) instance).clear();
+            } else {
+                ((Collection<?>) instance).clear();
+            }
+            return instance;
+        }
+
+        @SuppressWarnings("deprecation")
+        private static boolean isAccessible(@Nonnull FieldDiffPlan field) {
+            // the field plan has tried to make it accessible already
+            return field.getField().isAccessible();
+        }
+    }
+
+    private static final ClassValue<CopyPlan> PLANS = new ClassValue<CopyPlan>() {
+        @Override
+        protected CopyPlan computeValue(Class<?> type) {
+            return CopyPlan.create(type);
+        }
+    };
+
+    /**
+     * Hash based or sorted collection to fill with the copies of its contents, keys and values alternating for maps
+     */
+    private static final class DeferredFill {
+
+        final Object copy;
+        final Object[] contents;
+
+        DeferredFill(Object copy, Object[] contents) {
+            this.copy = copy;
+            this.contents = contents;
+        }
+    }
+
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+    // source objects and their copies alternating, the contents of which are still to be copied
+    private final Deque<Object> pending = new ArrayDeque<>();
+    private final List<DeferredFill> deferredFills = new ArrayList<>();
+
+    private DeepCloner() {
+    }
+
+    @Nullable
+    public static <T> T deepClone(@Nullable T srcObject) throws CloneException {
+        return new DeepCloner().cloneGraph(srcObject);
+    }
+
+    /**
+     * @return true if instances of the class are immutable and can be shared by the source and its copy
+     */
+    public static boolean isShared(@Nonnull Class<?> cls) {
+        return ClassDiffPlan.of(cls).isPrimitive() ||
+                SHARED_TYPES.contains(cls) ||
+                cls.isEnum() || (cls.getSuperclass() != null && cls.getSuperclass().isEnum()) ||
+                cls.getName().startsWith("java.time.");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cloneGraph(@Nullable T srcObject) {
+        T copy = (T) copyOf(srcObject);
+        while (!pending.isEmpty()) {
+            Object src = pending.pop();
+            fill(src, pending.pop());
+        }
+        for (int i = deferredFills.size() - 1; i >= 0; i--) {
+            fillDeferred(deferredFills.get(i));
+        }
+        return copy;
+    }
+
+    /**
+     * @return the copy of the value, whose contents may still be copied later
+     */
+    @Nullable
+    private Object copyOf(@Nullable Object src) {
+        if (src == null) {
+            return null;
+        }
+        CopyPlan plan = PLANS.get(src.getClass());
+        if (plan.kind == Kind.SHARED) {
+            return src;
+        }
+        Object copy = copies.get(src);
+        if (copy != null) {
+            return copy;
+        }
+        switch (plan.kind) {
+            case PRIMITIVE_ARRAY:
+                copy = clonePrimitiveArray(src);
+                break;
+            case OBJECT_ARRAY:
+                copy = Array.newInstance(src.getClass().getComponentType(), Array.getLength(src));
+                break;
+            case SEQUENCE:
+            case FIXED_SIZE_LIST:
+            case DEFERRED_COLLECTION:
+            case DEFERRED_MAP:
+                Object filled = plan.emptyCopy.apply(src);
+                copy = plan.wrap == null ? filled : plan.wrap.apply(filled);
+                copies.put(src, copy);
+                pending.push(filled);
+                pending.push(src);
+                return copy;
+            case ENUM_SET:
+                copy = ((EnumSet<?>) src).clone();
+                break;
+            case SINGLETON:
+                // registered before the contents are copied, which are filled later and may refer back to it
+                copy = copySingleton(src);
+                break;
+            case FIELDS:
+                copy = ReflectionUtils.generateEmptyCopy(src);
+                break;
+            case SERIALIZED:
+                copy = SerializationUtils.clone((Serializable) src);
+                break;
+            default:
+                throw new CloneException("Failed to clone " + src.getClass().getName() +
+                        ": its fields cannot be accessed and it is not serializable");
+        }
+        copies.put(src, copy);
+        if (plan.kind == Kind.OBJECT_ARRAY || plan.kind == Kind.FIELDS) {
+            pending.push(copy);
+            pending.push(src);
+        }
+        return copy;
+    }
+
+    @Nonnull
+    private Object copySingleton(@Nonnull Object src) {
+        if (src instanceof List) {
+            return Collections.singletonList(copyOf(((List<?>) src).get(0)));
+        }
+        if (src instanceof Set) {
+            return Collections.singleton(copyOf(((Set<?>) src).iterator().next()));
+        }
+        Map.Entry<?, ?> entry = ((Map<?, ?>) src).entrySet().iterator().next();
+        return Collections.singletonMap(copyOf(entry.getKey()), copyOf(entry.getValue()));
+    }
+
+    /**
+     * @param copy the object to fill, which is the wrapped collection for wrappers
+     */
+    @SuppressWarnings("unchecked")
+    private void fill(@Nonnull Object src, @Nonnull Object copy) {
+        CopyPlan plan = PLANS.get(src.getClass());
+        switch (plan.kind) {
+            case OBJECT_ARRAY:
+                Object[] srcArray = (Object[]) src;
+                Object[] copyArray = (Object[]) copy;
+                for (int i = 0; i < srcArray.length; i++) {
+                    copyArray[i] = copyOf(srcArray[i]);
+                }
+                break;
+            case SEQUENCE:
+                Collection<Object> sequence = (Collection<Object>) copy;
+                for (Object element : (Collection<?>) src) {
+                    sequence.add(copyOf(element));
+                }
+                break;
+            case FIXED_SIZE_LIST:
+                List<Object> list = (List<Object>) copy;
+                int index = 0;
+                for (Object element : (List<?>) src) {
+                    list.set(index++, copyOf(element));
+                }
+                break;
+            case DEFERRED_COLLECTION: {
+                Collection<?> collection = (Collection<?>) src;
+                Object[] contents = new Object[collection.size()];
+                int i = 0;
+                for (Object element : collection) {
+                    contents[i++] = copyOf(element);
+                }
+                deferredFills.add(new DeferredFill(copy, contents));
+                break;
+            }
+            case DEFERRED_MAP: {
+                Map<?, ?> map = (Map<?, ?>) src;
+                Object[] contents = new Object[map.size() * 2];
+                int i = 0;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    contents[i++] = copyOf(entry.getKey());
+                    contents[i++] = copyOf(entry.getValue());
+                }
+                deferredFills.add(new DeferredFill(copy, contents));
+                break;
+            }
+            default:
+                fillFields(plan, src, copy);
+                return;
+        }
+        if (!plan.primitiveFields.isEmpty() || !plan.referenceFields.isEmpty()) {
+            fillFields(plan, src, copy);
+        }
+    }
+
+    private void fillFields(@Nonnull CopyPlan plan, @Nonnull Object src, @Nonnull Object copy) {
+        FieldDiffPlan field = null;
+        try {
+            for (int i = 0; i < plan.primitiveFields.size(); i++) {
+                field = plan.primitiveFields.get(i);
+                field.set(copy, field.get(src));
+            }
+            for (int i = 0; i < plan.referenceFields.size(); i++) {
+                field = plan.referenceFields.get(i);
+                field.set(copy, copyOf(field.get(src)));
+            }
+        }
+        catch (IllegalAccessException e) {
+            throw new CloneException("Failed to copy field " + field.getName() + " of " +
+                    src.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void fillDeferred(@Nonnull DeferredFill fill) {
+        if (fill.copy instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) fill.copy;
+            for (int i = 0; i < fill.contents.length; i += 2) {
+                map.put(fill.contents[i], fill.contents[i + 1]);
+            }
+        } else {
+            Collections.addAll((Collection<Object>) fill.copy, fill.contents);
+        }
+    }
+
+    /**
+     * Serializable classes may rely on their serialization methods to restore their state or identity
+     */
+    private static boolean hasCustomSerializedForm(@Nonnull Class<?> cls) {
+        if (Externalizable.class.isAssignableFrom(cls)) {
+            return true;
+        }
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (declaresMethod(c, "writeObject", ObjectOutputStream.class) ||
+                    declaresMethod(c, "readObject", ObjectInputStream.class) ||
+                    declaresMethod(c, "readObjectNoData") ||
+                    declaresMethod(c, "writeReplace") ||
+                    declaresMethod(c, "readResolve")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean declaresMethod(@Nonnull Class<?> cls, @Nonnull String name, Class<?>... parameterTypes) {
+        try {
+            cls.getDeclaredMethod(name, parameterTypes);
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static int capacityOf(int size) {
+        return Math.max(size * 4 / 3 + 1, 16);
+    }
+
+    private static Object clonePrimitiveArray(@Nonnull Object array) {
+        if (array instanceof int[]) {
+            return ((int[]) array).clone();
+        }
+        if (array instanceof long[]) {
+            return ((long[]) array).clone();
+        }
+        if (array instanceof double[]) {
+            return ((double[]) array).clone();
+        }
+        if (array instanceof float[]) {
+            return ((float[]) array).clone();
+        }
+        if (array instanceof short[]) {
+            return ((short[]) array).clone();
+        }
+        if (array instanceof byte[]) {
+            return ((byte[]) array).clone();
+        }
+        if (array instanceof char[]) {
+            return ((char[]) array).clone();
+        }
+        return ((boolean[]) array).clone();
+    }
+
+}
@@ -0,0 +1,21 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+
+/**
+ * Reads and writes a single field. Implementations are created once per field
+ * by a {@link FieldAccessorFactory} and are expected to be thread safe.
+ */
+public interface FieldAccessor {
+
+    @Nonnull
+    Field getField();
+
+    @Nullable
+    Object get(@Nonnull Object obj) throws IllegalAccessException;
+
+    void set(@Nonnull Object obj, @Nullable Object value) throws IllegalAccessException;
+
+}
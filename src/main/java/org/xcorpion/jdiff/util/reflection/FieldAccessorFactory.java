@@ -0,0 +1,15 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Field;
+
+public interface FieldAccessorFactory {
+
+    /**
+     * @param field field which has already been made accessible if possible
+     * @return accessor of the field
+     */
+    @Nonnull
+    FieldAccessor create(@Nonnull Field field);
+
+}
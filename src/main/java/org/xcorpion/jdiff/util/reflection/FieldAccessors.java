@@ -0,0 +1,57 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Field;
+
+/**
+ * Entry point of the pluggable field access layer used by diffing, merging and cloning.
+ * <p>
+ * Accessors are cached in {@link ClassDiffPlan}, so {@link #setDefaultFactory(FieldAccessorFactory)}
+ * only affects classes which have not been planned yet and should be called during start up.
+ */
+public final class FieldAccessors {
+
+    private static final FieldAccessorFactory REFLECTION = ReflectionFieldAccessor::new;
+
+    private static final FieldAccessorFactory METHOD_HANDLES = field -> {
+        try {
+            return new MethodHandleFieldAccessor(field);
+        } catch (IllegalAccessException | RuntimeException e) {
+            // e.g. the field could not be made accessible or final fields on restricted classes
+            return new ReflectionFieldAccessor(field);
+        }
+    };
+
+    private static volatile FieldAccessorFactory defaultFactory = METHOD_HANDLES;
+
+    private FieldAccessors() {
+    }
+
+    @Nonnull
+    public static FieldAccessorFactory reflection() {
+        return REFLECTION;
+    }
+
+    /**
+     * @return factory creating method handle based accessors, falling back to reflection per field
+     */
+    @Nonnull
+    public static FieldAccessorFactory methodHandles() {
+        return METHOD_HANDLES;
+    }
+
+    @Nonnull
+    public static FieldAccessorFactory getDefaultFactory() {
+        return defaultFactory;
+    }
+
+    public static void setDefaultFactory(@Nonnull FieldAccessorFactory factory) {
+        defaultFactory = factory;
+    }
+
+    @Nonnull
+    public static FieldAccessor create(@Nonnull Field field) {
+        return defaultFactory.create(field);
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.api.DiffingHandler;
+import org.xcorpion.jdiff.api.KeyExtractor;
+import org.xcorpion.jdiff.api.MergingHandler;
+import org.xcorpion.jdiff.util.ObjectUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+
+/**
+ * Pre-resolved metadata of a single field, see {@link ClassDiffPlan}.
+ */
+public final class FieldDiffPlan {
+
+    private final Field field;
+    private final String name;
+    private final Type genericType;
+    private final ClassDiffPlan.Category category;
+    private final boolean isTransient;
+    private final boolean accessible;
+    private final Class<? extends DiffingHandler<?>> diffingHandlerClass;
+    private final Class<? extends MergingHandler<?>> mergingHandlerClass;
+    private final Class<? extends KeyExtractor<?>> keyExtractorClass;
+    private final FieldAccessor accessor;
+
+    @SuppressWarnings("deprecation")
+    FieldDiffPlan(@Nonnull Field field) {
+        this.field = field;
+        this.name = field.getName();
+        this.genericType = field.getGenericType();
+        this.category = ClassDiffPlan.Category.of(field.getType());
+        this.isTransient = Modifier.isTransient(field.getModifiers());
+        // has to be captured before the field is made accessible below
+        this.accessible = field.isAccessible();
+        TypeHandler typeHandler = field.getAnnotation(TypeHandler.class);
+        if (typeHandler != null) {
+            this.diffingHandlerClass = typeHandler.diffUsing() != TypeHandler.None.class ?
+                    typeHandler.diffUsing() : null;
+            this.mergingHandlerClass = typeHandler.mergeUsing() != TypeHandler.None.class ?
+                    typeHandler.mergeUsing() : null;
+            this.keyExtractorClass = typeHandler.extractKeyUsing() != TypeHandler.None.class ?
+                    typeHandler.extractKeyUsing() : null;
+        } else {
+            this.diffingHandlerClass = null;
+            this.mergingHandlerClass = null;
+            this.keyExtractorClass = null;
+        }
+        try {
+            field.setAccessible(true);
+        } catch (RuntimeException ignored) {
+            // access will fail later with a proper message from the caller
+        }
+        this.accessor = FieldAccessors.create(field);
+    }
+
+    @Nonnull
+    public Field getField() {
+        return field;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return declared type of the field including generics information
+     */
+    @Nonnull
+    public Type getGenericType() {
+        return genericType;
+    }
+
+    /**
+     * @return category of the declared field type; the runtime value may be more specific
+     */
+    @Nonnull
+    public ClassDiffPlan.Category getCategory() {
+        return category;
+    }
+
+    public boolean isSynthetic() {
+        return field.isSynthetic();
+    }
+
+    public boolean isTransient() {
+        return isTransient;
+    }
+
+    public boolean isAccessible() {
+        return accessible;
+    }
+
+    @Nullable
+    public Class<? extends DiffingHandler<?>> getDiffingHandlerClass() {
+        return diffingHandlerClass;
+    }
+
+    @Nullable
+    public Class<? extends MergingHandler<?>> getMergingHandlerClass() {
+        return mergingHandlerClass;
+    }
+
+    @Nullable
+    public Class<? extends KeyExtractor<?>> getKeyExtractorClass() {
+        return keyExtractorClass;
+    }
+
+    /**
+     * Same as {@link ReflectionUtils#guessType(Field, Object, Object)} without touching reflection again
+     */
+    @Nonnull
+    public Type resolveType(@Nullable Object srcValue, @Nullable Object targetValue) {
+        if (!Object.class.equals(genericType)) {
+            return genericType;
+        }
+        return ObjectUtils.inferClass(srcValue, targetValue);
+    }
+
+    @Nonnull
+    public FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    @Nullable
+    public Object get(@Nonnull Object obj) throws IllegalAccessException {
+        return accessor.get(obj);
+    }
+
+    public void set(@Nonnull Object obj, @Nullable Object value) throws IllegalAccessException {
+        accessor.set(obj, value);
+    }
+
+}
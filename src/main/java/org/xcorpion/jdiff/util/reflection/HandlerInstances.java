@@ -0,0 +1,67 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.xcorpion.jdiff.annotation.Stateful;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Instantiates handlers declared by {@link org.xcorpion.jdiff.annotation.TypeHandler}.
+ * <p>
+ * A single instance is created per handler class and shared by all diffs and merges, so such handlers
+ * must be thread safe. Handlers annotated with {@link Stateful} get a new instance on every call instead.
+ */
+public final class HandlerInstances {
+
+    private static final ClassValue<InstanceProvider> PROVIDERS = new ClassValue<InstanceProvider>() {
+        @Override
+        protected InstanceProvider computeValue(Class<?> type) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return () -> failure("No accessible default constructor in " + type.getName(), e);
+            }
+            if (type.isAnnotationPresent(Stateful.class)) {
+                return constructor::newInstance;
+            }
+            Object instance;
+            try {
+                instance = constructor.newInstance();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+                return () -> failure("Failed to instantiate " + type.getName(), cause);
+            }
+            return () -> instance;
+        }
+    };
+
+    private HandlerInstances() {
+    }
+
+    /**
+     * @return the shared instance of {@code handlerClass}, or a new one if it is {@link Stateful}
+     * @throws ReflectiveOperationException if the handler cannot be instantiated
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <T> T get(@Nonnull Class<? extends T> handlerClass) throws ReflectiveOperationException {
+        return (T) PROVIDERS.get(handlerClass).get();
+    }
+
+    private static Object failure(String message, Throwable cause) throws InstantiationException {
+        InstantiationException e = new InstantiationException(message);
+        e.initCause(cause);
+        throw e;
+    }
+
+    @FunctionalInterface
+    private interface InstanceProvider {
+
+        Object get() throws ReflectiveOperationException;
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Accessor backed by getter/setter method handles that are unreflected once
+ * so no access check is performed per call.
+ */
+class MethodHandleFieldAccessor implements FieldAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    MethodHandleFieldAccessor(@Nonnull Field field) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.field = field;
+        this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    }
+
+    @Nonnull
+    @Override
+    public Field getField() {
+        return field;
+    }
+
+    @Nullable
+    @Override
+    public Object get(@Nonnull Object obj) throws IllegalAccessException {
+        try {
+            return (Object) getter.invokeExact(obj);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to read " + field.getName(), e);
+        }
+    }
+
+    @Override
+    public void set(@Nonnull Object obj, @Nullable Object value) throws IllegalAccessException {
+        if (value == null && field.getType().isPrimitive()) {
+            // keep the same contract as Field.set instead of a bare NullPointerException from unboxing
+            throw new IllegalArgumentException("Cannot set primitive field " + field.getName() + " to null");
+        }
+        try {
+            setter.invokeExact(obj, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to write " + field.getName(), e);
+        }
+    }
+
+}
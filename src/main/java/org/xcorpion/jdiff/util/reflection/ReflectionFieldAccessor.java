@@ -0,0 +1,36 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+
+/**
+ * Plain {@link Field#get(Object)}/{@link Field#set(Object, Object)} based accessor
+ * which is also the fallback when nothing faster can be created.
+ */
+class ReflectionFieldAccessor implements FieldAccessor {
+
+    private final Field field;
+
+    ReflectionFieldAccessor(@Nonnull Field field) {
+        this.field = field;
+    }
+
+    @Nonnull
+    @Override
+    public Field getField() {
+        return field;
+    }
+
+    @Nullable
+    @Override
+    public Object get(@Nonnull Object obj) throws IllegalAccessException {
+        return field.get(obj);
+    }
+
+    @Override
+    public void set(@Nonnull Object obj, @Nullable Object value) throws IllegalAccessException {
+        field.set(obj, value);
+    }
+
+}
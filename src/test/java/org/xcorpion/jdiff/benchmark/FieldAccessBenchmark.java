@@ -0,0 +1,133 @@
+package org.xcorpion.jdiff.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xcorpion.jdiff.api.DiffNode;
+import org.xcorpion.jdiff.api.Feature;
+import org.xcorpion.jdiff.api.ObjectDiffMapper;
+import org.xcorpion.jdiff.util.ReflectionObjectDiffMapper;
+import org.xcorpion.jdiff.util.reflection.FieldAccessors;
+import org.xcorpion.jdiff.util.reflection.ReflectionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reflection and method handle field accessors as well as compiled object handlers
+ * on an object heavy graph.
+ * Every parameter value runs in its own fork since accessors are cached per class.
+ * <p>
+ * Run with {@code mvn test-compile} and then
+ * {@code java -cp target/test-classes:target/classes:<test classpath> org.xcorpion.jdiff.benchmark.FieldAccessBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+
+    static class Address {
+
+        String street;
+        int number;
+        long zip;
+
+        Address(String street, int number, long zip) {
+            this.street = street;
+            this.number = number;
+            this.zip = zip;
+        }
+    }
+
+    static class Account {
+
+        String name;
+        int id;
+        long balance;
+        double rate;
+        boolean active;
+        Address address;
+
+        Account(int id, long balance) {
+            this.name = "account-" + id;
+            this.id = id;
+            this.balance = balance;
+            this.rate = id * 0.01;
+            this.active = id % 2 == 0;
+            this.address = new Address("street-" + id, id, id * 7L);
+        }
+    }
+
+    static class Portfolio {
+
+        List<Account> accounts = new ArrayList<>();
+    }
+
+    @Param({"reflection", "methodHandles", "compiled"})
+    public String accessor;
+
+    @Param({"10000"})
+    public int size;
+
+    private ObjectDiffMapper mapper;
+    private Portfolio src;
+    private Portfolio target;
+    private DiffNode diff;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FieldAccessors.setDefaultFactory("reflection".equals(accessor) ?
+                FieldAccessors.reflection() : FieldAccessors.methodHandles());
+        mapper = new ReflectionObjectDiffMapper();
+        if ("compiled".equals(accessor)) {
+            mapper.enable(Feature.DiffingHandler.USE_COMPILED_OBJECT_HANDLER);
+            mapper.enable(Feature.MergingHandler.USE_COMPILED_OBJECT_HANDLER);
+        }
+        src = createPortfolio(0);
+        target = createPortfolio(1);
+        diff = mapper.diff(src, target);
+    }
+
+    private Portfolio createPortfolio(int seed) {
+        Portfolio portfolio = new Portfolio();
+        for (int i = 0; i < size; i++) {
+            Account account = new Account(i, i % 10 == 0 ? i + seed : i);
+            if (i % 20 == 0) {
+                account.address.zip += seed;
+            }
+            portfolio.accounts.add(account);
+        }
+        return portfolio;
+    }
+
+    @Benchmark
+    public DiffNode diff() {
+        return mapper.diff(src, target);
+    }
+
+    @Benchmark
+    public Portfolio applyOntoShallowCopies() {
+        Portfolio copy = new Portfolio();
+        for (Account account : src.accounts) {
+            Account accountCopy = ReflectionUtils.shallowClone(account);
+            //noinspection ConstantConditions
+            accountCopy.address = ReflectionUtils.shallowClone(account.address);
+            copy.accounts.add(accountCopy);
+        }
+        return mapper.applyDiff(copy, diff);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FieldAccessBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -8,6 +8,12 @@ public interface ArrayTestCases {
     @Test
     void diffTwoBooleanPrimitiveArrays();
 
+    @Test
+    void diffTwoDoublePrimitiveArraysComparesValuesLikeEquals();
+
+    @Test
+    void diffTwoLongPrimitiveArraysUsesEqualityChecker();
+
     @Test
     void applyDiffFromNullToPrimitive();
 
@@ -10,9 +10,21 @@ public interface FeatureTestCases {
     @Test
     void isAbleToUseHashCodeForFastEqualityCheck();
 
+    @Test
+    void isAbleToUseStructuralEqualityCheck();
+
+    @Test
+    void subtreeHashCacheSkipsUnchangedSubtrees();
+
     @Test
     void customGlobalDiffingHandler();
 
+    @Test
+    void customGlobalDiffingHandlerAppliesToSubclasses();
+
+    @Test
+    void customGlobalDiffingHandlerForObjectOrRawTypeOnlyAppliesExactly();
+
     @Test
     void customFieldDiffingHandlerUsingAnnotation();
 
@@ -28,6 +40,9 @@ public interface FeatureTestCases {
     @Test
     void customMergingHandlerCanHandleGenerics();
 
+    @Test
+    void customMergingHandlerShouldOwnNestedDiffs();
+
     @Test
     void customFieldMergingHandler();
 
@@ -27,4 +27,25 @@ public interface ListTestCases {
 
     @Test
     void applyDiffToNestedCollectionList();
+
+    @Test
+    void diffAlignedListsWithAnElementInsertedAtTheHead();
+
+    @Test
+    void diffAlignedListsWithAMovedElement();
+
+    @Test
+    void applyAlignedListDiffToCustomObjectList();
+
+    @Test
+    void applyAlignedListDiffsToRandomLists();
+
+    @Test
+    void diffKeyedListsWithAMovedAndChangedElement();
+
+    @Test
+    void applyKeyedListDiffsToRandomLists();
+
+    @Test
+    void applyKeyedListDiffUsingFieldKeyExtractor();
 }
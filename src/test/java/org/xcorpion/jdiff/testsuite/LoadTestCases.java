@@ -5,4 +5,25 @@ import org.junit.Test;
 public interface LoadTestCases {
     @Test
     void diffTwoDeepObjectsThatWillFailRecursiveSolution();
+
+    @Test
+    void parallelDiffShouldMatchSequentialDiff();
+
+    @Test
+    void chunkedParallelDiffShouldMatchSequentialDiff();
+
+    @Test
+    void parallelDiffOfSharedObjectsShouldMatchSequentialDiff();
+
+    @Test
+    void visitDiffOfTwoDeepObjects();
+
+    @Test
+    void applyManyRemovalsToLargeLists();
+
+    @Test
+    void applyNestedDiffsToLargeLinkedLists();
+
+    @Test
+    void parallelApplyShouldMatchSequentialApply();
 }
@@ -24,4 +24,10 @@ public interface MapTestCases {
 
     @Test
     void applyMapDiffWithObjectKey();
+
+    @Test
+    void diffMapsWithNullValuesOfRemovedAndAddedKeys();
+
+    @Test
+    void applySortedMapDiffInKeyOrder();
 }
@@ -1,29 +1,39 @@
 package org.xcorpion.jdiff.testsuite;
 
 import java.io.Serializable;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
 
 import org.junit.Test;
 import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.api.BatchApplyResult;
 import org.xcorpion.jdiff.api.Diff;
+import org.xcorpion.jdiff.api.DiffEvent;
 import org.xcorpion.jdiff.api.DiffNode;
 import org.xcorpion.jdiff.api.DiffingContext;
 import org.xcorpion.jdiff.api.DiffingHandler;
 import org.xcorpion.jdiff.api.Feature;
+import org.xcorpion.jdiff.api.KeyExtractor;
 import org.xcorpion.jdiff.api.ObjectDiffMapper;
+import org.xcorpion.jdiff.api.ParallelOptions;
+import org.xcorpion.jdiff.api.Versioned;
 import org.xcorpion.jdiff.exception.DiffException;
 import org.xcorpion.jdiff.exception.MergingException;
 import org.xcorpion.jdiff.handler.DateDiffingHandler;
@@ -31,6 +41,10 @@ import org.xcorpion.jdiff.handler.DateMergingHandler;
 import org.xcorpion.jdiff.handler.TestIterableMergingHandler;
 import org.xcorpion.jdiff.testsuite.handlers.StringListToStringDiffingHandler;
 import org.xcorpion.jdiff.testsuite.handlers.StringToStringListMergingHandler;
+import org.xcorpion.jdiff.util.BaseObjectDiffMapper;
+import org.xcorpion.jdiff.util.StructuralEquality;
+import org.xcorpion.jdiff.util.SubtreeHashCache;
+import org.xcorpion.jdiff.util.collection.ListAlignment;
 
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.Matchers.nullValue;
@@ -89,6 +103,38 @@ public abstract class ObjectDiffMapperTestSuite implements
         }
     }
 
+    private static class TestClassWithParent {
+
+        String name;
+        TestClassWithParent parent;
+        List<TestClassWithParent> children = new ArrayList<>();
+
+        TestClassWithParent(String name, TestClassWithParent parent) {
+            this.name = name;
+            this.parent = parent;
+            if (parent != null) {
+                parent.children.add(this);
+            }
+        }
+    }
+
+    private static class VersionedTestClass implements Versioned {
+
+        String name;
+        List<VersionedTestClass> children;
+        long version;
+
+        VersionedTestClass(String name, VersionedTestClass... children) {
+            this.name = name;
+            this.children = new ArrayList<>(Arrays.asList(children));
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+    }
+
     private static class TestClassWithTransientFields {
 
         Object field1;
@@ -131,6 +177,17 @@ public abstract class ObjectDiffMapperTestSuite implements
         }
     }
 
+    private interface Named {
+    }
+
+    private static class NamedTestClass extends TestClass implements Named {
+
+        NamedTestClass(Object field1, Object field2) {
+            super(field1, field2);
+        }
+
+    }
+
     private static class TestClassWithFieldTypeHandler {
 
         @TypeHandler(
@@ -178,6 +235,38 @@ public abstract class ObjectDiffMapperTestSuite implements
         }
     }
 
+    private static class TestClassKeyExtractor implements KeyExtractor<TestClass> {
+
+        @Override
+        public Object getKey(@Nonnull TestClass element) {
+            return element.field1;
+        }
+    }
+
+    private static class TestClassWithKeyedList {
+
+        @TypeHandler(
+                extractKeyUsing = TestClassKeyExtractor.class
+        )
+        List<TestClass> list;
+
+        TestClassWithKeyedList(List<TestClass> list) {
+            this.list = list;
+        }
+    }
+
+    private static class TestClassWithKeyedSet {
+
+        @TypeHandler(
+                extractKeyUsing = TestClassKeyExtractor.class
+        )
+        Set<TestClass> set;
+
+        TestClassWithKeyedSet(Set<TestClass> set) {
+            this.set = set;
+        }
+    }
+
     protected abstract ObjectDiffMapper getDiffMapper();
 
     //region Primitive test cases
@@ -297,6 +386,31 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(fieldDiffs.get(0).getDiff().getTargetValue(), is(false));
     }
 
+    @Override
+    @Test
+    public void diffTwoDoublePrimitiveArraysComparesValuesLikeEquals() {
+        DiffNode diffNode = getDiffMapper().diff(new double[]{Double.NaN, 0.0, 1.5, 2.0},
+                new double[]{Double.NaN, -0.0, 1.5});
+        assertThat(diffNode.getDiff().getOperation(), is(Diff.Operation.RESIZE_ARRAY));
+
+        Map<Object, DiffNode> fieldDiffs = diffNode.getFieldDiffs();
+        assertThat(fieldDiffs.keySet(), containsInAnyOrder(1, 3));
+        assertThat(fieldDiffs.get(1).getDiff().getOperation(), is(Diff.Operation.UPDATE_VALUE));
+        assertThat(fieldDiffs.get(1).getDiff().getSrcValue(), is(0.0));
+        assertThat(fieldDiffs.get(1).getDiff().getTargetValue(), is(-0.0));
+        assertThat(fieldDiffs.get(3).getDiff().getOperation(), is(Diff.Operation.REMOVE_VALUE));
+        assertThat(fieldDiffs.get(3).getDiff().getSrcValue(), is(2.0));
+    }
+
+    @Override
+    @Test
+    public void diffTwoLongPrimitiveArraysUsesEqualityChecker() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.registerEqualityChecker(Long.class, (src, target) -> src / 10 == target / 10);
+        DiffNode diffNode = diffMapper.diff(new long[]{1L, 15L, 20L}, new long[]{2L, 21L, 29L});
+        assertThat(diffNode.getFieldDiffs().keySet(), contains(1));
+    }
+
     @Override
     @Test
     public void applyDiffFromNullToPrimitive() {
@@ -531,6 +645,186 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(result.get(0), containsInAnyOrder(0, 1));
         assertThat(result.get(0), not(contains(2)));
     }
+
+    @Override
+    @Test
+    public void diffAlignedListsWithAnElementInsertedAtTheHead() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.enable(Feature.ListDiffing.ALIGN_ELEMENTS);
+        List<Integer> src = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            src.add(i);
+        }
+        List<Integer> target = new ArrayList<>(src);
+        target.add(0, -1);
+
+        DiffNode diffNode = diffMapper.diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diffNode.getFieldDiffs();
+        assertThat(fieldDiffs.size(), is(1));
+        assertThat(fieldDiffs.get(0).getDiff().getOperation(), is(Diff.Operation.INSERT_VALUE));
+        assertThat(fieldDiffs.get(0).getDiff().getTargetValue(), is(-1));
+
+        List<Integer> result = diffMapper.applyDiff(src, diffNode);
+        assertThat(result, is(target));
+    }
+
+    @Override
+    @Test
+    public void diffAlignedListsWithAMovedElement() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.enable(Feature.ListDiffing.ALIGN_ELEMENTS);
+        List<String> src = new ArrayList<>(Arrays.asList("a", "b", "c", "d"));
+        List<String> target = Arrays.asList("b", "c", "d", "a");
+
+        DiffNode diffNode = diffMapper.diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diffNode.getFieldDiffs();
+        assertThat(fieldDiffs.keySet(), containsInAnyOrder(ListAlignment.removalKey(0), 3));
+        assertThat(fieldDiffs.get(ListAlignment.removalKey(0)).getDiff().getOperation(),
+                is(Diff.Operation.REMOVE_VALUE));
+        assertThat(fieldDiffs.get(3).getDiff().getOperation(), is(Diff.Operation.INSERT_VALUE));
+
+        diffMapper.enable(Feature.ListDiffing.DETECT_MOVES);
+        diffNode = diffMapper.diff(src, target);
+        fieldDiffs = diffNode.getFieldDiffs();
+        assertThat(fieldDiffs.size(), is(1));
+        assertThat(fieldDiffs.get(3).getDiff().getOperation(), is(Diff.Operation.MOVE_VALUE));
+        assertThat(fieldDiffs.get(3).getDiff().getSrcValue(), is(0));
+
+        List<String> result = diffMapper.applyDiff(src, diffNode);
+        assertThat(result, is(target));
+    }
+
+    @Override
+    @Test
+    public void applyAlignedListDiffToCustomObjectList() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.enable(Feature.ListDiffing.ALIGN_ELEMENTS);
+        List<TestClass> src = new ArrayList<>();
+        src.add(new TestClass("a", 1));
+        src.add(new TestClass("b", 2));
+        src.add(new TestClass("c", 3));
+
+        List<TestClass> target = new ArrayList<>();
+        target.add(new TestClass("b", 2));
+        target.add(new TestClass("c", 4));
+        target.add(new TestClass("d", 5));
+
+        DiffNode diff = diffMapper.diff(src, target);
+        TestClass second = src.get(1);
+        TestClass third = src.get(2);
+        List<TestClass> result = diffMapper.applyDiff(src, diff);
+
+        assertThat(result, is(target));
+        // aligned elements are kept and the changed element is merged into the existing object
+        assertThat(result.get(0) == second, is(true));
+        assertThat(result.get(1) == third, is(true));
+        assertThat(result.get(2) == target.get(2), is(true));
+    }
+
+    @Override
+    @Test
+    public void applyAlignedListDiffsToRandomLists() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.enable(Feature.ListDiffing.ALIGN_ELEMENTS);
+        diffMapper.enable(Feature.ListDiffing.DETECT_MOVES);
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> src = new ArrayList<>();
+            List<Integer> target = new ArrayList<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                src.add(random.nextInt(6));
+            }
+            for (int i = random.nextInt(20); i > 0; i--) {
+                target.add(random.nextInt(6));
+            }
+            DiffNode diff = diffMapper.diff(src, target);
+            List<Integer> result = diffMapper.applyDiff(new ArrayList<>(src), diff);
+            assertThat(src + " -> " + target, result, is(target));
+        }
+    }
+
+    @Override
+    @Test
+    public void diffKeyedListsWithAMovedAndChangedElement() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.registerKeyExtractor(TestClass.class, element -> element.field1);
+        List<TestClass> src = new ArrayList<>();
+        src.add(new TestClass("a", 1));
+        src.add(new TestClass("b", 2));
+        src.add(new TestClass("c", 3));
+
+        List<TestClass> target = new ArrayList<>();
+        target.add(new TestClass("c", 3));
+        target.add(new TestClass("a", 10));
+        target.add(new TestClass("d", 4));
+
+        DiffNode diff = diffMapper.diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diff.getFieldDiffs();
+        assertThat(fieldDiffs.size(), is(3));
+        DiffNode moved = fieldDiffs.get(1);
+        assertThat(moved.getDiff().getOperation(), is(Diff.Operation.MOVE_VALUE));
+        assertThat(moved.getDiff().getSrcValue(), is(0));
+        assertThat(moved.getFieldDiffs().get("field2").getDiff().getTargetValue(), is(10));
+        assertThat(fieldDiffs.get(ListAlignment.removalKey(1)).getDiff().getOperation(),
+                is(Diff.Operation.REMOVE_VALUE));
+        assertThat(fieldDiffs.get(2).getDiff().getOperation(), is(Diff.Operation.INSERT_VALUE));
+
+        // the nested diffs of the moved element are expanded along with the rest of the tree
+        List<List<Object>> paths = new ArrayList<>();
+        diffMapper.diffEvents(src, target).forEachRemaining(event -> paths.add(event.getPath()));
+        assertThat(paths, hasItem(Arrays.<Object>asList(1, "field2")));
+
+        TestClass first = src.get(0);
+        TestClass third = src.get(2);
+        List<TestClass> result = diffMapper.applyDiff(src, diff);
+        assertThat(result, is(target));
+        // matched elements are kept and changed in place
+        assertThat(result.get(0) == third, is(true));
+        assertThat(result.get(1) == first, is(true));
+    }
+
+    @Override
+    @Test
+    public void applyKeyedListDiffsToRandomLists() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.registerKeyExtractor(TestClass.class, element -> element.field1);
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            List<TestClass> src = randomTestClassList(random);
+            List<TestClass> target = randomTestClassList(random);
+            DiffNode diff = diffMapper.diff(src, target);
+            String message = src.size() + " -> " + target.size();
+            List<TestClass> result = diffMapper.applyDiff(new ArrayList<>(src), diff);
+            assertThat(message, result, is(target));
+        }
+    }
+
+    private static List<TestClass> randomTestClassList(Random random) {
+        List<TestClass> list = new ArrayList<>();
+        for (int i = random.nextInt(15); i > 0; i--) {
+            // lists of nulls only have no key extractor and would not be diffed as keyed lists
+            boolean addNull = !list.isEmpty() && random.nextInt(10) == 0;
+            list.add(addNull ? null : new TestClass(random.nextInt(8), random.nextInt(3)));
+        }
+        return list;
+    }
+
+    @Override
+    @Test
+    public void applyKeyedListDiffUsingFieldKeyExtractor() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        TestClassWithKeyedList src = new TestClassWithKeyedList(new ArrayList<>(Arrays.asList(
+                new TestClass("a", 1), new TestClass("b", 2), new TestClass("c", 3))));
+        TestClassWithKeyedList target = new TestClassWithKeyedList(new ArrayList<>(Arrays.asList(
+                new TestClass("b", 2), new TestClass("c", 3), new TestClass("a", 5))));
+
+        DiffNode diff = diffMapper.diff(src, target);
+        DiffNode moved = diff.getFieldDiffs().get("list").getFieldDiffs().get(2);
+        assertThat(moved.getDiff().getOperation(), is(Diff.Operation.MOVE_VALUE));
+
+        TestClassWithKeyedList result = diffMapper.applyDiff(src, diff);
+        assertThat(result.list, is(target.list));
+    }
     //endregion
 
     //region Iterable test cases
@@ -741,6 +1035,48 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(result, hasEntry(new TestClass(2, "c"), 1));
     }
 
+
+    @Override
+    @Test
+    public void diffMapsWithNullValuesOfRemovedAndAddedKeys() {
+        Map<String, Integer> src = new HashMap<>();
+        src.put("a", null);
+        src.put("b", 1);
+        Map<String, Integer> target = new HashMap<>();
+        target.put("b", 1);
+        target.put("c", null);
+
+        DiffNode diff = getDiffMapper().diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diff.getFieldDiffs();
+        assertThat(fieldDiffs.entrySet(), hasSize(2));
+        assertThat(fieldDiffs.get("a").getDiff().getOperation(), is(Diff.Operation.REMOVE_VALUE));
+        assertThat(fieldDiffs.get("c").getDiff().getOperation(), is(Diff.Operation.ADD_VALUE));
+        assertThat(fieldDiffs.get("c").getDiff().getTargetValue(), is(nullValue()));
+    }
+
+    @Override
+    @Test
+    public void applySortedMapDiffInKeyOrder() {
+        TreeMap<String, TestClass> src = new TreeMap<>(Collections.reverseOrder());
+        TreeMap<String, TestClass> target = new TreeMap<>(Collections.reverseOrder());
+        for (int i = 0; i < 20; i++) {
+            if (i % 5 != 0) {
+                src.put("key" + i, new TestClass(i, i));
+            }
+            if (i % 7 != 0) {
+                target.put("key" + i, new TestClass(i, i % 3 == 0 ? -i : i));
+            }
+        }
+
+        DiffNode diff = getDiffMapper().diff(src, target);
+        List<Object> keys = new ArrayList<>(diff.getFieldDiffs().keySet());
+        List<Object> sortedKeys = new ArrayList<>(keys);
+        sortedKeys.sort((Comparator<Object>) (Comparator<?>) Collections.reverseOrder());
+        assertThat(keys, is(sortedKeys));
+
+        Map<String, TestClass> result = getDiffMapper().applyDiff(src, diff);
+        assertThat(result, is(target));
+    }
     //endregion
 
     //region Set test cases
@@ -783,6 +1119,66 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(result, containsInAnyOrder("a", "c"));
         assertThat(result, not(contains("b")));
     }
+
+    @Override
+    @Test
+    public void diffKeyedSetsWithAChangedElement() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        diffMapper.registerKeyExtractor(TestClass.class, element -> element.field1);
+        TestClass changed = new TestClass("a", 1);
+        Set<TestClass> src = new HashSet<>(Arrays.asList(changed, new TestClass("b", 2)));
+        Set<TestClass> target = new HashSet<>(Arrays.asList(
+                new TestClass("a", 5), new TestClass("b", 2), new TestClass("c", 3)));
+
+        DiffNode diff = diffMapper.diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diff.getFieldDiffs();
+        assertThat(fieldDiffs.entrySet(), hasSize(2));
+        // the changed element is diffed field by field instead of being replaced
+        assertThat(fieldDiffs.get("a").getDiff().getOperation(), is(Diff.Operation.NO_OP));
+        assertThat(fieldDiffs.get("a").getFieldDiffs().get("field2").getDiff().getTargetValue(), is(5));
+        assertThat(fieldDiffs.get("c").getDiff().getOperation(), is(Diff.Operation.ADD_VALUE));
+
+        Set<TestClass> result = diffMapper.applyDiff(src, diff);
+        assertThat(result, is(target));
+        assertThat(result.contains(changed), is(true));
+    }
+
+    @Override
+    @Test
+    public void applyKeyedSetDiffUsingFieldKeyExtractor() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        TestClassWithKeyedSet src = new TestClassWithKeyedSet(new HashSet<>(Arrays.asList(
+                new TestClass("a", 1), new TestClass("b", 2))));
+        TestClassWithKeyedSet target = new TestClassWithKeyedSet(new HashSet<>(Arrays.asList(
+                new TestClass("a", 1), new TestClass("b", 4))));
+
+        DiffNode diff = diffMapper.diff(src, target);
+        DiffNode setDiff = diff.getFieldDiffs().get("set");
+        assertThat(setDiff.getFieldDiffs().get("b").getDiff().getOperation(), is(Diff.Operation.NO_OP));
+
+        TestClassWithKeyedSet result = diffMapper.applyDiff(src, diff);
+        assertThat(result.set, is(target.set));
+    }
+
+    @Override
+    @Test
+    public void diffSortedSetsInElementOrder() {
+        Set<Integer> src = new TreeSet<>(Collections.reverseOrder());
+        src.addAll(Arrays.asList(1, 2, 4, 6));
+        Set<Integer> target = new TreeSet<>(Collections.reverseOrder());
+        target.addAll(Arrays.asList(2, 3, 5, 6));
+
+        DiffNode diff = getDiffMapper().diff(src, target);
+        Map<Object, DiffNode> fieldDiffs = diff.getFieldDiffs();
+        assertThat(fieldDiffs.entrySet(), hasSize(4));
+        assertThat(fieldDiffs.get(0).getDiff().getTargetValue(), is(5));
+        assertThat(fieldDiffs.get(1).getDiff().getSrcValue(), is(4));
+        assertThat(fieldDiffs.get(2).getDiff().getTargetValue(), is(3));
+        assertThat(fieldDiffs.get(3).getDiff().getSrcValue(), is(1));
+
+        Set<Integer> result = getDiffMapper().applyDiff(src, diff);
+        assertThat(result, is(target));
+    }
     //endregion
 
     //region Object test cases
@@ -902,6 +1298,285 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(src.field2, is(2));
     }
 
+    @Override
+    @Test
+    public void applyDiffToNestedObjectsInInheritedFields() {
+        NamedTestClass src = new NamedTestClass(new TestClass("1", new int[]{1, 2}), Arrays.asList("x", "y"));
+        NamedTestClass target = new NamedTestClass(new TestClass("2", new int[]{1, 3}), Arrays.asList("x", "z"));
+        DiffNode diff = getDiffMapper().diff(src, target);
+        NamedTestClass result = getDiffMapper().applyDiff(src, diff);
+
+        TestClass nested = (TestClass) result.field1;
+        assertThat(nested.field1, is("2"));
+        assertThat((int[]) nested.field2, is(new int[]{1, 3}));
+        assertThat(result.field2, is(Arrays.asList("x", "z")));
+    }
+
+    @Override
+    @Test
+    public void applyDiffToAllTargetsShouldCollectFailures() {
+        TestClass src = new TestClass(new TestClass("a", 1), 2);
+        TestClass target = new TestClass(new TestClass("b", 1), 3);
+        DiffNode diff = getDiffMapper().diff(src, target);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            List<TestClass> copies = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                copies.add(new TestClass(new TestClass("a", 1), 2));
+            }
+            // there is no nested object to apply the nested diff to
+            copies.set(7, new TestClass(null, 2));
+
+            BatchApplyResult<TestClass> result = parallel ?
+                    getDiffMapper().applyDiffToAll(copies, diff, Collections.emptySet(), ForkJoinPool.commonPool()) :
+                    getDiffMapper().applyDiffToAll(copies, diff, Collections.emptySet());
+            assertThat(result.isSuccessful(), is(false));
+            assertThat(result.getFailures().keySet(), contains(7));
+            assertThat(result.getResults().size(), is(200));
+            for (int i = 0; i < 200; i++) {
+                assertThat(result.getResults().get(i), i == 7 ? is(nullValue()) : is(target));
+            }
+        }
+    }
+
+    @Override
+    @Test
+    public void applyDiffToAllTargetsOfDifferentClasses() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffNode diff = diffMapper.diff(new TestClass(new TestClass("a", 1), 2),
+                new TestClass(new TestClass("b", 1), 2));
+        diffMapper.registerMergingHandler(NamedTestClass.class, (src, nestedDiffNode, mergingContext) -> {
+            src.field2 = "merged";
+            return src;
+        });
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            List<TestClass> copies = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                copies.add(new TestClass(i % 2 == 0 ? new TestClass("a", 1) : new NamedTestClass("a", 1), 2));
+            }
+
+            BatchApplyResult<TestClass> result = parallel ?
+                    diffMapper.applyDiffToAll(copies, diff, Collections.emptySet(), ForkJoinPool.commonPool()) :
+                    diffMapper.applyDiffToAll(copies, diff, Collections.emptySet());
+            assertThat(result.isSuccessful(), is(true));
+            for (int i = 0; i < 200; i++) {
+                TestClass nested = (TestClass) result.getResults().get(i).field1;
+                assertThat(nested.field1, is(i % 2 == 0 ? "b" : "a"));
+                assertThat(nested.field2, is(i % 2 == 0 ? (Object) 1 : "merged"));
+            }
+        }
+    }
+
+    @Override
+    @Test
+    public void applyDiffToAllTargetsWithSharedObjects() {
+        DiffNode diff = getDiffMapper().diff(sharedObjectGraphWithIndexMap("1"), sharedObjectGraphWithIndexMap("2"));
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            for (Set<Feature.MergingStrategy> strategies : Arrays.<Set<Feature.MergingStrategy>>asList(
+                    Collections.emptySet(), Collections.singleton(Feature.MergingStrategy.DEEP_CLONE_SOURCE))) {
+                List<TestClass> copies = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    copies.add(sharedObjectGraphWithIndexMap("1"));
+                }
+
+                BatchApplyResult<TestClass> result = parallel ?
+                        getDiffMapper().applyDiffToAll(copies, diff, strategies, ForkJoinPool.commonPool()) :
+                        getDiffMapper().applyDiffToAll(copies, diff, strategies);
+                assertThat(result.isSuccessful(), is(true));
+                for (int i = 0; i < 200; i++) {
+                    TestClass applied = result.getResults().get(i);
+                    assertSharedObjectGraph((TestClass) applied.field1, "2");
+                    @SuppressWarnings("unchecked")
+                    Map<Integer, Object> indexMap = (Map<Integer, Object>) applied.field2;
+                    assertThat(indexMap.get(5) == ((TestClass) applied.field1).field1, is(true));
+                    assertThat(indexMap.get(2), is("2"));
+                    boolean cloned = !strategies.isEmpty();
+                    assertThat(applied == copies.get(i), is(!cloned));
+                    assertSharedObjectGraph((TestClass) copies.get(i).field1, cloned ? "1" : "2");
+                }
+            }
+        }
+    }
+
+    private static TestClass sharedObjectGraphWithIndexMap(String value) {
+        TestClass shared = new TestClass(value, 2);
+        Map<Integer, Object> indexMap = new HashMap<>();
+        indexMap.put(5, shared);
+        indexMap.put(2, value);
+        return new TestClass(sharedObjectGraph(shared), indexMap);
+    }
+
+    @Override
+    @Test
+    public void diffEventsShouldFollowThePreOrderOfTheDiffTree() {
+        Map<String, Object> srcMap = new TreeMap<>();
+        srcMap.put("a", 1);
+        srcMap.put("b", new int[]{1, 2, 3});
+        Map<String, Object> targetMap = new TreeMap<>();
+        targetMap.put("b", new int[]{1, 5});
+        targetMap.put("c", 3);
+        TestClass src = new TestClass(new TestClass("1", srcMap), Arrays.asList("x", "y"));
+        TestClass target = new TestClass(new TestClass("2", targetMap), Arrays.asList("x", "z", "w"));
+
+        List<String> expectedEvents = new ArrayList<>();
+        collectEvents(getDiffMapper().diff(src, target), new ArrayList<>(), expectedEvents);
+        List<String> events = new ArrayList<>();
+        Iterator<DiffEvent> iter = getDiffMapper().diffEvents(src, target);
+        while (iter.hasNext()) {
+            events.add(iter.next().toString());
+        }
+        List<String> visitedEvents = new ArrayList<>();
+        getDiffMapper().visitDiff(src, target, event -> visitedEvents.add(event.toString()));
+
+        assertThat(expectedEvents.size(), is(8));
+        assertThat(events, is(expectedEvents));
+        assertThat(visitedEvents, is(expectedEvents));
+        assertThat(getDiffMapper().diffEvents(src, src).hasNext(), is(false));
+    }
+
+    @Override
+    @Test
+    public void diffWithALimitShouldStopAfterTheFirstChanges() {
+        TestClass src = new TestClass(new TestClass("1", 2), Arrays.asList("x", "y", "z"));
+        TestClass target = new TestClass(new TestClass("2", 3), Arrays.asList("x", "b", "c"));
+
+        DiffNode diffNode = getDiffMapper().diff(src, target, 3);
+        assertThat(diffNode.isTruncated(), is(true));
+        Map<Object, DiffNode> nestedDiffs = diffNode.getFieldDiffs().get("field1").getFieldDiffs();
+        assertThat(nestedDiffs.get("field1").getDiff().getTargetValue(), is("2"));
+        assertThat(nestedDiffs.get("field2").getDiff().getTargetValue(), is(3));
+        Map<Object, DiffNode> listDiffs = diffNode.getFieldDiffs().get("field2").getFieldDiffs();
+        assertThat(listDiffs.keySet(), contains(1));
+        assertThat(listDiffs.get(1).getDiff().getTargetValue(), is("b"));
+
+        assertThat(getDiffMapper().diff(src, target, 0).getFieldDiffs(), is(nullValue()));
+        assertThat(getDiffMapper().diff(src, target, 0).isTruncated(), is(true));
+        assertThat(getDiffMapper().diff(src, src, 0).isTruncated(), is(false));
+        DiffNode fullDiff = getDiffMapper().diff(src, target, 4);
+        assertThat(fullDiff.isTruncated(), is(false));
+        assertThat(getDiffMapper().applyDiff(src, fullDiff), is(target));
+    }
+
+    @Override
+    @Test
+    public void hasDifferencesShouldRespectEqualityCheckers() {
+        TestClass src = new TestClass(new TestClass("1", 2), 3);
+        TestClass target = new TestClass(new TestClass("1", 4), 3);
+
+        assertThat(getDiffMapper().hasDifferences(src, target), is(true));
+        assertThat(getDiffMapper().hasDifferences(src, new TestClass(new TestClass("1", 2), 3)), is(false));
+        getDiffMapper().registerEqualityChecker(Integer.class, (a, b) -> a % 2 == b % 2);
+        assertThat(getDiffMapper().hasDifferences(src, target), is(false));
+    }
+
+    @Override
+    @Test
+    public void diffAndApplyCyclicObjectGraphs() {
+        TestClassWithParent src = new TestClassWithParent("a", null);
+        new TestClassWithParent("b", src);
+        new TestClassWithParent("c", src);
+        TestClassWithParent target = new TestClassWithParent("a2", null);
+        new TestClassWithParent("b", target);
+        new TestClassWithParent("c2", target);
+
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        Map<Object, DiffNode> childDiffs = diffNode.getFieldDiffs().get("children").getFieldDiffs();
+        Diff parentDiff = childDiffs.get(1).getFieldDiffs().get("parent").getDiff();
+        assertThat(parentDiff.getOperation(), is(Diff.Operation.REFERENCE));
+        assertThat(parentDiff.getSrcValue() == src, is(true));
+
+        TestClassWithParent result = getDiffMapper().applyDiff(src, diffNode,
+                Collections.singleton(Feature.MergingStrategy.SHALLOW_CLONE_SOURCE_ROOT));
+        assertThat(result == src, is(false));
+        assertThat(result.name, is("a2"));
+        assertThat(result.children.get(1).name, is("c2"));
+        assertThat(result.children.get(0).parent == result, is(true));
+        assertThat(result.children.get(1).parent == result, is(true));
+    }
+
+    @Override
+    @Test
+    public void diffSharedObjectsOnlyOnce() {
+        TestClass shared = new TestClass("1", 2);
+        TestClass src = new TestClass(shared, shared);
+        TestClass sharedTarget = new TestClass("2", 2);
+        TestClass target = new TestClass(sharedTarget, sharedTarget);
+
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        assertThat(diffNode.getFieldDiffs().get("field1").getFieldDiffs().get("field1").getDiff().getTargetValue(),
+                is("2"));
+        assertThat(diffNode.getFieldDiffs().get("field2").getDiff().getOperation(), is(Diff.Operation.REFERENCE));
+
+        TestClass result = getDiffMapper().applyDiff(src, diffNode);
+        assertThat(result, is(target));
+        assertThat(result.field1 == result.field2, is(true));
+    }
+
+    @Override
+    @Test
+    public void applySharedObjectsToDeepCloneOfSource() {
+        TestClass shared = new TestClass("1", 2);
+        TestClass src = sharedObjectGraph(shared);
+        TestClass target = sharedObjectGraph(new TestClass("2", 2));
+
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        TestClass result = getDiffMapper().applyDiff(src, diffNode,
+                Collections.singleton(Feature.MergingStrategy.DEEP_CLONE_SOURCE));
+        assertSharedObjectGraph(result, "2");
+        assertThat(result.field1 == shared, is(false));
+        assertSharedObjectGraph(src, "1");
+    }
+
+    @Override
+    @Test
+    public void applySharedObjectsToShallowCloneOfSourceRoot() {
+        TestClass shared = new TestClass("1", 2);
+        TestClass src = sharedObjectGraph(shared);
+        TestClass target = sharedObjectGraph(new TestClass("2", 2));
+
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        TestClass result = getDiffMapper().applyDiff(src, diffNode,
+                Collections.singleton(Feature.MergingStrategy.SHALLOW_CLONE_SOURCE_ROOT));
+        assertThat(result == src, is(false));
+        assertSharedObjectGraph(result, "2");
+        assertThat(result.field1 == shared, is(true));
+    }
+
+    private static TestClass sharedObjectGraph(TestClass shared) {
+        List<Object> list = new ArrayList<>(Arrays.asList(shared, shared));
+        Map<String, Object> map = new HashMap<>();
+        map.put("k", shared);
+        return new TestClass(shared, new TestClass(list, map));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSharedObjectGraph(TestClass graph, String value) {
+        TestClass shared = (TestClass) graph.field1;
+        assertThat(shared.field1, is(value));
+        TestClass nested = (TestClass) graph.field2;
+        List<Object> list = (List<Object>) nested.field1;
+        Map<String, Object> map = (Map<String, Object>) nested.field2;
+        assertThat(list.get(0) == shared, is(true));
+        assertThat(list.get(1) == shared, is(true));
+        assertThat(map.get("k") == shared, is(true));
+    }
+
+    private static void collectEvents(DiffNode diffNode, List<Object> path, List<String> events) {
+        if (diffNode.getDiff().getOperation() != Diff.Operation.NO_OP) {
+            events.add(new DiffEvent(new ArrayList<>(path), diffNode.getDiff()).toString());
+        }
+        if (diffNode.getFieldDiffs() == null) {
+            return;
+        }
+        for (Map.Entry<Object, DiffNode> entry : diffNode.getFieldDiffs().entrySet()) {
+            path.add(entry.getKey());
+            collectEvents(entry.getValue(), path, events);
+            path.remove(path.size() - 1);
+        }
+    }
+
     //endregion
 
     //region Load test cases
@@ -943,6 +1618,258 @@ public abstract class ObjectDiffMapperTestSuite implements
             diffNode = fieldDiffs.get("field1");
         }
     }
+
+    @Override
+    @Test
+    public void parallelDiffShouldMatchSequentialDiff() {
+        Random random = new Random(3);
+        Map<String, List<TestClass>> src = new HashMap<>();
+        Map<String, List<TestClass>> target = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            List<TestClass> srcList = new ArrayList<>();
+            List<TestClass> targetList = new ArrayList<>();
+            for (int j = 0; j < 40; j++) {
+                srcList.add(new TestClass(j, random.nextInt(3)));
+                targetList.add(new TestClass(j, random.nextInt(3)));
+            }
+            src.put("region" + i, srcList);
+            target.put("region" + i, targetList);
+        }
+        target.remove("region0");
+        target.put("region50", new ArrayList<>());
+
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffNode sequentialDiff = diffMapper.diff(src, target);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DiffNode parallelDiff = diffMapper.diff(src, target, ParallelOptions.of(pool).withForkDepth(2));
+            assertSameDiff(parallelDiff, sequentialDiff);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    @Test
+    public void chunkedParallelDiffShouldMatchSequentialDiff() {
+        Random random = new Random(5);
+        int[] srcInts = new int[500];
+        int[] targetInts = new int[530];
+        List<TestClass> srcList = new ArrayList<>();
+        List<TestClass> targetList = new ArrayList<>();
+        Map<Integer, Integer> srcMap = new HashMap<>();
+        Map<Integer, Integer> targetMap = new HashMap<>();
+        Set<Integer> srcSet = new HashSet<>();
+        Set<Integer> targetSet = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            srcInts[i] = random.nextInt(4);
+            targetInts[i] = random.nextInt(4);
+            srcList.add(new TestClass(i, random.nextInt(4)));
+            targetList.add(new TestClass(i, random.nextInt(4)));
+            srcMap.put(random.nextInt(1000), i);
+            targetMap.put(random.nextInt(1000), i);
+            srcSet.add(random.nextInt(1000));
+            targetSet.add(random.nextInt(1000));
+        }
+        targetList.subList(450, 500).clear();
+
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelOptions options = ParallelOptions.of(pool).withChunkSize(16);
+            assertSameDiff(diffMapper.diff(srcInts, targetInts, options), diffMapper.diff(srcInts, targetInts));
+            assertSameDiff(diffMapper.diff(srcList, targetList, options.withForkDepth(0)),
+                    diffMapper.diff(srcList, targetList));
+
+            DiffNode mapDiff = diffMapper.diff(srcMap, targetMap, options);
+            assertThat(mapDiff.getFieldDiffs().keySet(),
+                    is(diffMapper.diff(srcMap, targetMap).getFieldDiffs().keySet()));
+            assertThat(diffMapper.applyDiff(new HashMap<>(srcMap), mapDiff), is(targetMap));
+
+            DiffNode setDiff = diffMapper.diff(srcSet, targetSet, options);
+            assertThat(setDiff.getFieldDiffs().size(), is(diffMapper.diff(srcSet, targetSet).getFieldDiffs().size()));
+            assertThat(diffMapper.applyDiff(new HashSet<>(srcSet), setDiff), is(targetSet));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    @Test
+    public void parallelDiffOfSharedObjectsShouldMatchSequentialDiff() {
+        Random random = new Random(13);
+        List<TestClass> srcShared = new ArrayList<>();
+        List<TestClass> targetShared = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            srcShared.add(new TestClass(new TestClass(i, 0), 0));
+            targetShared.add(new TestClass(new TestClass(i, 1), 0));
+        }
+        Map<String, List<TestClass>> src = new HashMap<>();
+        Map<String, List<TestClass>> target = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            List<TestClass> srcList = new ArrayList<>();
+            List<TestClass> targetList = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                int shared = random.nextInt(srcShared.size());
+                srcList.add(new TestClass(srcShared.get(shared), j));
+                targetList.add(new TestClass(targetShared.get(shared), j + random.nextInt(2)));
+            }
+            src.put("region" + i, srcList);
+            target.put("region" + i, targetList);
+        }
+
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffNode sequentialDiff = diffMapper.diff(src, target);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int run = 0; run < 20; run++) {
+                DiffNode parallelDiff = diffMapper.diff(src, target, ParallelOptions.of(pool).withForkDepth(3));
+                assertSameDiff(parallelDiff, sequentialDiff);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(diffMapper.applyDiff(src, sequentialDiff), is(target));
+    }
+
+    @Override
+    @Test
+    public void parallelApplyShouldMatchSequentialApply() {
+        Map<String, List<TestClass>> target = createRegions(new Random(7));
+        for (int i = 0; i < 50; i += 3) {
+            List<TestClass> targetList = target.get("region" + i);
+            targetList.subList(10, 20).clear();
+            targetList.add(new TestClass(new TestClass(i, 0), 0));
+        }
+        target.remove("region1");
+        target.put("region50", new LinkedList<>(Collections.singletonList(new TestClass(50, 0))));
+
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffNode diff = diffMapper.diff(createRegions(new Random(11)), target);
+        Map<String, List<TestClass>> sequentialResult = diffMapper.applyDiff(createRegions(new Random(11)), diff);
+        assertThat(sequentialResult, is(target));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelOptions options = ParallelOptions.of(pool).withForkDepth(2);
+            Map<String, List<TestClass>> src = createRegions(new Random(11));
+            Map<String, List<TestClass>> parallelResult = diffMapper.applyDiff(src, diff,
+                    Collections.emptySet(), options);
+            assertThat(parallelResult, is(sameInstance(src)));
+            assertThat(parallelResult, is(target));
+
+            src = createRegions(new Random(11));
+            parallelResult = diffMapper.applyDiff(src, diff,
+                    Collections.singleton(Feature.MergingStrategy.DEEP_CLONE_SOURCE), options.withForkDepth(0));
+            assertThat(parallelResult, is(target));
+            assertThat(src, is(createRegions(new Random(11))));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Map<String, List<TestClass>> createRegions(Random random) {
+        Map<String, List<TestClass>> regions = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            List<TestClass> list = i % 2 == 0 ? new ArrayList<>() : new LinkedList<>();
+            for (int j = 0; j < 40; j++) {
+                list.add(new TestClass(new TestClass(j, random.nextInt(3)), random.nextInt(3)));
+            }
+            regions.put("region" + i, list);
+        }
+        return regions;
+    }
+
+    @Override
+    @Test
+    public void visitDiffOfTwoDeepObjects() {
+        getDiffMapper().registerEqualityChecker(TestClass.class, (src, target) -> false);
+        TestClass rootObj1 = new TestClass(null, 0);
+        TestClass rootObj2 = new TestClass(null, 1);
+        TestClass currentObj1 = rootObj1;
+        TestClass currentObj2 = rootObj2;
+        for (int i = 1; i < 5000; i++) {
+            currentObj1.field1 = new TestClass(null, i);
+            currentObj2.field1 = new TestClass(null, i + 1);
+            currentObj1 = currentObj1.getField1();
+            currentObj2 = currentObj2.getField1();
+        }
+
+        List<DiffEvent> events = new ArrayList<>();
+        getDiffMapper().visitDiff(rootObj1, rootObj2, events::add);
+
+        // field1 comes first, so the deepest change is found first
+        assertThat(events.size(), is(5000));
+        for (int i = 0; i < events.size(); i++) {
+            DiffEvent event = events.get(i);
+            int depth = 4999 - i;
+            assertThat(event.getOperation(), is(Diff.Operation.UPDATE_VALUE));
+            assertThat(event.getSrcValue(), is(depth));
+            assertThat(event.getTargetValue(), is(depth + 1));
+            assertThat(event.getPath().size(), is(depth + 1));
+            assertThat(event.getPath().get(depth), is("field2"));
+        }
+    }
+
+    @Override
+    @Test
+    public void applyManyRemovalsToLargeLists() {
+        int size = 1_000_000;
+        DiffNode diff = new DiffNode(new Diff());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 10 == 0) {
+                diff.addFieldDiff(i, new DiffNode(new Diff(Diff.Operation.REMOVE_VALUE, i, null)));
+            } else if (i == 1) {
+                diff.addFieldDiff(i, new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, i, -1)));
+                expected.add(-1);
+            } else {
+                expected.add(i);
+            }
+        }
+        diff.addFieldDiff(size, new DiffNode(new Diff(Diff.Operation.ADD_VALUE, null, size)));
+        expected.add(size);
+
+        List<Integer> arrayList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            arrayList.add(i);
+        }
+        List<Integer> linkedList = new LinkedList<>(arrayList);
+        assertThat(getDiffMapper().applyDiff(arrayList, diff), is(expected));
+        assertThat(getDiffMapper().applyDiff(linkedList, diff), is(expected));
+    }
+
+    @Override
+    @Test
+    public void applyNestedDiffsToLargeLinkedLists() {
+        int size = 200_000;
+        List<TestClass> src = new LinkedList<>();
+        List<TestClass> target = new LinkedList<>();
+        for (int i = 0; i < size; i++) {
+            src.add(new TestClass(i, "a"));
+            target.add(new TestClass(i, i % 2 == 0 ? "b" : "a"));
+        }
+        DiffNode diff = getDiffMapper().diff(src, target);
+        assertThat(diff.getFieldDiffs().size(), is(size / 2));
+
+        List<TestClass> result = getDiffMapper().applyDiff(src, diff);
+        assertThat(result, is(target));
+    }
+
+    private static void assertSameDiff(DiffNode actual, DiffNode expected) {
+        assertThat(actual.getDiff().getOperation(), is(expected.getDiff().getOperation()));
+        assertThat(actual.getDiff().getSrcValue(), is(expected.getDiff().getSrcValue()));
+        assertThat(actual.getDiff().getTargetValue(), is(expected.getDiff().getTargetValue()));
+        if (expected.getFieldDiffs() == null) {
+            assertThat(actual.getFieldDiffs(), is(nullValue()));
+            return;
+        }
+        assertThat(new ArrayList<>(actual.getFieldDiffs().keySet()),
+                is(new ArrayList<>(expected.getFieldDiffs().keySet())));
+        for (Map.Entry<Object, DiffNode> entry : expected.getFieldDiffs().entrySet()) {
+            assertSameDiff(actual.getFieldDiffs().get(entry.getKey()), entry.getValue());
+        }
+    }
     //endregion
 
     //region Feature test cases
@@ -971,6 +1898,64 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(diffNode.isEmpty(), is(true));
     }
 
+    @Override
+    @Test
+    public void isAbleToUseStructuralEqualityCheck() {
+        getDiffMapper().enable(Feature.EqualityCheck.USE_STRUCTURAL);
+
+        TestClassWithParent src = new TestClassWithParent("root", null);
+        new TestClassWithParent("a", src);
+        TestClassWithParent target = new TestClassWithParent("root", null);
+        TestClassWithParent targetChild = new TestClassWithParent("a", target);
+
+        assertThat(StructuralEquality.isEqual(src, target), is(true));
+        assertThat(StructuralEquality.hash(src), is(StructuralEquality.hash(target)));
+        assertThat(getDiffMapper().diff(src, target).isEmpty(), is(true));
+
+        // elements without equals() are matched structurally rather than by identity
+        Set<TestClassWithParent> srcSet = new HashSet<>(Collections.singleton(src));
+        Set<TestClassWithParent> targetSet = new HashSet<>(Collections.singleton(target));
+        assertThat(getDiffMapper().diff(srcSet, targetSet).isEmpty(), is(true));
+
+        targetChild.name = "b";
+        assertThat(StructuralEquality.isEqual(src, target), is(false));
+        assertThat(StructuralEquality.isEqual(srcSet, targetSet), is(false));
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        assertThat(diffNode.getFieldDiffs().keySet(), contains("children"));
+        DiffNode childDiff = diffNode.getFieldDiffs().get("children").getFieldDiffs().get(0);
+        assertThat(childDiff.getFieldDiffs().get("name").getDiff().getTargetValue(), is("b"));
+    }
+
+    @Override
+    @Test
+    public void subtreeHashCacheSkipsUnchangedSubtrees() {
+        SubtreeHashCache cache = new SubtreeHashCache();
+        ((BaseObjectDiffMapper) getDiffMapper()).useSubtreeHashCache(cache);
+
+        VersionedTestClass src = new VersionedTestClass("root",
+                new VersionedTestClass("a"), new VersionedTestClass("b"));
+        VersionedTestClass target = new VersionedTestClass("root",
+                new VersionedTestClass("a"), new VersionedTestClass("b"));
+        assertThat(getDiffMapper().diff(src, target).isEmpty(), is(true));
+        assertThat(cache.hash(src), is(cache.hash(target)));
+        assertThat(cache.size(), is(6));
+
+        // cached hashes are trusted until the version changes
+        VersionedTestClass targetChild = target.children.get(1);
+        targetChild.name = "c";
+        assertThat(getDiffMapper().diff(src, target).isEmpty(), is(true));
+
+        targetChild.version++;
+        target.version++;
+        src.version++;
+        DiffNode diffNode = getDiffMapper().diff(src, target);
+        assertThat(diffNode.getFieldDiffs().keySet(), contains("children"));
+        DiffNode childrenDiff = diffNode.getFieldDiffs().get("children");
+        assertThat(childrenDiff.getFieldDiffs().keySet(), contains(1));
+        assertThat(childrenDiff.getFieldDiffs().get(1).getFieldDiffs().get("name").getDiff().getTargetValue(),
+                is("c"));
+    }
+
     @Override
     @Test
     public void customGlobalDiffingHandler() {
@@ -986,6 +1971,51 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(diff.getFieldDiffs(), is(nullValue()));
     }
 
+    @Override
+    @Test
+    public void customGlobalDiffingHandlerAppliesToSubclasses() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        NamedTestClass src = new NamedTestClass(1, "a");
+        NamedTestClass target = new NamedTestClass(2, "a");
+
+        DiffNode diff = diffMapper.diff(src, target);
+        assertThat(diff.getDiff().getOperation(), is(Diff.Operation.NO_OP));
+        assertThat(diff.getFieldDiffs().keySet(), contains("field1"));
+
+        diffMapper.registerDiffingHandler(Named.class, (s, t, ctx) ->
+                new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, "named", "named")));
+        diff = diffMapper.diff(src, target);
+        assertThat(diff.getDiff().getOperation(), is(Diff.Operation.UPDATE_VALUE));
+        assertThat(diff.getDiff().getSrcValue(), is("named"));
+
+        diffMapper.registerDiffingHandler(TestClass.class, (s, t, ctx) ->
+                new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, "test", "test")));
+        diff = diffMapper.diff(src, target);
+        assertThat(diff.getDiff().getSrcValue(), is("test"));
+    }
+
+    @Override
+    @Test
+    public void customGlobalDiffingHandlerForObjectOrRawTypeOnlyAppliesExactly() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffingHandler<Object> objectHandler = (s, t, ctx) ->
+                new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, "object", "object"));
+        DiffingHandler<ArrayList> listHandler = (s, t, ctx) ->
+                new DiffNode(new Diff(Diff.Operation.UPDATE_VALUE, "list", "list"));
+        diffMapper.registerDiffingHandler(Object.class, objectHandler);
+        diffMapper.registerDiffingHandler(ArrayList.class, listHandler);
+
+        DiffNode diff = diffMapper.diff(new TestClass(1, "a"), new TestClass(2, "a"));
+        assertThat(diff.getDiff().getOperation(), is(Diff.Operation.NO_OP));
+        assertThat(diff.getFieldDiffs().keySet(), contains("field1"));
+        assertThat(diffMapper.getDiffingHandler(Object.class), is(sameInstance(objectHandler)));
+
+        Type stringListType = new ArrayList<String>() {
+        }.getClass().getGenericSuperclass();
+        assertThat(diffMapper.getDiffingHandler(stringListType), is(nullValue()));
+        assertThat(diffMapper.getDiffingHandler(ArrayList.class), is(sameInstance(listHandler)));
+    }
+
     @Override
     @Test
     public void customFieldDiffingHandlerUsingAnnotation() {
@@ -1070,6 +2100,22 @@ public abstract class ObjectDiffMapperTestSuite implements
         assertThat(result.list, is(Arrays.asList("b", "b", "c")));
     }
 
+    @Override
+    @Test
+    public void customMergingHandlerShouldOwnNestedDiffs() {
+        ObjectDiffMapper diffMapper = getDiffMapper();
+        DiffNode diffNode = diffMapper.diff(new TestClass(new TestClass("a", 1), 2),
+                new TestClass(new TestClass("b", 1), 2));
+
+        // the handler merges the nested diffs its own way, which must not be applied again afterwards
+        diffMapper.registerMergingHandler(TestClass.class, (src, nestedDiffNode, mergingContext) -> {
+            src.field2 = "merged";
+            return src;
+        });
+        TestClass result = diffMapper.applyDiff(new TestClass(new TestClass("a", 1), 2), diffNode);
+        assertThat(result, is(new TestClass(new TestClass("a", 1), "merged")));
+    }
+
     @Override
     @Test
     public void customFieldMergingHandler() {
@@ -21,4 +21,37 @@ public interface ObjectTestCases {
 
     @Test
     void applyObjectDiffOntoNewObject();
+
+    @Test
+    void applyDiffToNestedObjectsInInheritedFields();
+
+    @Test
+    void applyDiffToAllTargetsShouldCollectFailures();
+
+    @Test
+    void applyDiffToAllTargetsOfDifferentClasses();
+
+    @Test
+    void applyDiffToAllTargetsWithSharedObjects();
+
+    @Test
+    void diffEventsShouldFollowThePreOrderOfTheDiffTree();
+
+    @Test
+    void diffWithALimitShouldStopAfterTheFirstChanges();
+
+    @Test
+    void hasDifferencesShouldRespectEqualityCheckers();
+
+    @Test
+    void diffAndApplyCyclicObjectGraphs();
+
+    @Test
+    void diffSharedObjectsOnlyOnce();
+
+    @Test
+    void applySharedObjectsToDeepCloneOfSource();
+
+    @Test
+    void applySharedObjectsToShallowCloneOfSourceRoot();
 }
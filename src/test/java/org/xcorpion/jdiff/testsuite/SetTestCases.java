@@ -8,4 +8,13 @@ public interface SetTestCases {
 
     @Test
     void applySetDiff();
+
+    @Test
+    void diffKeyedSetsWithAChangedElement();
+
+    @Test
+    void applyKeyedSetDiffUsingFieldKeyExtractor();
+
+    @Test
+    void diffSortedSetsInElementOrder();
 }
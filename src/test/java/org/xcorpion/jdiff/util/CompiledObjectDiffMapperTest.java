@@ -0,0 +1,23 @@
+package org.xcorpion.jdiff.util;
+
+import org.junit.Before;
+import org.xcorpion.jdiff.api.*;
+import org.xcorpion.jdiff.testsuite.ObjectDiffMapperTestSuite;
+
+public class CompiledObjectDiffMapperTest extends ObjectDiffMapperTestSuite {
+
+    private ReflectionObjectDiffMapper diffMapper;
+
+    @Override
+    protected ObjectDiffMapper getDiffMapper() {
+        return diffMapper;
+    }
+
+    @Before
+    public void setUp() {
+        diffMapper = new ReflectionObjectDiffMapper();
+        diffMapper.enable(Feature.DiffingHandler.USE_COMPILED_OBJECT_HANDLER);
+        diffMapper.enable(Feature.MergingHandler.USE_COMPILED_OBJECT_HANDLER);
+    }
+
+}
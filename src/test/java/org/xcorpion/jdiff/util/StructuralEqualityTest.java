@@ -0,0 +1,83 @@
+package org.xcorpion.jdiff.util;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StructuralEqualityTest {
+
+    private static class CountingNode implements Iterable<Object> {
+        final List<Object> children;
+        int iterations;
+
+        CountingNode(Object child) {
+            this.children = Collections.singletonList(child);
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            iterations++;
+            return children.iterator();
+        }
+    }
+
+    private static List<CountingNode> chain(int depth, String leaf) {
+        List<CountingNode> nodes = new ArrayList<>();
+        Object child = leaf;
+        for (int i = 0; i < depth; i++) {
+            CountingNode node = new CountingNode(child);
+            nodes.add(0, node);
+            child = node;
+        }
+        return nodes;
+    }
+
+    @Test
+    public void memoShouldCompareEachPairOnce() {
+        List<CountingNode> src = chain(100, "a");
+        List<CountingNode> target = chain(100, "b");
+        StructuralEquality.Memo memo = new StructuralEquality.Memo(false);
+
+        // every level is compared the way a diff walks down to the changed leaf
+        for (int i = 0; i < src.size(); i++) {
+            assertThat(StructuralEquality.isEqual(src.get(i), target.get(i), memo), is(false));
+        }
+        for (CountingNode node : src) {
+            assertThat(node.iterations, is(1));
+        }
+    }
+
+    @Test
+    public void memoShouldKeepEqualSubtrees() {
+        CountingNode srcNode = chain(10, "a").get(0);
+        CountingNode targetNode = chain(10, "a").get(0);
+        List<Object> src = Arrays.asList("x", srcNode);
+        List<Object> target = Arrays.asList("y", targetNode);
+        StructuralEquality.Memo memo = new StructuralEquality.Memo(false);
+
+        assertThat(StructuralEquality.isEqual(src, target, memo), is(false));
+        assertThat(StructuralEquality.isEqual(srcNode, targetNode, memo), is(true));
+        assertThat(srcNode.iterations, is(1));
+    }
+
+    @Test
+    public void memoShouldNotTrustPairsComparedThroughACycle() {
+        List<Object> src = new ArrayList<>();
+        List<Object> target = new ArrayList<>();
+        List<Object> srcChild = new ArrayList<>(Collections.singletonList(src));
+        List<Object> targetChild = new ArrayList<>(Collections.singletonList(target));
+        src.add(srcChild);
+        src.add("x");
+        target.add(targetChild);
+        target.add("y");
+        StructuralEquality.Memo memo = new StructuralEquality.Memo(false);
+
+        assertThat(StructuralEquality.isEqual(src, target, memo), is(false));
+        assertThat(StructuralEquality.isEqual(srcChild, targetChild, memo), is(false));
+        assertThat(StructuralEquality.isEqual(srcChild, targetChild), is(false));
+    }
+
+}
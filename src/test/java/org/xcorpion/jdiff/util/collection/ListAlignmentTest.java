@@ -0,0 +1,94 @@
+package org.xcorpion.jdiff.util.collection;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ListAlignmentTest {
+
+    @Test
+    public void alignmentShouldKeepTheLongestCommonSubsequence() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Integer> src = randomList(random);
+            List<Integer> target = randomList(random);
+            int[] matches = ListAlignment.align(src, target, Objects::equals);
+
+            int matched = 0;
+            int lastTargetIndex = -1;
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] >= 0) {
+                    assertThat(matches[i], is(greaterThan(lastTargetIndex)));
+                    assertThat(target.get(matches[i]), is(src.get(i)));
+                    lastTargetIndex = matches[i];
+                    matched++;
+                }
+            }
+            assertThat(src + " -> " + target, matched, is(lcsLength(src, target)));
+        }
+    }
+
+    @Test
+    public void insertionAtTheHeadShouldOnlyLeaveOneElementUnmatched() {
+        List<Integer> src = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            src.add(i);
+        }
+        List<Integer> target = new ArrayList<>(src);
+        target.add(0, -1);
+        int[] matches = ListAlignment.align(src, target, Objects::equals);
+        for (int i = 0; i < matches.length; i++) {
+            assertThat(matches[i], is(i + 1));
+        }
+    }
+
+    @Test
+    public void removalKeysShouldNotClashWithIndices() {
+        assertThat(ListAlignment.removalKey(0), is(-1));
+        assertThat(ListAlignment.removedSrcIndex(ListAlignment.removalKey(7)), is(7));
+    }
+
+    @Test
+    public void keyMatchesShouldPairDuplicatesInOrder() {
+        Object[] src = {"a", "b", "a", "c"};
+        Object[] target = {"a", "c", "a", "d"};
+        int[] matches = ListAlignment.matchByKey(src, target, key -> key);
+        assertThat(matches, is(new int[]{0, -1, 2, 1}));
+    }
+
+    @Test
+    public void orderedMatchesShouldBeTheLongestIncreasingRun() {
+        int[] matches = {3, -1, 0, 1, 4, 2};
+        BitSet ordered = ListAlignment.findOrderedMatches(matches);
+        assertThat(ordered.cardinality(), is(3));
+        int lastTargetIndex = -1;
+        for (int i = ordered.nextSetBit(0); i >= 0; i = ordered.nextSetBit(i + 1)) {
+            assertThat(matches[i], is(greaterThan(lastTargetIndex)));
+            lastTargetIndex = matches[i];
+        }
+    }
+
+    private static List<Integer> randomList(Random random) {
+        int size = random.nextInt(12);
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(random.nextInt(4));
+        }
+        return list;
+    }
+
+    private static int lcsLength(List<Integer> a, List<Integer> b) {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                lengths[i][j] = a.get(i).equals(b.get(j)) ?
+                        lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        return lengths[0][0];
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.junit.Test;
+import org.xcorpion.jdiff.annotation.TypeHandler;
+import org.xcorpion.jdiff.handler.DateDiffingHandler;
+import org.xcorpion.jdiff.handler.DateMergingHandler;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ClassDiffPlanTest {
+
+    private static class Parent {
+
+        static int staticField = 1;
+        int parentField;
+
+    }
+
+    private class Child extends Parent {
+
+        @TypeHandler(
+                diffUsing = DateDiffingHandler.class,
+                mergeUsing = DateMergingHandler.class
+        )
+        Date date;
+        transient List<String> list;
+
+    }
+
+    @Test
+    public void planShouldSkipStaticAndSyntheticFields() {
+        List<String> names = ClassDiffPlan.of(Child.class).getFields().stream()
+                .map(FieldDiffPlan::getName)
+                .collect(Collectors.toList());
+        assertThat(names, contains("date", "list", "parentField"));
+    }
+
+    @Test
+    public void planShouldPreResolveFieldMetadata() {
+        List<FieldDiffPlan> fields = ClassDiffPlan.of(Child.class).getFields();
+        FieldDiffPlan date = fields.get(0);
+        assertThat(date.getDiffingHandlerClass(), is(equalTo((Object) DateDiffingHandler.class)));
+        assertThat(date.getMergingHandlerClass(), is(equalTo((Object) DateMergingHandler.class)));
+        assertThat(date.getCategory(), is(ClassDiffPlan.Category.OBJECT));
+
+        FieldDiffPlan list = fields.get(1);
+        assertThat(list.isTransient(), is(true));
+        assertThat(list.getCategory(), is(ClassDiffPlan.Category.ITERABLE));
+        assertThat(list.getGenericType().getTypeName(), is("java.util.List<java.lang.String>"));
+
+        assertThat(fields.get(2).getCategory(), is(ClassDiffPlan.Category.PRIMITIVE));
+    }
+
+    @Test
+    public void planShouldBeSharedPerClass() {
+        assertThat(ClassDiffPlan.of(Child.class) == ClassDiffPlan.of(Child.class), is(true));
+        assertThat(ClassDiffPlan.of(HashSet.class).getCategory(), is(ClassDiffPlan.Category.SET));
+        assertThat(ClassDiffPlan.of(TreeMap.class).getCategory(), is(ClassDiffPlan.Category.MAP));
+        assertThat(ClassDiffPlan.of(int[].class).getCategory(), is(ClassDiffPlan.Category.ARRAY));
+    }
+
+}
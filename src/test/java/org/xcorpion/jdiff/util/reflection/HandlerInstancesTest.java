@@ -0,0 +1,49 @@
+package org.xcorpion.jdiff.util.reflection;
+
+import org.junit.Test;
+import org.xcorpion.jdiff.annotation.Stateful;
+import org.xcorpion.jdiff.handler.DateDiffingHandler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HandlerInstancesTest {
+
+    @Stateful
+    private static class StatefulHandler {
+
+        int calls;
+
+    }
+
+    private static class BrokenHandler {
+
+        BrokenHandler() {
+            throw new IllegalStateException("broken");
+        }
+
+    }
+
+    @Test
+    public void handlersShouldBeSharedByDefault() throws Exception {
+        DateDiffingHandler handler = HandlerInstances.get(DateDiffingHandler.class);
+        assertThat(HandlerInstances.get(DateDiffingHandler.class), is(sameInstance(handler)));
+    }
+
+    @Test
+    public void statefulHandlersShouldBeCreatedPerCall() throws Exception {
+        StatefulHandler handler = HandlerInstances.get(StatefulHandler.class);
+        assertThat(HandlerInstances.get(StatefulHandler.class), is(not(sameInstance(handler))));
+    }
+
+    @Test(expected = InstantiationException.class)
+    public void failuresShouldBeReportedOnEveryCall() throws Exception {
+        try {
+            HandlerInstances.get(BrokenHandler.class);
+        } catch (InstantiationException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        HandlerInstances.get(BrokenHandler.class);
+    }
+
+}
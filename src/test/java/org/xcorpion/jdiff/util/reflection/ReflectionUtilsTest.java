@@ -2,8 +2,10 @@ package org.xcorpion.jdiff.util.reflection;
 
 import org.junit.Test;
 
+import java.io.Serializable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.time.LocalDate;
 import java.util.*;
 
 import static org.hamcrest.Matchers.is;
@@ -53,6 +55,64 @@ public class ReflectionUtilsTest {
 
     }
 
+    private static class Graph {
+
+        NestedObject first;
+        NestedObject second;
+        Graph self;
+        int[] ints;
+        String name;
+        LocalDate date;
+        Set<KeyObject> keys = new HashSet<>();
+        Map<KeyObject, List<NestedObject>> nestedByKey = new TreeMap<>(Comparator.comparing(key -> key.key));
+
+    }
+
+    private static class CollectionGraph {
+
+        NestedObject shared;
+        Map<String, NestedObject> byName = new LinkedHashMap<>();
+        List<NestedObject> readOnly;
+        Set<NestedObject> synchronizedSet;
+        List<NestedObject> singleton;
+        NamedMap namedMap = new NamedMap();
+
+    }
+
+    private static class NamedMap extends HashMap<String, NestedObject> {
+
+        String name;
+
+    }
+
+    private static class KeyObject {
+
+        String key;
+
+        KeyObject(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyObject && ((KeyObject) o).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    private static class Singleton implements Serializable {
+
+        static final Singleton INSTANCE = new Singleton();
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
     @Retention(RetentionPolicy.RUNTIME)
     private @interface NonInheritedAnnotation {
 
@@ -122,6 +182,75 @@ public class ReflectionUtilsTest {
         }
     }
 
+    @Test
+    public void deepCloneShouldPreserveSharedObjectsAndCycles() {
+        Graph graph = new Graph();
+        graph.first = new NestedObject();
+        graph.first.nested = graph.first;
+        graph.second = graph.first;
+        graph.self = graph;
+        graph.ints = new int[]{1, 2, 3};
+        graph.name = "graph";
+        graph.date = LocalDate.of(2020, 1, 1);
+        graph.keys.add(new KeyObject("a"));
+        graph.nestedByKey.put(new KeyObject("b"), Arrays.asList(graph.first, new NestedObject()));
+
+        Graph cloned = ReflectionUtils.deepClone(graph);
+        assertNotNull(cloned);
+        assertThat(cloned == graph, is(false));
+        assertThat(cloned.self == cloned, is(true));
+        assertThat(cloned.first == graph.first, is(false));
+        assertThat(cloned.first.nested == cloned.first, is(true));
+        assertThat(cloned.second == cloned.first, is(true));
+        assertThat(cloned.ints == graph.ints, is(false));
+        assertThat(cloned.ints, is(new int[]{1, 2, 3}));
+        assertThat(cloned.name == graph.name, is(true));
+        assertThat(cloned.date == graph.date, is(true));
+        assertThat(cloned.keys.contains(new KeyObject("a")), is(true));
+        assertThat(cloned.keys.iterator().next() == graph.keys.iterator().next(), is(false));
+        List<NestedObject> nested = cloned.nestedByKey.get(new KeyObject("b"));
+        assertThat(nested.get(0) == cloned.first, is(true));
+        assertThat(nested.get(1) == graph.nestedByKey.get(new KeyObject("b")).get(1), is(false));
+    }
+
+    @Test
+    public void deepCloneShouldRebuildCollectionsOfNonSerializableValues() {
+        CollectionGraph graph = new CollectionGraph();
+        graph.shared = new NestedObject();
+        graph.shared.level = 1;
+        graph.byName.put("b", graph.shared);
+        graph.byName.put("a", new NestedObject());
+        graph.readOnly = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(graph.shared, new NestedObject())));
+        graph.synchronizedSet = Collections.synchronizedSet(new HashSet<>(Collections.singleton(graph.shared)));
+        graph.singleton = Collections.singletonList(graph.shared);
+        graph.namedMap.name = "named";
+        graph.namedMap.put("shared", graph.shared);
+
+        CollectionGraph cloned = ReflectionUtils.deepClone(graph);
+        assertNotNull(cloned);
+        assertThat(cloned.shared == graph.shared, is(false));
+        assertThat(cloned.shared.level, is(1));
+        assertThat(cloned.byName.getClass() == LinkedHashMap.class, is(true));
+        assertThat(new ArrayList<>(cloned.byName.keySet()), is(Arrays.asList("b", "a")));
+        assertThat(cloned.byName.get("b") == cloned.shared, is(true));
+        assertThat(cloned.readOnly.getClass() == graph.readOnly.getClass(), is(true));
+        assertThat(cloned.readOnly.get(0) == cloned.shared, is(true));
+        assertThat(cloned.readOnly.get(1) == graph.readOnly.get(1), is(false));
+        assertThat(cloned.synchronizedSet.getClass() == graph.synchronizedSet.getClass(), is(true));
+        assertThat(cloned.synchronizedSet.iterator().next() == cloned.shared, is(true));
+        assertThat(cloned.singleton.getClass() == graph.singleton.getClass(), is(true));
+        assertThat(cloned.singleton.get(0) == cloned.shared, is(true));
+        assertThat(cloned.namedMap == graph.namedMap, is(false));
+        assertThat(cloned.namedMap.name, is("named"));
+        assertThat(cloned.namedMap.get("shared") == cloned.shared, is(true));
+        assertThat(ReflectionUtils.deepClone(Collections.emptyList()) == Collections.emptyList(), is(true));
+    }
+
+    @Test
+    public void deepCloneShouldKeepCustomSerializedForms() {
+        assertThat(ReflectionUtils.deepClone(Singleton.INSTANCE) == Singleton.INSTANCE, is(true));
+    }
+
     @Test
     public void shallowCloneCloneableShouldNotCloneNestedObjects() {
         CloneableObjectWithCollection obj = new CloneableObjectWithCollection();